@@ -0,0 +1,309 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.model.Filter;
+import software.amazon.awssdk.services.ec2.model.Image;
+import software.amazon.awssdk.services.ec2.model.InstanceType;
+import software.amazon.awssdk.services.ec2.model.Tag;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Optimized AMIs ("ami-ignis-optimized-<time>"): stock AL2023 plus docker/awscli and the Ignis
+// images already pulled. Every baked image is recorded as a tag ignis-image-<hash of the reference>
+// whose value is the digest it had when baked, so a job can tell whether the AMI still holds the
+// current version of its image; when it does, userdata skips the pull as well.
+//
+// Baking is opt-in (IGNIS_AMI_BAKE=auto): then a job whose image has no current AMI starts a bake in
+// the background, where a builder instance runs scripts/bake.sh, reports the digests under bake/<id>/
+// and is snapshotted with CreateImage. Old AMIs are garbage collected after every bake. A bake does
+// not outlive the JVM: at exit its builder is terminated and its lease released before the
+// infrastructure decides whether it can be torn down.
+public class AmiBaker {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AmiBaker.class);
+
+    // "auto": bake when a job's image is missing or stale; "off": only use what exists
+    private static final String BAKE_MODE = System.getenv().getOrDefault("IGNIS_AMI_BAKE", "off").trim().toLowerCase(); // Default: off
+    // Baked next to the job image, comma separated
+    private static final List<String> EXTRA_IMAGES = Arrays.stream(System.getenv().getOrDefault("IGNIS_AMI_BAKE_IMAGES", "").split(","))
+            .map(String::trim).filter(s -> !s.isEmpty()).toList();
+    private static final int KEEP = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_AMI_KEEP", "3") // Default: 3 newest AMIs (plus the newest of each image)
+    );
+    private static final InstanceType BUILDER_TYPE = InstanceType.fromValue(
+            System.getenv().getOrDefault("IGNIS_AMI_BAKE_INSTANCE_TYPE", "t3.large"));
+    private static final int BUILDER_VOLUME_GB = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_AMI_BAKE_VOLUME_GB", "30")
+    );
+    private static final long BAKE_TIMEOUT_MS = 45 * 60 * 1000;
+    // A failed bake (e.g. CreateImage not allowed) is not retried by every job
+    private static final long RETRY_AFTER_FAILURE_MS = 60 * 60 * 1000;
+
+    private static final String NAME_PREFIX = "ami-ignis-optimized-";
+    private static final String BAKED_TAG = "IgnisBaked";
+    private static final String BAKE_ID_TAG = "IgnisBakeId";
+    private static final String BAKE_IMAGES_TAG = "IgnisBakeImages";
+    private static final String IMAGE_TAG_PREFIX = "ignis-image-";
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    // Where the builder runs: the job network
+    public record BakeSpec(String region, String bucket, String subnet, String sg, String instanceProfile) { }
+
+    // bakedDigest is only set when the AMI is known to hold the current version of the image
+    public record Resolved(String amiId, String bakedDigest, boolean upToDate) { }
+
+    private final EC2Operations ec2;
+    private final S3Operations s3;
+    private final UserDataBuilder userDataBuilder;
+    private final InfrastructureLifecycle infrastructure;
+    private final ImageDigestResolver digests = new ImageDigestResolver();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> failedAt = new ConcurrentHashMap<>();
+    // bake id -> builder instance, while it runs
+    private final Map<String, String> builders = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+    private final ExecutorService bakers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ignis-ami-bake");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public AmiBaker(EC2Operations ec2, S3Operations s3, UserDataBuilder userDataBuilder, InfrastructureLifecycle infrastructure) {
+        this.ec2 = ec2;
+        this.s3 = s3;
+        this.userDataBuilder = userDataBuilder;
+        this.infrastructure = infrastructure;
+        infrastructure.onExit(this::abortBakes);
+    }
+
+    public boolean isEnabled() {
+        return BAKE_MODE.equals("auto");
+    }
+
+    // IGNIS_AMI wins; then the newest AMI baked with the current digest of image; otherwise the
+    // newest one that has the image at all, or the usual fallbacks, marked as not up to date
+    public Resolved resolve(String image) throws ISchedulerException {
+        String userAMI = System.getenv("IGNIS_AMI");
+        if (userAMI != null && !userAMI.isBlank()) return new Resolved(userAMI.trim(), null, true);
+
+        List<Image> baked = List.of();
+        try {
+            baked = ec2.findOwnImages(List.of(
+                    Filter.builder().name("tag-key").values(imageTag(image)).build(),
+                    Filter.builder().name("state").values("available").build()));
+        } catch (ISchedulerException e) {
+            LOGGER.warn("Could not look for baked AMIs: {}", e.getMessage());
+        }
+        if (!baked.isEmpty()) {
+            String digest = digests.resolve(image);
+            if (digest == null) {
+                // Can't tell (private registry): the newest bake is the best guess, the pull decides
+                LOGGER.info("Using baked AMI {} for {} (digest unknown)", baked.get(0).imageId(), image);
+                return new Resolved(baked.get(0).imageId(), null, true);
+            }
+            for (Image ami : baked) {
+                if (digest.equals(tagValue(ami, imageTag(image)))) {
+                    LOGGER.info("Using baked AMI {} for {} ({})", ami.imageId(), image, digest);
+                    return new Resolved(ami.imageId(), digest, true);
+                }
+            }
+            LOGGER.info("Baked AMIs for {} are stale (current digest {})", image, digest);
+            return new Resolved(baked.get(0).imageId(), null, false);
+        }
+        return new Resolved(ec2.resolveAMI(), null, false);
+    }
+
+    // Starts a bake for image (plus IGNIS_AMI_BAKE_IMAGES) unless one for the same images is running
+    public void bakeAsync(String image, BakeSpec spec) {
+        if (!isEnabled() || closed) return;
+        List<String> images = new ArrayList<>(new LinkedHashSet<>(concat(image, EXTRA_IMAGES)));
+        String key = hash(String.join("\n", images));
+        Long failed = failedAt.get(key);
+        if (failed != null && System.currentTimeMillis() - failed < RETRY_AFTER_FAILURE_MS) return;
+        if (!running.add(key)) return;
+        bakers.execute(() -> {
+            try {
+                bake(images, key, spec);
+                failedAt.remove(key);
+            } catch (Exception e) {
+                failedAt.put(key, System.currentTimeMillis());
+                LOGGER.warn("AMI bake for {} failed: {}", images, e.getMessage());
+            } finally {
+                running.remove(key);
+            }
+        });
+    }
+
+    private String bake(List<String> images, String imagesKey, BakeSpec spec) throws ISchedulerException {
+        // Another scheduler may already be baking the same images
+        if (!ec2.findInstances(Map.of(BAKE_IMAGES_TAG, imagesKey)).isEmpty()) {
+            LOGGER.info("A bake for {} is already running", images);
+            return null;
+        }
+        String bakeId = LocalDateTime.now(ZoneOffset.UTC).format(NAME_TIME) + "-" + imagesKey.substring(0, 6);
+        LOGGER.info("Baking AMI {} with {}", bakeId, images);
+        System.out.println("[ignis-cloud] Baking an optimized AMI in the background (" + bakeId + ")");
+
+        // The builder lives in the job network, which must outlive it
+        String lease = leaseOf(bakeId);
+        infrastructure.acquire(lease);
+        try {
+            return bake(images, imagesKey, bakeId, spec);
+        } finally {
+            infrastructure.release(lease, null);
+        }
+    }
+
+    // JVM exit: the bakes can't finish, so their builders go now instead of at bake.sh's own deadline
+    private void abortBakes() {
+        closed = true;
+        bakers.shutdownNow();
+        builders.forEach((bakeId, builder) -> {
+            System.out.println("[ignis-cloud] Aborting AMI bake " + bakeId);
+            try {
+                ec2.terminateInstance(builder);
+            } catch (ISchedulerException e) {
+                LOGGER.warn("Could not terminate builder {}", builder, e);
+            }
+            infrastructure.release(leaseOf(bakeId), null);
+        });
+        builders.clear();
+    }
+
+    private static String leaseOf(String bakeId) {
+        return "ami-bake-" + bakeId;
+    }
+
+    private String bake(List<String> images, String imagesKey, String bakeId, BakeSpec spec) throws ISchedulerException {
+        String userData = userDataBuilder.buildBakeUserData(spec.region(), spec.bucket(), bakeId, images, BAKE_TIMEOUT_MS / 1000);
+        String builder = ec2.createBuilderInstance("ignis-ami-builder-" + bakeId, userData, ec2.resolveBaseAMI(),
+                spec.subnet(), spec.sg(), BUILDER_TYPE, spec.instanceProfile(), BUILDER_VOLUME_GB,
+                Map.of(BAKE_ID_TAG, bakeId, BAKE_IMAGES_TAG, imagesKey));
+        builders.put(bakeId, builder);
+        try {
+            if (closed) throw new ISchedulerException("Bake " + bakeId + " aborted at exit");
+            Map<String, String> baked = awaitBuilder(spec.bucket(), bakeId, builder);
+
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("Name", NAME_PREFIX + bakeId);
+            tags.put(BAKED_TAG, "true");
+            tags.put(BAKE_ID_TAG, bakeId);
+            baked.forEach((image, digest) -> tags.put(imageTag(image), digest));
+            String ami = ec2.createImage(builder, NAME_PREFIX + bakeId, tags);
+            awaitImage(ami);
+            LOGGER.info("AMI {} baked ({})", ami, baked);
+            System.out.println("[ignis-cloud] Optimized AMI " + ami + " ready");
+            return ami;
+        } finally {
+            builders.remove(bakeId);
+            try {
+                ec2.terminateInstance(builder);
+            } catch (ISchedulerException e) {
+                LOGGER.warn("Could not terminate builder {}", builder, e);
+            }
+            try {
+                s3.deletePrefix(spec.bucket(), "bake/" + bakeId + "/");
+            } catch (ISchedulerException e) {
+                LOGGER.debug("Could not clean bake/{}", bakeId, e);
+            }
+            garbageCollect();
+        }
+    }
+
+    // image -> digest, as reported by the builder
+    private Map<String, String> awaitBuilder(String bucket, String bakeId, String builder) throws ISchedulerException {
+        long deadline = System.currentTimeMillis() + BAKE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            String result = s3.getString(bucket, "bake/" + bakeId + "/result.tsv");
+            if (result != null) {
+                Map<String, String> baked = new LinkedHashMap<>();
+                for (String line : result.split("\n")) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 2 && !fields[1].isBlank()) baked.put(fields[0], fields[1].trim());
+                }
+                return baked;
+            }
+            String failure = s3.getString(bucket, "bake/" + bakeId + "/failed");
+            if (failure != null) throw new ISchedulerException("Builder failed: " + failure.trim());
+            String state = ec2.getInstanceState(builder);
+            if (state.equals("terminated") || state.equals("not_found")) {
+                throw new ISchedulerException("Builder " + builder + " is gone (" + state + ")");
+            }
+            sleep(10_000);
+        }
+        throw new ISchedulerException("Bake " + bakeId + " timed out");
+    }
+
+    private void awaitImage(String ami) throws ISchedulerException {
+        long deadline = System.currentTimeMillis() + BAKE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            String state = ec2.getImageState(ami);
+            if (state.equals("available")) return;
+            if (state.equals("failed") || state.equals("error") || state.equals("not_found")) {
+                throw new ISchedulerException("Image " + ami + " is " + state);
+            }
+            sleep(15_000);
+        }
+        throw new ISchedulerException("Image " + ami + " not available in time");
+    }
+
+    // Keeps the KEEP newest baked AMIs and the newest one holding each image; the rest go
+    public void garbageCollect() {
+        try {
+            List<Image> baked = ec2.findOwnImages(List.of(
+                    Filter.builder().name("tag:" + BAKED_TAG).values("true").build(),
+                    Filter.builder().name("state").values("available").build()));
+            Set<String> keep = new HashSet<>();
+            Set<String> imagesSeen = new HashSet<>();
+            for (int i = 0; i < baked.size(); i++) {
+                Image ami = baked.get(i);
+                if (i < KEEP) keep.add(ami.imageId());
+                for (Tag tag : ami.tags()) {
+                    if (tag.key().startsWith(IMAGE_TAG_PREFIX) && imagesSeen.add(tag.key())) keep.add(ami.imageId());
+                }
+            }
+            for (Image ami : baked) {
+                if (!keep.contains(ami.imageId())) ec2.deleteImage(ami);
+            }
+        } catch (ISchedulerException e) {
+            LOGGER.warn("AMI garbage collection failed: {}", e.getMessage());
+        }
+    }
+
+    private static String imageTag(String image) {
+        return IMAGE_TAG_PREFIX + hash(image).substring(0, 16);
+    }
+
+    private static String tagValue(Image ami, String key) {
+        return ami.tags().stream().filter(t -> t.key().equals(key)).map(Tag::value).findFirst().orElse(null);
+    }
+
+    private static List<String> concat(String first, List<String> rest) {
+        List<String> all = new ArrayList<>();
+        all.add(first);
+        all.addAll(rest);
+        return all;
+    }
+
+    private static String hash(String s) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long ms) throws ISchedulerException {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ISchedulerException("Interrupted while baking", e);
+        }
+    }
+}
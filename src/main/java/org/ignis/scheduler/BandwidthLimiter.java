@@ -0,0 +1,42 @@
+package org.ignis.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+// Paces transfers to an average byte rate. Callers reserve their bytes up front and sleep until
+// their slot starts, so concurrent workers share the budget without a background refill thread.
+public class BandwidthLimiter {
+
+    private final double bytesPerNano;
+    private final long burstNanos;
+    private long nextFreeNanos;
+
+    public BandwidthLimiter(long bytesPerSecond) {
+        this.bytesPerNano = bytesPerSecond <= 0 ? 0 : bytesPerSecond / 1e9;
+        this.burstNanos = TimeUnit.SECONDS.toNanos(1);
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public static BandwidthLimiter unlimited() {
+        return new BandwidthLimiter(0);
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerNano == 0;
+    }
+
+    public void acquire(long bytes) throws InterruptedException {
+        if (isUnlimited() || bytes <= 0) return;
+
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            // Unused budget accumulates for at most one second
+            long start = Math.max(nextFreeNanos, now - burstNanos);
+            nextFreeNanos = start + (long) (bytes / bytesPerNano);
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
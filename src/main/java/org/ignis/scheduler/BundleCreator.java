@@ -4,111 +4,197 @@ import org.ignis.scheduler.model.IBindMount;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
 
 public class BundleCreator {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(BundleCreator.class);
 
-    private static final String STAGING_DIR_NAME = "staging";
-    private static final String TAR_FILENAME = "bundle.tar.gz";
-
     private static final long LARGE_FILE_THRESHOLD_BYTES = Long.parseLong(
             System.getenv().getOrDefault("IGNIS_LARGE_FILE_THRESHOLD_MB", "10") // Default: 10 MB
     ) * 1024 * 1024;
     private static final int MAX_FILES = 5000;
     private static final Set<String> EXCLUDED = Set.of(".git", "__pycache__", ".DS_Store", ".vscode", ".idea", "node_modules", "venv", "env");
 
-    public BundleResult createBundleTarGzHybrid(List<IBindMount> binds, String bucket, String jobId, S3Operations s3) throws ISchedulerException {
+    // Walks and hashes the binds without touching S3. The fingerprint covers names, modes and
+    // content hashes (not mtimes), so resubmitting unchanged inputs yields the same bundle blob.
+    public BundlePlan planBundle(List<IBindMount> binds) throws ISchedulerException {
         if(binds == null || binds.isEmpty()) {
             throw new ISchedulerException("No payload or jar libraries were detected to bundle.");
         }
 
-        Path tmpDir = null;
-        List<LargeFile> largeFiles = new ArrayList<>();
-        int fileCount = 0;
+        List<BundlePlan.Entry> entries = new ArrayList<>();
+        List<BundlePlan.Entry> largeFiles = new ArrayList<>();
+        int[] fileCount = {0};
+        try {
+            for (IBindMount bind : binds) {
+                collectBind(bind, entries, largeFiles, fileCount);
+            }
+        } catch (IOException e) {
+            throw new ISchedulerException("Failed to scan payload", e);
+        }
 
-        try{
-            tmpDir = Files.createTempDirectory("ignis-bundle-");
-            Path staging =  tmpDir.resolve(STAGING_DIR_NAME);
-            Files.createDirectories(staging);
+        if (fileCount[0] > MAX_FILES) {
+            throw new ISchedulerException("Too many files in payload (more than " + MAX_FILES + "). Max allowed: " + MAX_FILES);
+        }
 
-            fileCount = copyBindsToStagingHybrid(binds, staging, bucket, jobId, s3, largeFiles);
+        entries.sort(Comparator.comparing(BundlePlan.Entry::name));
+        largeFiles.sort(Comparator.comparing(BundlePlan.Entry::name));
 
-            if (fileCount > MAX_FILES) {
-                throw new ISchedulerException("Too many files in payload (" + fileCount + "). Max allowed: " + MAX_FILES);
-            }
+        MessageDigest md = ContentDigest.newSha256();
+        for (BundlePlan.Entry e : entries) {
+            String line = e.name() + '\0' + (e.directory() ? "d" : "f" + executableFlag(e.source()) + e.sha256()) + '\n';
+            md.update(line.getBytes(StandardCharsets.UTF_8));
+        }
+        String fingerprint = HexFormat.of().formatHex(md.digest());
 
-            Path tarGzPath = createTarGz(tmpDir, staging);
-            byte[] tarData = Files.readAllBytes(tarGzPath);
+        LOGGER.info("Payload scanned: {} small files + {} large files, fingerprint {}",
+                fileCount[0] - largeFiles.size(), largeFiles.size(), fingerprint);
+        return new BundlePlan(List.copyOf(entries), List.copyOf(largeFiles), fingerprint);
+    }
 
-            LOGGER.info("Bundle created: {} small files + {} large files (uploaded directly to S3)",
-                    fileCount - largeFiles.size(), largeFiles.size());
+    // Only the blobs the bucket doesn't have yet are uploaded. Large files are hashed and uploaded
+    // concurrently on the transfer engine while the bundle streams. The first upload that fails stops
+    // the others and the bundle, and so does cancel completing; either way this only returns once no
+    // upload is running any more. The returned manifest is not published: the instance treats it as
+    // the "payload ready" marker.
+    public PayloadManifest uploadBlobs(BundlePlan plan, String bucket, S3Operations s3, CompletableFuture<?> cancel)
+            throws ISchedulerException {
+        CompletableFuture<Void> stop = new CompletableFuture<>();
+        cancel.whenComplete((v, error) -> stop.cancel(false));
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
+        for (BundlePlan.Entry e : plan.largeFiles()) {
+            uploads.add(s3.uploadLargeFileAsync(bucket, e.source(), e.sha256(), stop));
+        }
+        CompletableFuture<List<String>> blobs = S3TransferEngine.allSettled(uploads, stop);
+
+        String bundleKey = s3.bundleBlobKey(plan.fingerprint());
+        try {
+            if (s3.objectExists(bucket, bundleKey)) {
+                LOGGER.info("Reusing stored bundle {}", bundleKey);
+            } else {
+                long bundleBytes = streamBundle(plan, s3.openUploadStream(bucket, bundleKey), stop);
+                LOGGER.info("Bundle {} uploaded ({} bytes)", bundleKey, bundleBytes);
+            }
+        } catch (ISchedulerException e) {
+            boolean uploadFailed = stop.isCompletedExceptionally() && !stop.isCancelled();
+            stop.cancel(false);
+            blobs.handle((keys, error) -> null).join();
+            if (uploadFailed) {
+                S3Operations.await(blobs, "Failed to upload large files"); // The failure that stopped the bundle
+            }
+            throw e;
+        }
 
-            return new BundleResult(tarData, largeFiles);
+        List<String> blobKeys = S3Operations.await(blobs, "Failed to upload large files");
+        List<LargeFile> largeFiles = new ArrayList<>();
+        for (int i = 0; i < blobKeys.size(); i++) {
+            BundlePlan.Entry e = plan.largeFiles().get(i);
+            largeFiles.add(new LargeFile(e.name(), blobKeys.get(i), e.size()));
+        }
+        return new PayloadManifest(bundleKey, largeFiles);
+    }
 
+    // Small files are written as tar entries straight into a gzip stream that feeds an S3 multipart
+    // upload. Nothing is staged on disk and heap usage is bounded by one upload part.
+    private long streamBundle(BundlePlan plan, S3MultipartOutputStream upload, CompletableFuture<?> stop) throws ISchedulerException {
+        TarGzWriter tar = null;
+        try{
+            tar = new TarGzWriter(upload);
+            for (BundlePlan.Entry e : plan.entries()) {
+                if (stop.isDone()) {
+                    throw new IOException("Payload upload stopped (cancelled or a large file upload failed)");
+                }
+                if (e.directory()) {
+                    tar.putDirectory(e.name(), e.mtime());
+                } else {
+                    // The bundle key comes from the hashes of the scan: other content must not end up under it
+                    tar.putFile(e.name(), e.source(), e.sha256());
+                }
+            }
+            tar.close(); // completes the multipart upload
+            return upload.getTotalBytes();
         } catch (IOException e) {
+            abortQuietly(upload, tar);
             throw new ISchedulerException("Failed to create bundle", e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new ISchedulerException("Interrupted", e);
-        } finally {
-            if (tmpDir != null) {
-                try { deleteDirectoryRecursively(tmpDir); } catch (IOException ignored) {}
-            }
         }
     }
 
-    private int copyBindsToStagingHybrid(List<IBindMount> binds, Path stagingDir, String bucket, String jobId, S3Operations s3, List<LargeFile> largeFiles) throws IOException, ISchedulerException {
-        int count = 0;
-
-        for (IBindMount bind : binds) {
-            if (bind == null || bind.host() == null || bind.container() == null) continue;
-
-            Path hostPath = Paths.get(bind.host());
-            if (!Files.exists(hostPath)) continue;
-
-            String containerBase = stripLeadingSlash(bind.container());
-
-            try (Stream<Path> walk = Files.walk(hostPath)) {
-                for (Path p : walk.toList()) {
-                    if (shouldExclude(p)) continue;
-
-                    if (Files.isRegularFile(p)) {
-                        count++;
-                        String rel = hostPath.relativize(p).toString();
-                        String targetRel = containerBase.isEmpty() ? rel : containerBase + "/" + rel;
-
-                        long size = Files.size(p);
-                        if (size > LARGE_FILE_THRESHOLD_BYTES) {
-                            // ¡SUBIDA DIRECTA A S3!
-                            String s3Key = s3.uploadLargeFile(bucket, jobId, targetRel, p);
-                            largeFiles.add(new LargeFile(targetRel, s3Key));
-                            continue; // NO va al tar.gz
-                        }
-
-                        // Fichero pequeño → al staging
-                        Path targetPath = stagingDir.resolve(targetRel);
-                        copyRecursively(p, targetPath); // reutilizamos tu método
-                    } else if (Files.isDirectory(p)) {
-                        // crear carpetas vacías si hace falta
-                        Path targetPath = stagingDir.resolve(hostPath.relativize(p).toString());
-                        Files.createDirectories(targetPath);
-                    }
+    // Abort first so closing the writer can't complete a partial bundle
+    private void abortQuietly(S3MultipartOutputStream upload, TarGzWriter tar) {
+        upload.abort();
+        if (tar != null) {
+            try { tar.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void collectBind(IBindMount bind, List<BundlePlan.Entry> entries, List<BundlePlan.Entry> largeFiles,
+                             int[] fileCount) throws IOException {
+        if (bind == null || bind.host() == null || bind.container() == null) return;
+
+        Path hostPath = Paths.get(bind.host());
+        if (!Files.exists(hostPath)) return;
+
+        String containerBase = stripLeadingSlash(bind.container());
+
+        Files.walkFileTree(hostPath, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(hostPath) && shouldExclude(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
                 }
-            } catch (ISchedulerException e) {
-                throw e;
+                String name = targetName(containerBase, hostPath, dir);
+                if (!name.isEmpty()) {
+                    entries.add(new BundlePlan.Entry(name, dir, 0, attrs.lastModifiedTime().toMillis() / 1000, true, null));
+                }
+                return FileVisitResult.CONTINUE;
             }
-        }
 
-        return count;
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!attrs.isRegularFile() || (!file.equals(hostPath) && shouldExclude(file))) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (++fileCount[0] > MAX_FILES) {
+                    return FileVisitResult.TERMINATE; // planBundle reports the limit
+                }
+
+                String targetRel = targetName(containerBase, hostPath, file);
+                if (targetRel.indexOf('\t') >= 0 || targetRel.indexOf('\n') >= 0) {
+                    throw new IOException("Unsupported character in payload file name: " + file);
+                }
+                long mtime = attrs.lastModifiedTime().toMillis() / 1000;
+                if (attrs.size() > LARGE_FILE_THRESHOLD_BYTES) {
+                    // Not part of the tar.gz; hashed later by the transfer engine, in parallel with the upload
+                    largeFiles.add(new BundlePlan.Entry(targetRel, file, attrs.size(), mtime, false, null));
+                } else {
+                    entries.add(new BundlePlan.Entry(targetRel, file, attrs.size(), mtime, false, ContentDigest.sha256(file)));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private String executableFlag(Path p) {
+        return Files.isExecutable(p) ? "x" : "-";
+    }
+
+    private String targetName(String containerBase, Path hostPath, Path p) {
+        String rel = hostPath.relativize(p).toString().replace('\\', '/');
+        if (rel.isEmpty()) return containerBase;
+        return containerBase.isEmpty() ? rel : containerBase + "/" + rel;
     }
 
     private boolean shouldExclude(Path path) {
@@ -116,63 +202,9 @@ public class BundleCreator {
         return EXCLUDED.contains(name) || name.endsWith(".pyc") || name.endsWith(".log") || name.startsWith(".");
     }
 
-    // Reference: [10], [11], [31]
-    // Why tar.gz?  [36], [37]
-    private Path createTarGz(Path tmpDir, Path staging) throws IOException, InterruptedException {
-        Path tarGz =  tmpDir.resolve(TAR_FILENAME);
-        ProcessBuilder pb = new ProcessBuilder("tar", "-czf",  tarGz.toString(), "-C", staging.toString(), ".");
-        pb.redirectErrorStream(true);
-        Process p = pb.start();
-
-        int code = p.waitFor();
-        if(code != 0){
-            throw new IOException("Failed to copy Binds bundle TarGz");
-        }
-        return tarGz;
-    }
-
     // Reference: [30]
     private String stripLeadingSlash(String p) {
         if (p == null) return "";
         return p.startsWith("/") ? p.substring(1) : p;
     }
-
-    // Reference: [33], [34], [35]
-    private void copyRecursively(Path src, Path dst) throws IOException {
-        if(Files.isDirectory(src)){
-            Files.createDirectories(dst);
-            try(Stream<Path> s =  Files.walk(src)){
-                for(Path p: s.toList()){
-                    Path rel = src.relativize(p);
-                    Path target = dst.resolve(rel.toString());
-
-                    if(Files.isDirectory(p)){
-                        Files.createDirectories(target);
-                    } else {
-                        Files.createDirectories(target.getParent());
-                        Files.copy(p, target,  StandardCopyOption.REPLACE_EXISTING);
-                    }
-                }
-            }
-        } else {
-            Files.createDirectories(dst.getParent());
-            Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
-        }
-    }
-
-    // Reference: [16]
-    private static void deleteDirectoryRecursively(Path dir) throws IOException {
-        if (!Files.exists(dir)) return;
-
-        try (Stream<Path> paths = Files.walk(dir)) {
-            paths.sorted(Comparator.reverseOrder())
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                        } catch (IOException e) {
-                            LOGGER.warn("Failed to delete file: {}", path, e);
-                        }
-                    });
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package org.ignis.scheduler;
+
+import java.nio.file.Path;
+import java.util.List;
+
+public record BundlePlan(
+        List<Entry> entries,
+        List<Entry> largeFiles,
+        String fingerprint
+) {
+    public record Entry(
+            String name,
+            Path source,
+            long size,
+            long mtime,
+            boolean directory,
+            String sha256
+    ) { }
+
+    public long largeBytes() {
+        return largeFiles.stream().mapToLong(Entry::size).sum();
+    }
+}
@@ -0,0 +1,192 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+import software.amazon.awssdk.services.ec2.model.InstanceType;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// RunInstances over ranked (instance type, AZ) alternatives. A capacity error (no capacity in the
+// pool, type not offered, vCPU quota) moves on to the next candidate instead of failing the job,
+// and the pool is skipped for IGNIS_CAPACITY_COOLDOWN_SECONDS so later launches don't hit it again.
+// With IGNIS_LAUNCH_PARALLEL > 1 each wave tries that many candidates at once; the best ranked one
+// that gets capacity wins, the ones not started are cancelled and the extra instances terminated.
+// Spot and on-demand are separate pools: a candidate says which market it launches in.
+public class CapacityLauncher {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(CapacityLauncher.class);
+
+    private static final long COOLDOWN_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_CAPACITY_COOLDOWN_SECONDS", "300") // Default: 5 mins
+    ) * 1000;
+    private static final int PARALLEL = Math.max(1, Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_LAUNCH_PARALLEL", "1") // Default: one candidate at a time
+    ));
+    private static final int MAX_ATTEMPTS = Math.max(1, Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_LAUNCH_MAX_ATTEMPTS", "8") // Default: 8
+    ));
+
+    // Capacity of that type in that AZ (and market)
+    private static final Set<String> CAPACITY_ERRORS = Set.of(
+            "InsufficientInstanceCapacity", "InsufficientCapacity", "InsufficientHostCapacity", "Unsupported",
+            "SpotMaxPriceTooLow");
+    // Account quotas: they apply to the whole region
+    private static final Set<String> LIMIT_ERRORS = Set.of(
+            "VcpuLimitExceeded", "InstanceLimitExceeded", "MaxSpotInstanceCountExceeded");
+
+    public record Candidate(InstanceType type, String az, boolean spot) {
+        public Candidate(InstanceType type, String az) {
+            this(type, az, false);
+        }
+
+        public Candidate onSpot(boolean spot) {
+            return new Candidate(type, az, spot);
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + az + (spot ? "/spot" : "");
+        }
+    }
+
+    public record Launched(List<String> instanceIds, InstanceType type, String az, String subnet, boolean spot) {
+        public Candidate candidate() {
+            return new Candidate(type, az, spot);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Attempt {
+        List<String> run(Candidate candidate, String subnet) throws Exception;
+    }
+
+    private final Consumer<List<String>> terminator;
+    private final Map<String, Long> cooling = new ConcurrentHashMap<>();
+    private final ExecutorService attempts = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ignis-launch");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CapacityLauncher(Consumer<List<String>> terminator) {
+        this.terminator = terminator;
+    }
+
+    // subnets: AZ -> subnet; candidates in an AZ without one are skipped
+    public Launched launch(List<Candidate> candidates, Map<String, String> subnets, Attempt attempt) throws ISchedulerException {
+        // Pools cooling down go last rather than out: under pressure they may be all we have
+        List<Candidate> order = new ArrayList<>();
+        List<Candidate> cold = new ArrayList<>();
+        for (Candidate c : new LinkedHashSet<>(candidates)) {
+            if (!subnets.containsKey(c.az())) continue;
+            (isCooling(c) ? cold : order).add(c);
+        }
+        order.addAll(cold);
+        if (order.size() > MAX_ATTEMPTS) order = order.subList(0, MAX_ATTEMPTS);
+        if (order.isEmpty()) {
+            throw new ISchedulerException("No launch candidates (zones with a subnet: " + subnets.keySet() + ")");
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (int first = 0; first < order.size(); first += PARALLEL) {
+            List<Candidate> wave = order.subList(first, Math.min(order.size(), first + PARALLEL));
+            List<CompletableFuture<List<String>>> futures = new ArrayList<>();
+            for (Candidate c : wave) {
+                futures.add(submit(attempt, c, subnets.get(c.az())));
+            }
+
+            for (int i = 0; i < wave.size(); i++) {
+                Candidate c = wave.get(i);
+                try {
+                    List<String> ids = futures.get(i).get();
+                    discard(futures, i);
+                    if (first + i > 0) {
+                        System.out.println("[ignis-cloud] Launched on " + c + " after " + failures.size() +
+                                " capacity failure(s)");
+                    }
+                    LOGGER.info("Launched {} on {} (attempt {})", ids, c, first + i + 1);
+                    return new Launched(ids, c.type(), c.az(), subnets.get(c.az()), c.spot());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    discard(futures, -1);
+                    throw new ISchedulerException("Interrupted while launching instances", e);
+                } catch (ExecutionException e) {
+                    String code = errorCode(e.getCause());
+                    if (!CAPACITY_ERRORS.contains(code) && !LIMIT_ERRORS.contains(code)) {
+                        discard(futures, -1);
+                        throw new ISchedulerException("Failed to create EC2 instance: " + message(e.getCause()), e.getCause());
+                    }
+                    coolDown(c, code);
+                    failures.add(c + " (" + code + ")");
+                }
+            }
+        }
+        throw new ISchedulerException("No EC2 capacity for any candidate: " + String.join(", ", failures));
+    }
+
+    public boolean isCooling(Candidate c) {
+        long now = System.currentTimeMillis();
+        return cooling.getOrDefault(poolKey(c, c.az()), 0L) > now ||
+                cooling.getOrDefault(poolKey(c, "*"), 0L) > now;
+    }
+
+    // A spot pool that just took an instance back is not where the relaunch should go
+    public void reclaimed(Candidate c) {
+        coolDown(c, "SpotInstanceTermination");
+    }
+
+    private void coolDown(Candidate c, String code) {
+        String key = poolKey(c, LIMIT_ERRORS.contains(code) ? "*" : c.az());
+        cooling.put(key, System.currentTimeMillis() + COOLDOWN_MS);
+        LOGGER.warn("No capacity for {} ({}), skipping it for {} s", key, code, COOLDOWN_MS / 1000);
+    }
+
+    private static String poolKey(Candidate c, String az) {
+        return c.type() + "@" + az + (c.spot() ? "/spot" : "");
+    }
+
+    // Completing the future and cancelling it race on the same CAS: whoever loses owns the instances
+    private CompletableFuture<List<String>> submit(Attempt attempt, Candidate candidate, String subnet) {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        attempts.execute(() -> {
+            if (future.isDone()) return; // Cancelled before it started
+            try {
+                List<String> ids = attempt.run(candidate, subnet);
+                if (!future.complete(ids)) terminator.accept(ids);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void discard(List<CompletableFuture<List<String>>> futures, int keep) {
+        for (int i = 0; i < futures.size(); i++) {
+            if (i == keep) continue;
+            CompletableFuture<List<String>> future = futures.get(i);
+            if (!future.cancel(false)) {
+                future.thenAccept(ids -> {
+                    LOGGER.info("Terminating surplus instances {} from a parallel launch", ids);
+                    terminator.accept(ids);
+                });
+            }
+        }
+    }
+
+    private static String errorCode(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof Ec2Exception ec2 && ec2.awsErrorDetails() != null) {
+                return ec2.awsErrorDetails().errorCode();
+            }
+        }
+        return "";
+    }
+
+    private static String message(Throwable e) {
+        if (e instanceof Ec2Exception ec2 && ec2.awsErrorDetails() != null) {
+            return ec2.awsErrorDetails().errorMessage();
+        }
+        return e.getMessage();
+    }
+}
@@ -1,11 +1,13 @@
 package org.ignis.scheduler;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.ignis.scheduler.model.*;
 import java.io.*;
-import java.net.Socket;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.regions.Region;
@@ -18,18 +20,58 @@ import software.amazon.awssdk.services.ssm.SsmClient;
 public class Cloud implements IScheduler {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(Cloud.class);
 
-    private final TerraformManager terraformManager;
+    private final InfrastructureProvisioner provisioner;
     private final AwsFactory awsFactory;
     private final EC2Operations ec2;
     private final S3Operations s3;
     private final UserDataBuilder userDataBuilder;
     private final BundleCreator bundleCreator;
     private final PayloadResolver payloadResolver;
-
-    private final Map<String, JobMeta> jobs = new ConcurrentHashMap<>();
+    private final InfrastructureLifecycle infrastructure;
+    private final WarmPool warmPool;
+    private final Ec2ClusterManager ec2Clusters;
+    private final AmiBaker amiBaker;
+
+    private final JobMetaStore jobs;
+    private final Map<String, CompletableFuture<IContainerInfo.IStatus>> completions = new ConcurrentHashMap<>();
+    private final JobWatcher watcher;
     private final ObjectMapper mapper = new ObjectMapper();
+    // Blocking submission steps (provisioning, scanning, AWS lookups) run here so they can overlap
+    private final ExecutorService submissions = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ignis-submit");
+        t.setDaemon(true);
+        return t;
+    });
     private final Map<String, IContainerInfo.IStatus> runtimeStatus = new ConcurrentHashMap<>();
-    private final String dockerBin = System.getenv().getOrDefault("IGNIS_DOCKER_BIN", "/usr/bin/docker");
+    // Jobs whose driver runs on spot: what it takes to launch it again after an interruption
+    private final Map<String, SpotLaunch> spotLaunches = new ConcurrentHashMap<>();
+    private final DockerClient docker = new DockerClient(System.getenv().getOrDefault("IGNIS_DOCKER_SOCKET", "/var/run/docker.sock"));
+
+    // createJob returns as soon as the instance is launched; completion is handled in the background
+    private static final boolean ASYNC_SUBMIT = Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_ASYNC"));
+    // Print the job output while createJob waits for it
+    private static final boolean STREAM_LOGS = Boolean.parseBoolean(
+            System.getenv().getOrDefault("IGNIS_STREAM_LOGS", "true") // Default: true
+    );
+    private static final long JOB_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_JOB_TIMEOUT_MINUTES", "10") // Default: 10 mins
+    ) * 60 * 1000;
+    // After this many spot interruptions the job is relaunched on demand
+    private static final int SPOT_MAX_INTERRUPTIONS = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_SPOT_MAX_INTERRUPTIONS", "2") // Default: 2
+    );
+
+    // "docker": executors run next to the driver; "ec2": one instance per executor (Ec2ClusterManager)
+    private static final String CLUSTER_MODE = System.getenv().getOrDefault("IGNIS_CLUSTER_MODE", "docker").trim().toLowerCase();
+    private static final int EXECUTOR_LAUNCH_PARALLELISM = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_EXECUTOR_LAUNCH_PARALLELISM", "8")
+    );
+    private static final long EXECUTOR_READY_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_EXECUTOR_READY_TIMEOUT_SECONDS", "60")
+    ) * 1000;
+    private static final int EXECUTOR_READY_PORT = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_EXECUTOR_READY_PORT", "1963")
+    );
 
     private final static Map<String, IContainerInfo.IStatus> CLOUD_STATUS = new HashMap<>() {
         {
@@ -54,11 +96,19 @@ public class Cloud implements IScheduler {
         SsmClient ssmClient = awsFactory.createSsmClient();
 
         this.ec2 = new EC2Operations(ec2Client, ssmClient, awsFactory);
-        this.terraformManager = new TerraformManager(awsFactory.getRegion().id(), ec2.resolveAvailabilityZone());
+        this.provisioner = InfrastructureProvisioner.fromEnv(awsFactory, ec2.resolveAvailabilityZones());
         this.s3 = new S3Operations(s3Client);
         this.userDataBuilder = new UserDataBuilder();
         this.bundleCreator = new BundleCreator();
         this.payloadResolver = new PayloadResolver();
+        this.warmPool = new WarmPool(ec2, s3, userDataBuilder, awsFactory.getRegion().id());
+        this.infrastructure = new InfrastructureLifecycle(provisioner, s3, warmPool, awsFactory.getRegion().id());
+        this.amiBaker = new AmiBaker(ec2, s3, userDataBuilder, infrastructure);
+        this.watcher = new JobWatcher(s3, this::parseStatus, ec2.getStateCache());
+        this.jobs = new JobMetaStore(awsFactory.getRegion().id(), this::loadJobMeta);
+        resumeRecoveredJobs();
+        this.ec2Clusters = new Ec2ClusterManager(ec2, s3, userDataBuilder, awsFactory.getRegion().id(),
+                state -> CLOUD_STATUS.getOrDefault(state.toLowerCase(), IContainerInfo.IStatus.UNKNOWN));
     }
 
     private Region resolveRegion() throws  ISchedulerException {
@@ -79,28 +129,22 @@ public class Cloud implements IScheduler {
         throw new ISchedulerException("AWS region not configured. Set IGNIS_AWS_REGION or configure it in ~/.aws/config (aws configure) or export AWS_REGION/AWS_DEFAULT_REGION.");
     }
 
-    private JobMeta resolveJobMeta(String jobId) {
-        JobMeta meta = jobs.get(jobId);
-        if (meta != null) return meta;
-
-        String bucket = null;
-        try {
-            bucket = terraformManager.requireOutput("jobs_bucket_name");
-        } catch (Exception e) {
-            bucket = System.getenv("IGNIS_JOBS_BUCKET");
-        }
-
+    // Cold miss of the job meta store
+    private JobMeta loadJobMeta(String jobId) throws ISchedulerException {
+        String bucket = resolveBucket();
         if (bucket == null){
-            LOGGER.warn("Could not resolve bucket for job {}", jobId);
-            return null;
+            throw new ISchedulerException("Could not resolve the jobs bucket to look up job " + jobId);
         }
 
-        meta = s3.loadJobMetaFromS3(jobId, bucket);
-        if(meta != null){
-            jobs.put(jobId, meta);
-        }
+        return s3.loadJobMetaFromS3(jobId, bucket);
+    }
 
-        return meta;
+    private String resolveBucket() {
+        try {
+            return provisioner.requireOutput("jobs_bucket_name");
+        } catch (Exception e) {
+            return System.getenv("IGNIS_JOBS_BUCKET");
+        }
     }
 
     private String launchExecutor(String job, int index, IClusterRequest request) throws ISchedulerException {
@@ -108,87 +152,154 @@ public class Cloud implements IScheduler {
 
         // Lanzar contenedor
         try {
-            List<String> cmd = new ArrayList<>();
-            cmd.add(dockerBin);
-            cmd.add("run");
-            cmd.add("-d");
-            cmd.add("--network"); cmd.add("host");
-            cmd.add("--name"); cmd.add(containerName);
+            ObjectNode config = mapper.createObjectNode();
+            config.put("Image", request.resources().image());
 
+            ArrayNode env = config.putArray("Env");
             for (var entry : request.resources().env().entrySet()) {
                 String value = entry.getValue();
                 if (value != null) value = value.trim();
-                cmd.add("-e"); cmd.add(entry.getKey() + "=" + value);
+                env.add(entry.getKey() + "=" + value);
             }
-
-            cmd.add("-e"); cmd.add("IGNIS_SCHEDULER_ENV_JOB=" + job);
-            cmd.add("-e"); cmd.add("IGNIS_SCHEDULER_ENV_CONTAINER=" + containerName);
-            cmd.add("-e"); cmd.add("IGNIS_JOB_ID=" + job);
-            cmd.add("-e"); cmd.add("IGNIS_JOB_CONTAINER_DIR=/opt/ignis/jobs");
-            cmd.add("-e"); cmd.add("IGNIS_JOB_DIR=/opt/ignis/jobs/" + job);
-            cmd.add("-v"); cmd.add("/ignis/dfs:/ignis/dfs");
-            cmd.add("-v"); cmd.add("/var/run/docker.sock:/var/run/docker.sock");
-            cmd.add("-v"); cmd.add("/opt/ignis/jobs/" + job + ":/opt/ignis/jobs/" + job);
-            cmd.add(request.resources().image());
-
-            List<String> executorArgs = new ArrayList<>();
-            executorArgs.add("ignis-logger");
+            env.add("IGNIS_SCHEDULER_ENV_JOB=" + job);
+            env.add("IGNIS_SCHEDULER_ENV_CONTAINER=" + containerName);
+            env.add("IGNIS_JOB_ID=" + job);
+            env.add("IGNIS_JOB_CONTAINER_DIR=/opt/ignis/jobs");
+            env.add("IGNIS_JOB_DIR=/opt/ignis/jobs/" + job);
+
+            ArrayNode cmd = config.putArray("Cmd");
+            cmd.add("ignis-logger");
             if (request.resources().args() != null && !request.resources().args().isEmpty()) {
-                executorArgs.addAll(request.resources().args());
+                request.resources().args().forEach(cmd::add);
             } else {
-                executorArgs.add("ignis-run");
+                cmd.add("ignis-run");
             }
-            cmd.addAll(executorArgs);
 
-            ProcessBuilder pb = new ProcessBuilder(cmd);
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            int rc = p.waitFor();
-            if (rc != 0) {
-                String out = new String(p.getInputStream().readAllBytes());
-                throw new ISchedulerException("docker run failed for executor " + index + ": " + out);
-            }
+            ObjectNode hostConfig = config.putObject("HostConfig");
+            hostConfig.put("NetworkMode", "host");
+            ArrayNode binds = hostConfig.putArray("Binds");
+            binds.add("/ignis/dfs:/ignis/dfs");
+            binds.add("/var/run/docker.sock:/var/run/docker.sock");
+            binds.add("/opt/ignis/jobs/" + job + ":/opt/ignis/jobs/" + job);
+
+            String id = docker.createContainer(containerName, config);
+            docker.startContainer(id);
         } catch (ISchedulerException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new ISchedulerException("Error launching executor container " + index, e);
+            throw new ISchedulerException("docker run failed for executor " + index + ": " + e.getMessage(), e);
         }
 
         // Configurar authorized_keys
         String publicKey = request.resources().env().get("IGNIS_CRYPTO_PUBLIC");
         if (publicKey != null) {
+            publicKey = publicKey.trim();
+            DockerClient.ExecResult result;
             try {
-                publicKey = publicKey.trim();
-                ProcessBuilder mkdirPb = new ProcessBuilder(dockerBin, "exec", containerName,
-                        "bash", "-c",
+                result = docker.exec(containerName, List.of("bash", "-c",
                         "mkdir -p /root/.ssh && chmod 700 /root/.ssh && echo '" + publicKey +
-                                "' > /root/.ssh/authorized_keys && chmod 600 /root/.ssh/authorized_keys");
-                mkdirPb.redirectErrorStream(true);
-                Process mkdirP = mkdirPb.start();
-                int rc = mkdirP.waitFor();
-                if (rc != 0) {
-                    String out = new String(mkdirP.getInputStream().readAllBytes());
-                    new ProcessBuilder(dockerBin, "stop", containerName).start().waitFor();
-                    throw new ISchedulerException("Failed to configure SSH keys for executor " + index + ": " + out);
-                }
+                                "' > /root/.ssh/authorized_keys && chmod 600 /root/.ssh/authorized_keys"));
             } catch (ISchedulerException e) {
-                throw e;
-            } catch (Exception e) {
                 throw new ISchedulerException("Error configuring SSH keys for executor " + index, e);
             }
+            if (result.exitCode() != 0) {
+                try {
+                    docker.stopContainer(containerName, 10);
+                } catch (ISchedulerException e) {
+                    LOGGER.warn("Failed to stop executor container {}", containerName, e);
+                }
+                throw new ISchedulerException("Failed to configure SSH keys for executor " + index + ": " + result.output());
+            }
         } else {
             LOGGER.warn("IGNIS_CRYPTO_PUBLIC not found, executor {} may fail SSH authentication", containerName);
         }
 
-        // Esperar arranque
+        awaitExecutorReady(containerName, index);
+        return containerName;
+    }
+
+    // Waits until the container runs (and is healthy, if the image defines a HEALTHCHECK). Exits are
+    // reported right away with the exit code and the end of the container log.
+    private void awaitExecutorReady(String containerName, int index) throws ISchedulerException {
+        long deadline = System.currentTimeMillis() + EXECUTOR_READY_TIMEOUT_MS;
+        long backoff = 20;
+        while (true) {
+            JsonNode state = docker.inspectContainer(containerName);
+            if (state == null) {
+                throw new ISchedulerException("Executor " + index + " (" + containerName + ") disappeared while starting");
+            }
+            state = state.path("State");
+            String status = state.path("Status").asText("");
+            String health = state.path("Health").path("Status").asText("");
+
+            if (status.equals("exited") || status.equals("dead") || health.equals("unhealthy")) {
+                throw new ISchedulerException("Executor " + index + " (" + containerName + ") failed to start: status="
+                        + status + (health.isEmpty() ? "" : ", health=" + health)
+                        + ", exit code " + state.path("ExitCode").asInt() + executorLogTail(containerName));
+            }
+            if (status.equals("running") && (health.isEmpty() || health.equals("healthy"))) {
+                LOGGER.debug("Executor {} ready", containerName);
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new ISchedulerException("Executor " + index + " (" + containerName + ") not ready after "
+                        + EXECUTOR_READY_TIMEOUT_MS / 1000 + " seconds (status=" + status + ", health=" + health + ")");
+            }
+            sleepQuietly(backoff, "executor " + index);
+            backoff = Math.min(500, backoff * 2);
+        }
+    }
+
+    private String executorLogTail(String containerName) {
+        try {
+            String logs = docker.logs(containerName, 20).trim();
+            return logs.isEmpty() ? "" : "\n" + logs;
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    // A partially started cluster is useless to the caller, so every container of this launch goes
+    private void removeExecutorsQuietly(String job, int instances) {
+        for (int i = 0; i < instances; i++) {
+            String name = job + "-executor-" + i;
+            try {
+                docker.removeContainer(name, true);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to clean up executor {}", name, e);
+            }
+        }
+    }
+
+    // Listening sockets on the port (state 0A in /proc/net/tcp*, which the host network shares) whose
+    // inode one of the container's own processes has open
+    private static final String LISTENING_PROBE = """
+            port=$(printf ':%04X' "$1")
+            for inode in $(awk -v p="$port" '$4 == "0A" && substr($2, length($2) - 4) == p { print $10 }' /proc/net/tcp /proc/net/tcp6 2>/dev/null); do
+              ls -l /proc/[0-9]*/fd 2>/dev/null | grep -q "socket:\\[$inode\\]" && exit 0
+            done
+            exit 1
+            """;
+
+    private boolean executorListening(String containerName) {
+        try {
+            JsonNode health = docker.inspectContainer(containerName).path("State").path("Health");
+            if (!health.isMissingNode()) {
+                return health.path("Status").asText("").equals("healthy");
+            }
+            return docker.exec(containerName, List.of("sh", "-c", LISTENING_PROBE, "probe",
+                    String.valueOf(EXECUTOR_READY_PORT))).exitCode() == 0;
+        } catch (Exception e) {
+            LOGGER.debug("Could not probe executor {}", containerName, e);
+            return false;
+        }
+    }
+
+    private static void sleepQuietly(long millis, String what) throws ISchedulerException {
         try {
-            Thread.sleep(5000);
+            Thread.sleep(millis);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            throw new ISchedulerException("Interrupted while waiting for executor " + index + " to start", e);
+            throw new ISchedulerException("Interrupted while waiting for " + what, e);
         }
-
-        return containerName;
     }
 
     private IContainerInfo buildExecutorContainerInfo(String containerName, String job, IClusterRequest request) {
@@ -219,148 +330,424 @@ public class Cloud implements IScheduler {
 
     private IContainerInfo.IStatus statusFromS3(JobMeta meta) {
         try {
-            String key = "jobs/" + meta.jobId() + "/status.json";
-            String json = s3.getString(meta.bucket(), key);
-            if (json == null || json.isBlank()) return null;
+            return parseStatus(s3.getString(meta.bucket(), s3.jobStatusKey(meta.jobId())));
+        } catch (Exception e) {
+            LOGGER.debug("Could not read status.json for job {}", meta.jobId(), e);
+            return null;
+        }
+    }
 
+    private IContainerInfo.IStatus parseStatus(String json) {
+        if (json == null || json.isBlank()) return null;
+        try {
             var node = mapper.readTree(json);
             String state = node.path("state").asText(null);
             if (state == null) return null;
 
             return switch (state) {
+                case "RUNNING" -> IContainerInfo.IStatus.RUNNING;
                 case "FINISHED" -> IContainerInfo.IStatus.FINISHED;
                 case "FAILED" -> IContainerInfo.IStatus.ERROR;
+                // Terminal for this instance; watchJob decides whether the job goes on elsewhere
+                case "INTERRUPTED" -> IContainerInfo.IStatus.ERROR;
                 case "DESTROYED" -> IContainerInfo.IStatus.DESTROYED;
                 default -> IContainerInfo.IStatus.UNKNOWN;
             };
         } catch (Exception e) {
-            LOGGER.debug("Could not read/parse status.json for job {}", meta.jobId(), e);
+            LOGGER.debug("Could not parse status.json: {}", json, e);
             return null;
         }
     }
 
-    private void cleanupInfrastructure(String bucket) {
+    @Override
+    public String createJob(String name, IClusterRequest driver, IClusterRequest... executors) throws ISchedulerException {
+        String jobId = ISchedulerUtils.genId().substring(0, 8);
+        String finalJobName = name.replace("/", "-") + "-" + jobId;
+        LOGGER.info("Creating job with name {} and id {}", finalJobName, jobId);
+
+        JobMeta meta;
         try {
-            s3.emptyBucket(bucket);
-        } catch (Exception e) {
-            LOGGER.warn("Failed to empty bucket {}", bucket, e);
+            meta = launchJob(jobId, finalJobName, driver);
+        } catch (ISchedulerException | RuntimeException e) {
+            infrastructure.release(jobId, resolveBucket());
+            throw e;
+        }
+
+        // The end of the log is printed before the completion messages
+        JobLogFollower logs = ASYNC_SUBMIT || !STREAM_LOGS ? null : new JobLogFollower(s3, meta.bucket(), jobId, System.out);
+        CompletableFuture<IContainerInfo.IStatus> completion = follow(meta, logs);
+
+        if (ASYNC_SUBMIT) {
+            System.out.println("[ignis-cloud] Job " + jobId + " submitted. Results will be downloaded when it finishes.");
+            LOGGER.info("Submitted job with name {} and id {}", finalJobName, jobId);
+            return jobId;
         }
-        closeClients();
+
+        System.out.println("[ignis-cloud] Job running...");
         try {
-            terraformManager.destroy();
-        } catch (Exception e) {
-            LOGGER.warn("Failed to destroy Terraform infrastructure", e);
+            completion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for job {}", jobId);
+        } catch (CancellationException | ExecutionException e) {
+            LOGGER.debug("Job {} completion ended abnormally", jobId, e);
         }
+        LOGGER.info("Created job with name {} and id {}", finalJobName, jobId);
+        return jobId;
     }
 
-    private void closeClients() {
-        ec2.close();
-        s3.close();
+    // Watches the job to its end and finishes it there
+    private CompletableFuture<IContainerInfo.IStatus> follow(JobMeta meta, JobLogFollower logs) {
+        String jobId = meta.jobId();
+        CompletableFuture<IContainerInfo.IStatus> completion = watchJob(meta)
+                .handleAsync((status, error) -> {
+                    if (logs != null) logs.close();
+                    return finishJob(meta, status, error);
+                }, watcher.completionExecutor());
+        completions.put(jobId, completion);
+        completion.whenComplete((status, error) -> completions.remove(jobId, completion));
+        return completion;
     }
 
-    @Override
-    public String createJob(String name, IClusterRequest driver, IClusterRequest... executors) throws ISchedulerException {
+    // Jobs an earlier process of this scheduler left in flight (JobMetaStore journal). The ones that
+    // ended meanwhile are retired; the others hold the infrastructure and are followed to their end
+    // again, as if this process had launched them.
+    private void resumeRecoveredJobs() {
+        if (Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"))) return;
+        for (JobMeta meta : jobs.inFlight()) {
+            submissions.execute(() -> resumeJob(meta));
+        }
+    }
 
-        terraformManager.ensureInfrastructure();
+    private void resumeJob(JobMeta meta) {
+        String jobId = meta.jobId();
+        IContainerInfo.IStatus status = statusFromS3(meta);
+        if (status == IContainerInfo.IStatus.FINISHED || status == IContainerInfo.IStatus.ERROR
+                || status == IContainerInfo.IStatus.DESTROYED) {
+            LOGGER.info("Job {} ended ({}) while the scheduler was down", jobId, status);
+            System.out.println("[ignis-cloud] Job " + jobId + " ended (" + status + ") while the scheduler was down. Results at: s3://" +
+                    meta.bucket() + "/" + s3.jobResultsPrefix(jobId));
+            jobs.retire(jobId);
+            return;
+        }
+        try {
+            infrastructure.acquire(jobId);
+        } catch (ISchedulerException e) {
+            // Stays in the journal, the next start tries again
+            LOGGER.warn("Could not resume job {}: {}", jobId, e.getMessage());
+            return;
+        }
+        LOGGER.info("Resuming job {} on instance {}", jobId, meta.instanceId());
+        ec2.getStateCache().track(meta.instanceId());
+        follow(meta, null);
+    }
 
-        String jobId = ISchedulerUtils.genId().substring(0, 8);
-        String finalJobName = name.replace("/", "-") + "-" + jobId;
-        LOGGER.info("Creating job with name {} and id {}", finalJobName, jobId);
+    // Launch settings of a spot driver, kept to relaunch it. attempt counts the interruptions so far.
+    private record SpotLaunch(String jobName, Map<String, String> driverEnv, String bakedDigest, String amiId,
+                              Map<String, String> subnets, String sg, String profile,
+                              List<CapacityLauncher.Candidate> candidates, CapacityLauncher.Launched launched, int attempt) {
+        SpotLaunch next(CapacityLauncher.Launched relaunched) {
+            return new SpotLaunch(jobName, driverEnv, bakedDigest, amiId, subnets, sg, profile, candidates, relaunched, attempt + 1);
+        }
+    }
 
-        String subnet = terraformManager.requireOutput("subnet_id");
-        String sg = terraformManager.requireOutput("sg_id");
-        String iamRoleArn=""; // TODO: comprobar si con la cuenta AWS Academy puedo usar roles IAM: Antes tenía esto: //String iamRoleArn = terraformManager.requireOutput("iam_role_arn"); & //String iamInstanceProfile = terraformManager.requireOutput("aws_iam_instance_profile");
-        String bucket = terraformManager.requireOutput("jobs_bucket_name");
+    // Follows the job across spot interruptions: an interrupted driver is launched again (in another
+    // pool if it can) and the new instance is watched with a fresh timeout. The live log keeps going
+    // since the new attempt numbers its chunks after the old ones.
+    private CompletableFuture<IContainerInfo.IStatus> watchJob(JobMeta meta) {
+        return watcher.watch(meta, JOB_TIMEOUT_MS).thenComposeAsync(status -> {
+            SpotLaunch spot = spotLaunches.get(meta.jobId());
+            if (status != IContainerInfo.IStatus.ERROR || spot == null || !wasInterrupted(meta, spot)) {
+                return CompletableFuture.completedFuture(status);
+            }
+            JobMeta next;
+            try {
+                next = relaunch(meta, spot);
+            } catch (ISchedulerException e) {
+                LOGGER.error("Could not relaunch job {} after a spot interruption", meta.jobId(), e);
+                System.out.println("[ignis-cloud] Could not relaunch job " + meta.jobId() + ": " + e.getMessage());
+                return CompletableFuture.completedFuture(IContainerInfo.IStatus.ERROR);
+            }
+            return watchJob(next);
+        }, watcher.completionExecutor());
+    }
+
+    // The notice says INTERRUPTED in status.json; without one (reclaimed before it was seen) EC2
+    // still says why the instance went away
+    private boolean wasInterrupted(JobMeta meta, SpotLaunch spot) {
+        if (!spot.launched().spot()) return false;
+        try {
+            String json = s3.getString(meta.bucket(), s3.jobStatusKey(meta.jobId()));
+            if (json != null && "INTERRUPTED".equals(mapper.readTree(json).path("state").asText())) return true;
+        } catch (Exception e) {
+            LOGGER.debug("Could not read status.json for job {}", meta.jobId(), e);
+        }
+        return ec2.wasSpotReclaimed(meta.instanceId());
+    }
+
+    private JobMeta relaunch(JobMeta meta, SpotLaunch spot) throws ISchedulerException {
+        String jobId = meta.jobId();
+        String bucket = meta.bucket();
+        int attempt = spot.attempt() + 1;
+        ec2.spotReclaimed(spot.launched().candidate());
+        if (!jobs.isInFlight(jobId)) throw new CancellationException("Job " + jobId + " was cancelled");
+        terminateExecutorNodes(jobId); // The new driver creates its own clusters
+
+        // Not terminal: the watcher keeps waiting for the new instance
+        s3.putString(bucket, s3.jobStatusKey(jobId), "{\"state\":\"RELAUNCHED\",\"attempt\":" + attempt + "}",
+                "application/json");
+        boolean onDemand = attempt >= SPOT_MAX_INTERRUPTIONS;
+        System.out.println("[ignis-cloud] Spot instance " + meta.instanceId() + " of job " + jobId +
+                " was interrupted, relaunching" + (onDemand ? " on demand" : "") + ". Partial results at: s3://" +
+                bucket + "/" + s3.jobAttemptResultsPrefix(jobId, spot.attempt()));
+
+        String userData = userDataBuilder.buildUserData(awsFactory.getRegion().id(), spot.jobName(), jobId, bucket,
+                s3.payloadManifestKey(jobId), meta.image(), meta.cmd(), spot.driverEnv(), spot.bakedDigest(), attempt);
+        CapacityLauncher.Launched launched = ec2.launchInstances(spot.jobName() + "-driver", userData, spot.amiId(),
+                spot.subnets(), spot.sg(), spot.profile(), 1, Map.of(), ec2.forMarket(spot.candidates(), onDemand));
+        String instanceId = launched.instanceIds().get(0);
+        ec2.getStateCache().track(instanceId);
+
+        JobMeta next = new JobMeta(jobId, meta.jobName(), bucket, instanceId, meta.image(), meta.cmd(),
+                meta.cpus(), meta.memory(), meta.gpu(), meta.args());
+        if (!jobs.replace(jobId, meta, next)) {
+            // Cancelled while the new instance was starting
+            try {
+                ec2.terminateInstance(instanceId);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to terminate instance {} of cancelled job {}", instanceId, jobId, e);
+            }
+            throw new CancellationException("Job " + jobId + " was cancelled");
+        }
+        spotLaunches.put(jobId, spot.next(launched));
+        try {
+            s3.saveJobMetaToS3(next);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to save job meta to S3 for job {}, continuing", jobId, e);
+        }
+        LOGGER.info("Job {} relaunched on {} as {} (attempt {})", jobId, launched.candidate(), instanceId, attempt);
+        return next;
+    }
 
+    // Submission runs as a dependency graph instead of a sequence. Payload scanning and the AMI and
+    // instance type lookups overlap with provisioning. The scan has to succeed before anything billable
+    // starts (too many files, a missing bind); then the instance is launched while the payload uploads. Userdata waits for the manifest, which is published last
+    // (after job-meta.json), so it doubles as the "payload ready" marker.
+    private JobMeta launchJob(String jobId, String finalJobName, IClusterRequest driver) throws ISchedulerException {
+        String iamRoleArn=""; // TODO: comprobar si con la cuenta AWS Academy puedo usar roles IAM: Antes tenía esto: //String iamRoleArn = terraformManager.requireOutput("iam_role_arn"); & //String iamInstanceProfile = terraformManager.requireOutput("aws_iam_instance_profile");
         String iamInstanceProfile = System.getenv("IGNIS_IAM_INSTANCE_PROFILE"); //TODO: estoy usando por defecto: -p ignis.submitter.env.IGNIS_IAM_INSTANCE_PROFILE=EMR_EC2_DefaultRole
         if (iamInstanceProfile == null || iamInstanceProfile.isBlank()) {
             throw new ISchedulerException("Missing IGNIS_IAM_INSTANCE_PROFILE (IAM creation disabled in this AWS account)");
         }
+        String image = driver.resources().image();
+        String cmd = payloadResolver.resolveCommand(driver);
+
+        CompletableFuture<Void> infra = stage(() -> {
+            infrastructure.acquire(jobId);
+            return null;
+        });
+        CompletableFuture<BundlePlan> plan = stage(() ->
+                bundleCreator.planBundle(new ArrayList<>(payloadResolver.buildPayloadBindsFromArgs(driver))));
+        CompletableFuture<AmiBaker.Resolved> ami = stage(() -> amiBaker.resolve(image));
+        CompletableFuture<List<CapacityLauncher.Candidate>> candidates = stage(() ->
+                ec2.rankLaunchCandidates(driver, ec2.resolveAvailabilityZones(), false));
+
+        // Always wait for the infrastructure first so a failure elsewhere never races with the lease being taken
+        S3Operations.await(infra, "Failed to provision infrastructure for job " + jobId);
+        String subnet = provisioner.requireOutput("subnet_id");
+        Map<String, String> subnets = provisioner.subnets();
+        String sg = provisioner.requireOutput("sg_id");
+        String bucket = provisioner.requireOutput("jobs_bucket_name");
         if(subnet == null || sg == null || bucket == null) {
-            throw new ISchedulerException("Terraform outputs not found");
+            plan.cancel(true);
+            throw new ISchedulerException("Infrastructure outputs not found");
         }
 
-        // Prepare Payload
-        String bundleKey;
-        try {
-            List<IBindMount> binds = new ArrayList<>(payloadResolver.buildPayloadBindsFromArgs(driver));
-            BundleResult result = bundleCreator.createBundleTarGzHybrid(binds, bucket, jobId, s3);
-            bundleKey = s3.uploadJobBundle(bucket, jobId, result.tarGz());
-        } catch (Exception e) {
-            throw new ISchedulerException("Failed to prepare job payload for job " + jobId, e);
-        }
+        BundlePlan bundlePlan = S3Operations.await(plan, "Failed to prepare job payload for job " + jobId);
+        CompletableFuture<Void> abandon = new CompletableFuture<>();
+        CompletableFuture<PayloadManifest> payload = stage(() -> bundleCreator.uploadBlobs(bundlePlan, bucket, s3, abandon));
 
-        // Launch EC2 instance
-        String instanceId, cmd, ami;
+        // Launch EC2 instance (or hand the job to a warm one)
+        String instanceId;
+        AmiBaker.Resolved amiChoice = null;
+        SpotLaunch spot = null;
         try {
-            String image = driver.resources().image();
-            ami = ec2.resolveAMI();
-            cmd = payloadResolver.resolveCommand(driver);
-            String userData = userDataBuilder.buildUserData(awsFactory.getRegion().id(), finalJobName, jobId, bucket, bundleKey, image, cmd);
-            InstanceType instanceType = ec2.resolveInstanceType(driver);
-            instanceId = ec2.createEC2Instance(finalJobName + "-driver", userData, ami, subnet, sg, iamRoleArn, instanceType, iamInstanceProfile);
+            amiChoice = S3Operations.await(ami, "Failed to resolve AMI");
+            // The driver needs the network settings to launch executor instances itself
+            Map<String, String> driverEnv = new LinkedHashMap<>();
+            driverEnv.put("IGNIS_CLUSTER_MODE", CLUSTER_MODE);
+            driverEnv.put(JobKeyLayout.ENV, s3.getKeyLayout().envValue());
+            if (isEc2ClusterMode()) {
+                driverEnv.put("IGNIS_SUBNET_ID", subnet);
+                driverEnv.put("IGNIS_SUBNET_IDS", formatSubnets(subnets));
+                driverEnv.put("IGNIS_SG_ID", sg);
+                driverEnv.put("IGNIS_IAM_INSTANCE_PROFILE", iamInstanceProfile);
+                driverEnv.put("IGNIS_AMI", amiChoice.amiId());
+            }
+            String userData = userDataBuilder.buildUserData(awsFactory.getRegion().id(), finalJobName, jobId, bucket,
+                    s3.payloadManifestKey(jobId), image, cmd, driverEnv, amiChoice.bakedDigest(), 0);
+            List<CapacityLauncher.Candidate> ranked = S3Operations.await(candidates, "Failed to resolve instance type");
+            WarmPool.PoolKey poolKey = new WarmPool.PoolKey(ranked.get(0).type(), image);
+            Optional<String> warm = warmPool.isEnabled() ? warmPool.claim(poolKey) : Optional.empty();
+            if (warm.isPresent()) {
+                instanceId = warm.get();
+                warmPool.dispatch(bucket, instanceId, finalJobName + "-driver", userData);
+                System.out.println("[ignis-cloud] Using warm instance " + instanceId);
+            } else {
+                CapacityLauncher.Launched launched = ec2.launchInstances(finalJobName + "-driver", userData,
+                        amiChoice.amiId(), subnets, sg, iamInstanceProfile, 1, Map.of(), ec2.forMarket(ranked, false));
+                instanceId = launched.instanceIds().get(0);
+                if (launched.spot()) {
+                    spot = new SpotLaunch(finalJobName, driverEnv, amiChoice.bakedDigest(), amiChoice.amiId(),
+                            subnets, sg, iamInstanceProfile, ranked, launched, 0);
+                }
+            }
+            if (warmPool.isEnabled()) {
+                warmPool.replenish(poolKey, new WarmPool.LaunchSpec(bucket, amiChoice.amiId(),
+                        subnets, sg, iamInstanceProfile));
+            }
         } catch (Exception e) {
+            stopPayload(payload, abandon);
             throw new ISchedulerException("Failed to launch EC2 instance for job " + jobId, e);
         }
 
+        ec2.getStateCache().track(instanceId);
+        if (!amiChoice.upToDate()) {
+            // Later jobs with this image boot from an AMI that already has it
+            amiBaker.bakeAsync(image, new AmiBaker.BakeSpec(awsFactory.getRegion().id(), bucket, subnet, sg, iamInstanceProfile));
+        }
+
         // Save metadata
         JobMeta meta = new JobMeta(jobId, finalJobName, bucket, instanceId,
-                driver.resources().image(), cmd,
+                image, cmd,
                 driver.resources().cpus(), driver.resources().memory(),
                 driver.resources().gpu(), driver.resources().args());
-        jobs.put(jobId, meta);
+        jobs.put(meta);
+        if (spot != null) spotLaunches.put(jobId, spot);
         try {
             s3.saveJobMetaToS3(meta);
         } catch (Exception e) {
             LOGGER.warn("Failed to save job meta to S3 for job {}, continuing", jobId, e);
         }
 
-        // Wait for results and download
-        // TODO: esta es la espera activa (si no convence puede obviarse, pero me permite descargarle al usuario los ficheros)
-        long maxWaitMs = 10 * 60 * 1000; // 10 mins
-        long start = System.currentTimeMillis();
+        // Release the instance: it has been waiting for the manifest since boot
+        try {
+            PayloadManifest manifest = S3Operations.await(payload, "Failed to prepare job payload for job " + jobId);
+            s3.uploadPayloadManifest(bucket, jobId, manifest);
+        } catch (ISchedulerException e) {
+            jobs.remove(jobId);
+            spotLaunches.remove(jobId);
+            try {
+                ec2.terminateInstance(instanceId);
+            } catch (Exception te) {
+                LOGGER.warn("Failed to terminate instance {} after payload failure", instanceId, te);
+            }
+            throw e;
+        }
+        return meta;
+    }
+
+    // az=subnet,az=subnet: IGNIS_SUBNET_IDS as Ec2ClusterManager reads it
+    private static String formatSubnets(Map<String, String> subnets) {
+        StringJoiner joined = new StringJoiner(",");
+        subnets.forEach((az, id) -> joined.add(az + "=" + id));
+        return joined.toString();
+    }
 
-        System.out.println("[ignis-cloud] Job running...");
-        while (true) {
-            IContainerInfo.IStatus status = statusFromS3(meta);
+    // Stops the payload upload and waits for it, so none of it lands after the submission failed
+    private static void stopPayload(CompletableFuture<PayloadManifest> payload, CompletableFuture<Void> abandon) {
+        abandon.cancel(false);
+        payload.handle((manifest, error) -> null).join();
+    }
 
-            if (status == IContainerInfo.IStatus.FINISHED) {
-                System.out.println("[ignis-cloud] Job completed. Downloading results...");
-                try{
-                    s3.downloadJob(jobId, bucket);
-                    System.out.println("[ignis-cloud] Results downloaded successfully.");
-                } catch (Exception e) {
-                    LOGGER.warn("Failed to download results for job {}", jobId, e);
-                    System.out.println("[ignis-cloud] Warning: could not download results. Available at: s3://" + bucket + "/jobs/" + jobId + "/results/");
-                }
-                System.out.println("[ignis-cloud] Cleaning up infrastructure...");
-                cleanupInfrastructure(bucket);
-                System.out.println("[ignis-cloud] Infrastructure cleaned up.");
-                break;
-
-            } else if (status == IContainerInfo.IStatus.ERROR || status == IContainerInfo.IStatus.DESTROYED) {
-                System.out.println("\n[ignis-cloud] Job failed with status: " + status);
-                LOGGER.error("Job {} failed with status {}", jobId, status);
-                cleanupInfrastructure(bucket);
-                break;
-            }
-            // TIMEOUT CHECK
-            if (System.currentTimeMillis() - start > maxWaitMs) {
-                System.out.println("\n[ignis-cloud] Timeout reached. Results at: s3://" + bucket + "/jobs/" + jobId + "/");
-                cleanupInfrastructure(bucket);
-                break;
+    private <T> CompletableFuture<T> stage(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
+        }, submissions);
+    }
+
+    // Executor instances of the job (tagged IgnisJob): they keep billing, and their network interfaces
+    // keep the security group and subnets from being deleted
+    private void terminateExecutorNodes(String jobId) {
+        try {
+            ec2Clusters.terminateJobNodes(jobId);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to terminate the executor instances of job {}", jobId, e);
+        }
+    }
+
+    // Handle that completes once the job is done and its results/cleanup have been processed
+    public CompletableFuture<IContainerInfo.IStatus> jobCompletion(String jobId) {
+        CompletableFuture<IContainerInfo.IStatus> completion = completions.get(jobId);
+        return completion != null ? completion : CompletableFuture.failedFuture(new ISchedulerException("job " + jobId + " is not in flight"));
+    }
+
+    private IContainerInfo.IStatus finishJob(JobMeta meta, IContainerInfo.IStatus status, Throwable error) {
+        String jobId = meta.jobId();
+        String bucket = meta.bucket();
+        JobMeta latest = meta;
+        try {
+            latest = Objects.requireNonNullElse(jobs.get(jobId), meta); // After a spot relaunch, another instance
+        } catch (ISchedulerException e) {
+            LOGGER.debug("Could not look up job {}, using the meta it finished with", jobId, e);
+        }
+        spotLaunches.remove(jobId);
+        jobs.retire(jobId);
+        ec2.getStateCache().untrack(meta.instanceId());
+        ec2.getStateCache().untrack(latest.instanceId());
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause(); // Thrown across a relaunch
+        }
+
+        if (error instanceof CancellationException) {
+            return IContainerInfo.IStatus.DESTROYED; // cancelJob handles its own cleanup
+        }
+        // A driver that ended any other way may have left executor nodes behind (IGNIS_CLUSTER_MODE=ec2)
+        terminateExecutorNodes(jobId);
+
+        if (status == IContainerInfo.IStatus.FINISHED) {
+            System.out.println("[ignis-cloud] Job " + jobId + " completed. Downloading results...");
             try{
-                Thread.sleep(1000);
-            } catch(Exception e){
-                Thread.currentThread().interrupt();
-                LOGGER.warn("Interrupted while waiting for job {}", jobId);
-                break;
+                s3.downloadJob(jobId, bucket);
+                System.out.println("[ignis-cloud] Results downloaded successfully.");
+            } catch (Exception e) {
+                LOGGER.warn("Failed to download results for job {}", jobId, e);
+                System.out.println("[ignis-cloud] Warning: could not download results. Available at: s3://" + bucket + "/" + s3.jobResultsPrefix(jobId));
             }
-
+        } else if (error != null) {
+            if (error instanceof TimeoutException) {
+                System.out.println("\n[ignis-cloud] Timeout reached. Results at: s3://" + bucket + "/" + s3.jobRoot(jobId));
+            } else {
+                System.out.println("\n[ignis-cloud] Job " + jobId + " could not be followed: " + error
+                        + ". Results at: s3://" + bucket + "/" + s3.jobRoot(jobId));
+            }
+            LOGGER.warn("Job {} did not finish: {}", jobId, error.getMessage());
+            status = IContainerInfo.IStatus.UNKNOWN;
+            // The driver would keep running (and billing) with nobody watching it. If it can't be
+            // terminated the lease stays, so the stack is not torn down under it.
+            String instanceId = latest.instanceId();
+            if (instanceId != null && !instanceId.isBlank()) {
+                try {
+                    ec2.terminateInstance(instanceId);
+                    LOGGER.info("EC2 instance {} terminated for unfinished job {}", instanceId, jobId);
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to terminate instance {} of unfinished job {}, keeping its infrastructure", instanceId, jobId, e);
+                    System.out.println("[ignis-cloud] Warning: instance " + instanceId + " of job " + jobId + " is still running.");
+                    return status;
+                }
+            }
+        } else {
+            System.out.println("\n[ignis-cloud] Job " + jobId + " failed with status: " + status);
+            LOGGER.error("Job {} failed with status {}", jobId, status);
         }
-        LOGGER.info("Created job with name {} and id {}", finalJobName, jobId);
-        return jobId;
+
+        // An unfinished job keeps what it wrote until the stack goes away
+        infrastructure.release(jobId, error != null ? null : bucket);
+        return status;
     }
 
     @Override
@@ -368,14 +755,12 @@ public class Cloud implements IScheduler {
         LOGGER.info("Canceling job with id {}", id);
 
         JobMeta meta = jobs.get(id);
-        if (meta == null) {
-            meta = resolveJobMeta(id);
-        }
         if (meta == null) {
             throw new ISchedulerException("job " + id + " not found");
         }
+        watcher.unwatch(id);
         try{
-            String key = "jobs/" + id + "/status.json";
+            String key = s3.jobStatusKey(id);
             String body = "{\"state\":\"DESTROYED\",\"rc\":143}";
             String type = "application/json";
             s3.putString(meta.bucket(), key, body,  type);
@@ -393,14 +778,12 @@ public class Cloud implements IScheduler {
             throw new ISchedulerException("Error terminating EC2 instance for job " + id, e);
         } finally {
             jobs.remove(id);
+            spotLaunches.remove(id);
+            ec2.getStateCache().untrack(meta.instanceId());
+            terminateExecutorNodes(id);
         }
 
-        boolean isRuntime = Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"));
-        if (!isRuntime) {
-            cleanupInfrastructure(meta.bucket());
-        } else {
-            LOGGER.info("Runtime mode: skipping infrastructure cleanup for job {}", id);
-        }
+        infrastructure.release(id, meta.bucket());
     }
 
     @Override
@@ -408,12 +791,6 @@ public class Cloud implements IScheduler {
         LOGGER.info("Getting job with id {}", id);
 
         JobMeta meta = jobs.get(id);
-        if (meta == null) {
-            meta = resolveJobMeta(id);
-            if(meta != null){
-                jobs.put(id, meta);
-            }
-        }
         if (meta == null) {
             throw new ISchedulerException("job " + id + " not found");
         }
@@ -476,35 +853,78 @@ public class Cloud implements IScheduler {
     @Override
     public IClusterInfo createCluster(String job, IClusterRequest request) throws ISchedulerException {
         LOGGER.info("createCluster job {} instances={}", job, request.instances());
+        if (isEc2ClusterMode()) {
+            return ec2Clusters.createCluster(job, request);
+        }
 
         int instances = request.instances();
         var containerIds = new ArrayList<String>();
 
-        // Lanzar executors
-        for (int i = 0; i < instances; i++) {
-            String containerName = launchExecutor(job, i, request);
-            containerIds.add(containerName);
+        // Launch the executors: each launch is independent, so they run concurrently (bounded) and
+        // every failure is reported with its executor index
+        ExecutorService launchPool = Executors.newFixedThreadPool(Math.max(1, Math.min(instances, EXECUTOR_LAUNCH_PARALLELISM)), r -> {
+            Thread t = new Thread(r, "ignis-executor-launch");
+            t.setDaemon(true);
+            return t;
+        });
+        List<CompletableFuture<String>> launches = new ArrayList<>();
+        try {
+            for (int i = 0; i < instances; i++) {
+                int index = i;
+                launches.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return launchExecutor(job, index, request);
+                    } catch (ISchedulerException e) {
+                        throw new CompletionException(e);
+                    }
+                }, launchPool));
+            }
+            CompletableFuture.allOf(launches.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        } finally {
+            launchPool.shutdown();
         }
 
-        // Esperar a que el executor esté listo en el puerto 1963
-        int maxWait = 30;
-        boolean ready = false;
-        for (int attempt = 0; attempt < maxWait; attempt++) {
-            try (var socket = new Socket("localhost", 1963)) {
-                ready = true;
-                break;
-            } catch (Exception e) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e1) {
-                    Thread.currentThread().interrupt();
-                    throw new ISchedulerException("Interrupted while waiting for executor port", e1);
-                }
+        List<String> failures = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            try {
+                containerIds.add(launches.get(i).join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                failures.add("executor " + i + ": " + cause.getMessage());
             }
         }
+        if (!failures.isEmpty()) {
+            removeExecutorsQuietly(job, instances);
+            throw new ISchedulerException(failures.size() + "/" + instances + " executors failed to start for job " + job
+                    + ":\n  " + String.join("\n  ", failures));
+        }
 
-        if (!ready) {
-            throw new ISchedulerException("Executor never became ready on port 1963 after " + maxWait + " seconds");
+        // Wait for every executor to be ready: its HEALTHCHECK if the image has one, otherwise a process of
+        // that container listening on the port (executors share the host network, so connecting to the
+        // port would only say that one of them is up). Fails fast if any executor dies meanwhile.
+        long deadline = System.currentTimeMillis() + EXECUTOR_READY_TIMEOUT_MS;
+        long backoff = 50;
+        Set<String> waiting = new LinkedHashSet<>(containerIds);
+        while (true) {
+            Map<String, String> states = docker.containerStates(job + "-executor");
+            for (String name : containerIds) {
+                String state = states.getOrDefault(name, "missing");
+                if (!state.equals("running")) {
+                    String logs = executorLogTail(name);
+                    removeExecutorsQuietly(job, instances);
+                    throw new ISchedulerException("Executor " + name + " is " + state + " before opening port "
+                            + EXECUTOR_READY_PORT + logs);
+                }
+            }
+            waiting.removeIf(this::executorListening);
+            if (waiting.isEmpty()) break;
+            if (System.currentTimeMillis() > deadline) {
+                removeExecutorsQuietly(job, instances);
+                throw new ISchedulerException("Executors " + String.join(", ", waiting) + " never became ready on port "
+                        + EXECUTOR_READY_PORT + " after " + EXECUTOR_READY_TIMEOUT_MS / 1000 + " seconds");
+            }
+            sleepQuietly(backoff, "executor port");
+            backoff = Math.min(1000, backoff * 2);
         }
 
         // Construir lista de containers
@@ -523,24 +943,24 @@ public class Cloud implements IScheduler {
     @Override
     public void destroyCluster(String job, String id) throws ISchedulerException {
         LOGGER.info("Destroying cluster {} for job {}", id, job);
-        try{ // List executor containers
-            ProcessBuilder pb = new ProcessBuilder(dockerBin, "ps", "-q", "--filter", "name=" + job + "-executor");
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            String output = new String(p.getInputStream().readAllBytes()).trim();
-
-            if(output.isEmpty()){
+        if (isEc2ClusterMode()) {
+            ec2Clusters.destroyCluster(job, id);
+            return;
+        }
+        try{ // List running executor containers
+            List<JsonNode> running = docker.listContainers(false, Map.of("name", List.of(job + "-executor")));
+            if(running.isEmpty()){
                 LOGGER.info("No executor containers found for job {}", job);
                 return;
             }
 
-            for(String containerId: output.split("\n")){
-                if(containerId.isBlank()) continue;
+            for(JsonNode container: running){
+                String containerId = container.path("Id").asText();
                 try{
-                    new ProcessBuilder(dockerBin, "stop", containerId.trim()).start().waitFor();
+                    docker.stopContainer(containerId, 10);
                     LOGGER.info("Executor container {} stopped", containerId);
                 }catch(Exception e){
-                    LOGGER.warn("Failed to stop executor container {}: {}", containerId.trim(), e.getMessage());
+                    LOGGER.warn("Failed to stop executor container {}: {}", containerId, e.getMessage());
                 }
             }
 
@@ -553,61 +973,57 @@ public class Cloud implements IScheduler {
     public IClusterInfo getCluster(String job, String id) throws ISchedulerException {
         LOGGER.info("Getting cluster {} for job {}", id, job);
 
-        JobMeta meta = resolveJobMeta(job);
+        JobMeta meta = jobs.get(job);
         if(meta == null){
             LOGGER.warn("No job metadata found for job {}", job);
         }
+        if (isEc2ClusterMode()) {
+            return ec2Clusters.getCluster(job, id, meta);
+        }
 
         try{
-            ProcessBuilder pb = new  ProcessBuilder(dockerBin, "ps", "-a", "--filter", "name=" + job + "-executor", "--format", "{{.Names}}");
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            String output = new String(p.getInputStream().readAllBytes()).trim();
-            p.waitFor();
+            // One list call gives every executor with its state (no per-container inspect)
+            Map<String, String> states = docker.containerStates(job + "-executor");
 
             var containers  = new ArrayList<IContainerInfo>();
 
-            if (!output.isEmpty()) {
-                for (String containerName : output.split("\n")) {
-                    if (containerName.isBlank()) continue;
-                    containerName = containerName.trim();
-
-                    IContainerInfo.IStatus status = getContainerStatus(job, containerName);
-
-                    var builder = IContainerInfo.builder()
-                            .id(containerName)
-                            .node("localhost")
-                            .writable(true)
-                            .tmpdir(true)
-                            .ports(List.of())
-                            .binds(List.of())
-                            .nodelist(List.of())
-                            .hostnames(Map.of())
-                            .env(Map.of(
-                                    "IGNIS_SCHEDULER_ENV_JOB", job,
-                                    "IGNIS_SCHEDULER_ENV_CONTAINER", containerName
-                            ))
-                            .network(IContainerInfo.INetworkMode.BRIDGE)
-                            .status(status)
-                            .provider(IContainerInfo.IProvider.DOCKER)
-                            .schedulerOptArgs(Map.of());
-
-                    if (meta != null) {
-                        builder.image(meta.image())
-                                .cpus(meta.cpus())
-                                .memory(meta.memory())
-                                .gpu(meta.gpu())
-                                .args(meta.args() != null ? meta.args() : List.of());
-                    } else {
-                        builder.image("")
-                                .cpus(1)
-                                .memory(0L)
-                                .gpu(null)
-                                .args(List.of());
-                    }
-
-                    containers.add(builder.build());
+            for (var entry : states.entrySet()) {
+                String containerName = entry.getKey();
+                IContainerInfo.IStatus status = dockerStatus(entry.getValue());
+
+                var builder = IContainerInfo.builder()
+                        .id(containerName)
+                        .node("localhost")
+                        .writable(true)
+                        .tmpdir(true)
+                        .ports(List.of())
+                        .binds(List.of())
+                        .nodelist(List.of())
+                        .hostnames(Map.of())
+                        .env(Map.of(
+                                "IGNIS_SCHEDULER_ENV_JOB", job,
+                                "IGNIS_SCHEDULER_ENV_CONTAINER", containerName
+                        ))
+                        .network(IContainerInfo.INetworkMode.BRIDGE)
+                        .status(status)
+                        .provider(IContainerInfo.IProvider.DOCKER)
+                        .schedulerOptArgs(Map.of());
+
+                if (meta != null) {
+                    builder.image(meta.image())
+                            .cpus(meta.cpus())
+                            .memory(meta.memory())
+                            .gpu(meta.gpu())
+                            .args(meta.args() != null ? meta.args() : List.of());
+                } else {
+                    builder.image("")
+                            .cpus(1)
+                            .memory(0L)
+                            .gpu(null)
+                            .args(List.of());
                 }
+
+                containers.add(builder.build());
             }
 
             if (containers.isEmpty()) {
@@ -627,6 +1043,9 @@ public class Cloud implements IScheduler {
     @Override
     public IClusterInfo repairCluster(String job, IClusterInfo cluster, IClusterRequest request) throws ISchedulerException {
         LOGGER.info("Repairing cluster {} for job {}", cluster.id(), job);
+        if (isEc2ClusterMode()) {
+            return ec2Clusters.repairCluster(job, cluster, request);
+        }
 
         var newContainers = new ArrayList<IContainerInfo>(cluster.containers());
         boolean repaired = false;
@@ -644,8 +1063,7 @@ public class Cloud implements IScheduler {
 
             // Eliminar contenedor si existe
             try {
-                new ProcessBuilder(dockerBin, "rm", "-f", container.id())
-                        .start().waitFor();
+                docker.removeContainer(container.id(), true);
             } catch (Exception e) {
                 LOGGER.warn("Failed to remove container {}: {}", container.id(), e.getMessage());
             }
@@ -678,20 +1096,10 @@ public class Cloud implements IScheduler {
         // Docker container (EC2 executor)
         if(!id.startsWith("i-")) {
             try{
-                ProcessBuilder pb = new ProcessBuilder(dockerBin, "inspect", "--format", "{{.State.Status}}", id);
-                pb.redirectErrorStream(true);
-                Process p = pb.start();
-                String output = new String(p.getInputStream().readAllBytes()).trim();
-                p.waitFor();
-
-                LOGGER.debug("Container {} status: {}", id, output);
-                return switch (output) {
-                    case "created", "restarting" -> IContainerInfo.IStatus.ACCEPTED;
-                    case "running" -> IContainerInfo.IStatus.RUNNING;
-                    case "exited"  -> IContainerInfo.IStatus.FINISHED;
-                    case "dead"    -> IContainerInfo.IStatus.ERROR;
-                    default -> IContainerInfo.IStatus.UNKNOWN;
-                };
+                JsonNode inspect = docker.inspectContainer(id);
+                String state = inspect != null ? inspect.path("State").path("Status").asText("") : "";
+                LOGGER.debug("Container {} status: {}", id, state);
+                return dockerStatus(state);
             } catch(Exception e){
                 LOGGER.warn("Failed to get status for container {}: {}", id, e.getMessage());
                 return IContainerInfo.IStatus.UNKNOWN;
@@ -712,6 +1120,20 @@ public class Cloud implements IScheduler {
         }
     }
 
+    private static boolean isEc2ClusterMode() {
+        return CLUSTER_MODE.equals("ec2");
+    }
+
+    private static IContainerInfo.IStatus dockerStatus(String state) {
+        return switch (state) {
+            case "created", "restarting" -> IContainerInfo.IStatus.ACCEPTED;
+            case "running" -> IContainerInfo.IStatus.RUNNING;
+            case "exited"  -> IContainerInfo.IStatus.FINISHED;
+            case "dead"    -> IContainerInfo.IStatus.ERROR;
+            default -> IContainerInfo.IStatus.UNKNOWN;
+        };
+    }
+
     @Override
     public void healthCheck() throws ISchedulerException {
         LOGGER.info("Performing health check for Cloud scheduler");
@@ -720,18 +1142,10 @@ public class Cloud implements IScheduler {
         boolean isRuntime = Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"));
         if(isRuntime){
             try{
-                ProcessBuilder pb = new ProcessBuilder(dockerBin, "info");
-                pb.redirectErrorStream(true);
-                Process p = pb.start();
-                int rc = p.waitFor();
-                if (rc != 0) {
-                    throw new ISchedulerException("Docker is not available: " + new String(p.getInputStream().readAllBytes()));
-                }
+                docker.ping();
                 LOGGER.debug("Docker health check passed");
             } catch(ISchedulerException e){
-                throw e;
-            } catch(Exception e){
-                throw new ISchedulerException("Failed to check Docker availability", e);
+                throw new ISchedulerException("Docker is not available: " + e.getMessage(), e);
             }
         }
 
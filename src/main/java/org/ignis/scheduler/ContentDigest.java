@@ -0,0 +1,77 @@
+package org.ignis.scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+
+public final class ContentDigest {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Hex SHA-256 of the whole file and the base64 SHA-256 of each part, as S3 takes it in ChecksumSHA256
+    public record Parts(String sha256, List<String> partChecksums) { }
+
+    private ContentDigest() {}
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String sha256(Path file) throws IOException {
+        MessageDigest md = newSha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream is = Files.newInputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    // One pass over the file; fails if it does not have exactly size bytes
+    public static Parts sha256Parts(Path file, long size, long partSize) throws IOException {
+        MessageDigest whole = newSha256();
+        MessageDigest part = newSha256();
+        List<String> checksums = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long read = 0;
+        long inPart = 0;
+        try (InputStream is = Files.newInputStream(file)) {
+            int n;
+            while ((n = is.read(buffer, 0, (int) Math.min(buffer.length, partSize - inPart))) > 0) {
+                whole.update(buffer, 0, n);
+                part.update(buffer, 0, n);
+                read += n;
+                inPart += n;
+                if (inPart == partSize) {
+                    checksums.add(Base64.getEncoder().encodeToString(part.digest()));
+                    inPart = 0;
+                }
+            }
+        }
+        if (read != size) {
+            throw new IOException("File changed while hashing: " + file);
+        }
+        if (inPart > 0 || checksums.isEmpty()) {
+            checksums.add(Base64.getEncoder().encodeToString(part.digest()));
+        }
+        return new Parts(HexFormat.of().formatHex(whole.digest()), List.copyOf(checksums));
+    }
+
+    public static String sha256(String text) {
+        return HexFormat.of().formatHex(newSha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,404 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.URLEncoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Minimal Docker Engine API client speaking HTTP/1.1 straight over the daemon's unix socket.
+// Connections are kept alive and reused, so a call costs one request round trip instead of a
+// docker CLI process. Only the endpoints the scheduler needs are covered.
+// Reference: https://docs.docker.com/engine/api/v1.43/
+public class DockerClient implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DockerClient.class);
+
+    private static final String API_VERSION = "/v1.41";
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    private final Path socketPath;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final BlockingQueue<Connection> idle = new ArrayBlockingQueue<>(MAX_IDLE_CONNECTIONS);
+    private final DockerCredentials credentials = new DockerCredentials();
+
+    public record Response(int status, byte[] body) {
+        public String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    public record ExecResult(int exitCode, String output) { }
+
+    public DockerClient(String socketPath) {
+        this.socketPath = Path.of(socketPath);
+    }
+
+    public void ping() throws ISchedulerException {
+        Response r = request("GET", "/_ping", null);
+        if (r.status() != 200) {
+            throw new ISchedulerException("Docker daemon not available: " + r.status() + " " + r.text());
+        }
+    }
+
+    // Equivalent of "docker create"; pulls the image once if the daemon doesn't have it
+    public String createContainer(String name, ObjectNode config) throws ISchedulerException {
+        String path = "/containers/create?name=" + encode(name);
+        Response r = request("POST", path, config);
+        if (r.status() == 404 && config.hasNonNull("Image")) {
+            pullImage(config.get("Image").asText());
+            r = request("POST", path, config);
+        }
+        return json(check(r, "create container " + name)).path("Id").asText();
+    }
+
+    public void startContainer(String id) throws ISchedulerException {
+        Response r = request("POST", "/containers/" + encode(id) + "/start", null);
+        if (r.status() != 304) check(r, "start container " + id);
+    }
+
+    // null if the container doesn't exist
+    public JsonNode inspectContainer(String id) throws ISchedulerException {
+        Response r = request("GET", "/containers/" + encode(id) + "/json", null);
+        if (r.status() == 404) return null;
+        return json(check(r, "inspect container " + id));
+    }
+
+    // One call for every matching container ("docker ps"), each entry with Id, Names, State, Status...
+    public List<JsonNode> listContainers(boolean all, Map<String, List<String>> filters) throws ISchedulerException {
+        StringBuilder path = new StringBuilder("/containers/json?all=").append(all);
+        if (filters != null && !filters.isEmpty()) {
+            try {
+                path.append("&filters=").append(encode(mapper.writeValueAsString(filters)));
+            } catch (IOException e) {
+                throw new ISchedulerException("Invalid container filters", e);
+            }
+        }
+        List<JsonNode> containers = new ArrayList<>();
+        json(check(request("GET", path.toString(), null), "list containers")).forEach(containers::add);
+        return containers;
+    }
+
+    // Container name (without the leading "/") to state ("running", "exited"...) for a name filter
+    public Map<String, String> containerStates(String nameFilter) throws ISchedulerException {
+        Map<String, String> states = new LinkedHashMap<>();
+        for (JsonNode c : listContainers(true, Map.of("name", List.of(nameFilter)))) {
+            String name = c.path("Names").path(0).asText("");
+            states.put(name.startsWith("/") ? name.substring(1) : name, c.path("State").asText(""));
+        }
+        return states;
+    }
+
+    public void stopContainer(String id, int timeoutSeconds) throws ISchedulerException {
+        Response r = request("POST", "/containers/" + encode(id) + "/stop?t=" + timeoutSeconds, null);
+        if (r.status() != 304 && r.status() != 404) check(r, "stop container " + id);
+    }
+
+    public void removeContainer(String id, boolean force) throws ISchedulerException {
+        Response r = request("DELETE", "/containers/" + encode(id) + "?force=" + force, null);
+        if (r.status() != 404) check(r, "remove container " + id);
+    }
+
+    // Last lines of stdout+stderr, for error reports (containers run without a TTY)
+    public String logs(String id, int tail) throws ISchedulerException {
+        Response r = request("GET", "/containers/" + encode(id) + "/logs?stdout=true&stderr=true&tail=" + tail, null);
+        return demultiplex(check(r, "read logs of " + id).body());
+    }
+
+    public void pullImage(String image) throws ISchedulerException {
+        String fromImage = image;
+        String tag = "latest";
+        int slash = image.lastIndexOf('/');
+        int colon = image.lastIndexOf(':');
+        if (image.contains("@")) {
+            tag = "";
+        } else if (colon > slash) {
+            fromImage = image.substring(0, colon);
+            tag = image.substring(colon + 1);
+        }
+        LOGGER.info("Pulling image {}", image);
+        try {
+            // The credentials "docker login" stored, as the CLI would send them (private registries, ECR)
+            String auth = credentials.registryAuth(image);
+            Response r = check(request("POST", "/images/create?fromImage=" + encode(fromImage)
+                    + (tag.isEmpty() ? "" : "&tag=" + encode(tag)), null,
+                    auth != null ? Map.of("X-Registry-Auth", auth) : Map.of()), "pull image " + image);
+            // Errors are reported inside the progress stream, not in the status code
+            for (String line : r.text().split("\n")) {
+                if (line.contains("\"error\"")) {
+                    throw new ISchedulerException("Failed to pull image " + image + ": " + json(line.getBytes(StandardCharsets.UTF_8)).path("error").asText());
+                }
+            }
+        } catch (ISchedulerException e) {
+            // A credential helper that can't run here may still work for the CLI
+            if (!pullWithCli(image)) throw e;
+        }
+    }
+
+    // False if there is no docker CLI or its pull failed too
+    private boolean pullWithCli(String image) {
+        try {
+            Process process = new ProcessBuilder("docker", "pull", image).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() == 0) {
+                LOGGER.info("Pulled image {} with the docker CLI", image);
+                return true;
+            }
+            LOGGER.warn("docker pull {} failed: {}", image, output.trim());
+        } catch (IOException e) {
+            LOGGER.debug("No docker CLI to pull {} with", image, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    // Runs a command inside the container and waits for it. The exec stream takes over the
+    // connection until the command ends, so it uses its own connection that is not reused.
+    public ExecResult exec(String id, List<String> cmd) throws ISchedulerException {
+        ObjectNode create = mapper.createObjectNode();
+        create.put("AttachStdout", true);
+        create.put("AttachStderr", true);
+        create.putArray("Cmd").addAll(cmd.stream().map(mapper.getNodeFactory()::textNode).toList());
+        String execId = json(check(request("POST", "/containers/" + encode(id) + "/exec", create), "exec in " + id))
+                .path("Id").asText();
+
+        ObjectNode start = mapper.createObjectNode();
+        start.put("Detach", false);
+        start.put("Tty", false);
+        String output;
+        try (Connection conn = open()) {
+            Response r = conn.send("POST", API_VERSION + "/exec/" + execId + "/start", bytes(start), Map.of());
+            check(r, "start exec in " + id);
+            output = demultiplex(r.body());
+        } catch (IOException e) {
+            throw new ISchedulerException("Docker exec failed in " + id, e);
+        }
+
+        JsonNode inspect = json(check(request("GET", "/exec/" + execId + "/json", null), "inspect exec " + execId));
+        return new ExecResult(inspect.path("ExitCode").asInt(-1), output);
+    }
+
+    // Blocks until the container exits and returns its exit code. Like exec, the response only
+    // arrives at the end, so it gets a connection of its own.
+    public int waitContainer(String id) throws ISchedulerException {
+        try (Connection conn = open()) {
+            Response r = conn.send("POST", API_VERSION + "/containers/" + encode(id) + "/wait", null, Map.of());
+            return json(check(r, "wait for " + id)).path("StatusCode").asInt(-1);
+        } catch (IOException e) {
+            throw new ISchedulerException("Docker wait failed for " + id, e);
+        }
+    }
+
+    // stdout/stderr frames: 1 byte stream type, 3 padding, 4 bytes big-endian length, payload
+    private String demultiplex(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+        int i = 0;
+        while (i + 8 <= raw.length) {
+            int len = ((raw[i + 4] & 0xff) << 24) | ((raw[i + 5] & 0xff) << 16) | ((raw[i + 6] & 0xff) << 8) | (raw[i + 7] & 0xff);
+            int n = Math.min(len, raw.length - i - 8);
+            out.write(raw, i + 8, n);
+            i += 8 + n;
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    public Response request(String method, String path, JsonNode body) throws ISchedulerException {
+        return request(method, path, body, Map.of());
+    }
+
+    public Response request(String method, String path, JsonNode body, Map<String, String> headers) throws ISchedulerException {
+        byte[] payload = body != null ? bytes(body) : null;
+        // A pooled connection may have been closed by the daemon while idle; retry once on a fresh one
+        for (int attempt = 0; ; attempt++) {
+            Connection conn = idle.poll();
+            boolean reused = conn != null;
+            try {
+                if (conn == null) conn = open();
+                Response r = conn.send(method, API_VERSION + path, payload, headers);
+                if (conn.keepAlive && idle.offer(conn)) {
+                    conn = null;
+                }
+                return r;
+            } catch (IOException e) {
+                if (!reused || attempt > 0) {
+                    throw new ISchedulerException("Docker API request failed: " + method + " " + path, e);
+                }
+                LOGGER.debug("Stale docker connection, reconnecting", e);
+            } finally {
+                if (conn != null) conn.close();
+            }
+        }
+    }
+
+    private Connection open() throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new Connection(channel);
+    }
+
+    private Response check(Response r, String what) throws ISchedulerException {
+        if (r.status() >= 400) {
+            String message = r.text();
+            try {
+                message = mapper.readTree(r.body()).path("message").asText(message);
+            } catch (IOException ignored) {}
+            throw new ISchedulerException("Docker failed to " + what + " (" + r.status() + "): " + message.trim());
+        }
+        return r;
+    }
+
+    private JsonNode json(Response r) throws ISchedulerException {
+        return json(r.body());
+    }
+
+    private JsonNode json(byte[] body) throws ISchedulerException {
+        try {
+            return mapper.readTree(body);
+        } catch (IOException e) {
+            throw new ISchedulerException("Invalid Docker API response", e);
+        }
+    }
+
+    private byte[] bytes(JsonNode node) throws ISchedulerException {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new ISchedulerException("Invalid Docker API request", e);
+        }
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        Connection conn;
+        while ((conn = idle.poll()) != null) {
+            conn.close();
+        }
+    }
+
+    private static final class Connection implements Closeable {
+        private final SocketChannel channel;
+        private final InputStream in;
+        private final OutputStream out;
+        private boolean keepAlive = true;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 16 * 1024);
+        }
+
+        Response send(String method, String path, byte[] body, Map<String, String> headers) throws IOException {
+            StringBuilder head = new StringBuilder();
+            head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            head.append("Host: docker\r\n");
+            headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+            if (body != null) {
+                head.append("Content-Type: application/json\r\n");
+                head.append("Content-Length: ").append(body.length).append("\r\n");
+            } else if (!method.equals("GET")) {
+                head.append("Content-Length: 0\r\n");
+            }
+            head.append("\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+            if (body != null) out.write(body);
+            out.flush();
+
+            String statusLine = readLine();
+            if (statusLine == null) throw new EOFException("Connection closed by docker daemon");
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2) throw new IOException("Malformed status line: " + statusLine);
+            int status = Integer.parseInt(parts[1]);
+
+            long contentLength = -1;
+            boolean chunked = false;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) continue;
+                String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = line.substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length" -> contentLength = Long.parseLong(value);
+                    case "transfer-encoding" -> chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                    case "connection" -> keepAlive = !value.equalsIgnoreCase("close");
+                    default -> { }
+                }
+            }
+
+            byte[] responseBody;
+            if (status == 204 || status == 304 || method.equals("HEAD")) {
+                responseBody = new byte[0];
+            } else if (chunked) {
+                responseBody = readChunked();
+            } else if (contentLength >= 0) {
+                responseBody = in.readNBytes((int) contentLength);
+                if (responseBody.length < contentLength) throw new EOFException("Truncated docker response");
+            } else {
+                // No framing (e.g. hijacked exec stream): the body lasts until the daemon closes
+                responseBody = in.readAllBytes();
+                keepAlive = false;
+            }
+            return new Response(status, responseBody);
+        }
+
+        private byte[] readChunked() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                String sizeLine = readLine();
+                if (sizeLine == null) throw new EOFException("Truncated chunked response");
+                int semi = sizeLine.indexOf(';');
+                int size = Integer.parseInt((semi >= 0 ? sizeLine.substring(0, semi) : sizeLine).trim(), 16);
+                if (size == 0) {
+                    String trailer;
+                    while ((trailer = readLine()) != null && !trailer.isEmpty()) { }
+                    return body.toByteArray();
+                }
+                byte[] chunk = in.readNBytes(size);
+                if (chunk.length < size) throw new EOFException("Truncated chunk");
+                body.write(chunk);
+                readLine(); // CRLF after the chunk
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    int len = sb.length();
+                    if (len > 0 && sb.charAt(len - 1) == '\r') sb.setLength(len - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
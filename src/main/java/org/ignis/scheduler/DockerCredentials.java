@@ -0,0 +1,133 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The X-Registry-Auth header of an image pull, from the credentials the docker CLI stored in
+// $DOCKER_CONFIG/config.json (default ~/.docker): a credential helper for the registry (credHelpers),
+// an inline "auths" entry, or the default credsStore, in that order, as the CLI looks them up.
+// Without any, the pull goes anonymous.
+public class DockerCredentials {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(DockerCredentials.class);
+
+    private static final String DOCKER_HUB = "docker.io";
+    private static final String DOCKER_HUB_AUTH_KEY = "https://index.docker.io/v1/";
+    private static final long HELPER_TIMEOUT_SECONDS = 30;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path configFile;
+
+    public DockerCredentials() {
+        String dir = System.getenv("DOCKER_CONFIG");
+        this.configFile = (dir != null && !dir.isBlank() ? Path.of(dir) : Path.of(System.getProperty("user.home"), ".docker"))
+                .resolve("config.json");
+    }
+
+    // Base64url JSON for X-Registry-Auth, or null to pull anonymously
+    public String registryAuth(String image) {
+        if (!Files.exists(configFile)) return null;
+        String registry = registryOf(image);
+        try {
+            JsonNode config = mapper.readTree(configFile.toFile());
+            ObjectNode auth = null;
+
+            String helper = config.path("credHelpers").path(registry).asText(null);
+            if (helper != null) {
+                auth = fromHelper(helper, registry);
+            }
+            if (auth == null) {
+                auth = fromAuths(config.path("auths"), registry);
+            }
+            if (auth == null && config.hasNonNull("credsStore")) {
+                auth = fromHelper(config.get("credsStore").asText(), registry);
+            }
+            if (auth == null) return null;
+            auth.put("serveraddress", registry.equals(DOCKER_HUB) ? DOCKER_HUB_AUTH_KEY : registry);
+            return Base64.getUrlEncoder().encodeToString(mapper.writeValueAsBytes(auth));
+        } catch (IOException e) {
+            LOGGER.warn("Could not read docker credentials from {}, pulling {} anonymously", configFile, image, e);
+            return null;
+        }
+    }
+
+    // [registry/]repository[:tag]: the first part is a registry when it looks like a host
+    static String registryOf(String image) {
+        int slash = image.indexOf('/');
+        if (slash < 0) return DOCKER_HUB;
+        String first = image.substring(0, slash);
+        if (first.contains(".") || first.contains(":") || first.equals("localhost")) return first;
+        return DOCKER_HUB;
+    }
+
+    private ObjectNode fromAuths(JsonNode auths, String registry) {
+        List<String> keys = registry.equals(DOCKER_HUB)
+                ? List.of(DOCKER_HUB_AUTH_KEY, DOCKER_HUB, "index.docker.io", "registry-1.docker.io")
+                : List.of(registry, "https://" + registry, "http://" + registry);
+        for (String key : keys) {
+            JsonNode entry = auths.path(key);
+            if (entry.isMissingNode()) continue;
+            ObjectNode auth = mapper.createObjectNode();
+            if (entry.hasNonNull("identitytoken")) {
+                auth.put("identitytoken", entry.get("identitytoken").asText());
+                return auth;
+            }
+            String encoded = entry.path("auth").asText("");
+            if (encoded.isEmpty()) continue; // Only a marker that a credsStore has it
+            String decoded = new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int colon = decoded.indexOf(':');
+            if (colon < 0) continue;
+            auth.put("username", decoded.substring(0, colon));
+            auth.put("password", decoded.substring(colon + 1));
+            return auth;
+        }
+        return null;
+    }
+
+    // docker-credential-<helper> get, with the registry on stdin: {"ServerURL", "Username", "Secret"}
+    private ObjectNode fromHelper(String helper, String registry) {
+        try {
+            Process process = new ProcessBuilder("docker-credential-" + helper, "get").start();
+            try (OutputStream in = process.getOutputStream()) {
+                in.write((registry.equals(DOCKER_HUB) ? DOCKER_HUB_AUTH_KEY : registry).getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] output = process.getInputStream().readAllBytes();
+            if (!process.waitFor(HELPER_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                LOGGER.warn("docker-credential-{} timed out for {}", helper, registry);
+                return null;
+            }
+            if (process.exitValue() != 0) {
+                LOGGER.debug("docker-credential-{} has no credentials for {}", helper, registry);
+                return null;
+            }
+            JsonNode creds = mapper.readTree(output);
+            ObjectNode auth = mapper.createObjectNode();
+            String username = creds.path("Username").asText("");
+            // "<token>" is how helpers hand out an identity token instead of a password
+            if (username.equals("<token>")) {
+                auth.put("identitytoken", creds.path("Secret").asText());
+            } else {
+                auth.put("username", username);
+                auth.put("password", creds.path("Secret").asText());
+            }
+            return auth;
+        } catch (IOException e) {
+            LOGGER.warn("Could not run docker-credential-{} for {}", helper, registry, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
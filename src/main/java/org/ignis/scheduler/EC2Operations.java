@@ -9,55 +9,150 @@ import software.amazon.awssdk.services.ssm.model.GetParameterRequest;
 
 import java.io.Closeable;
 import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class EC2Operations implements Closeable {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(EC2Operations.class);
     private final AwsFactory awsFactory;
     private final Ec2Client ec2;
     private final SsmClient ssm;
+    private final InstanceStateCache stateCache;
+
+    private static final int MAX_FILTER_VALUES = 200;
+    // Offline catalog (same JSON as the cached one) and price table ({"type": USD per hour})
+    private static final String CATALOG_FILE = System.getenv().getOrDefault("IGNIS_INSTANCE_CATALOG_FILE", ""); // Default: none
+    private static final String PRICES_FILE = System.getenv().getOrDefault("IGNIS_INSTANCE_PRICES", ""); // Default: none
+    private static final long CATALOG_TTL_MS = Long.parseLong(System.getenv()
+            .getOrDefault("IGNIS_INSTANCE_CATALOG_TTL_HOURS", "24")) * 3600 * 1000; // Default: 24
+    private static final long INSTANCE_MIN_NVME_GB = Long.parseLong(System.getenv()
+            .getOrDefault("IGNIS_INSTANCE_MIN_NVME_GB", "0")); // Default: 0
+
+    private static final int MAX_AZS = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_AWS_MAX_AZS", "3")); // Default: 3
+    // Driver instances: on-demand | spot | spot-first (every spot candidate, then on-demand)
+    private static final String MARKET = System.getenv()
+            .getOrDefault("IGNIS_MARKET", "on-demand").trim().toLowerCase(); // Default: on-demand
+    // USD per hour; empty caps spot at the on-demand price
+    private static final String SPOT_MAX_PRICE = System.getenv().getOrDefault("IGNIS_SPOT_MAX_PRICE", ""); // Default: on-demand price
+    private static final String SPOT_RECLAIMED = "Server.SpotInstanceTermination";
+    private static final Pattern NETWORK_LABEL = Pattern.compile("([\\d.]+)\\s*gigabit");
+
+    private final InstanceTypeSelector instanceSelector = InstanceTypeSelector.fromEnv();
+    private final Map<String, InstanceCatalog> catalogs = new HashMap<>();
+    private volatile List<String> availabilityZones;
+    private volatile List<InstanceCatalog.Entry> regionTypes;
+    private final CapacityLauncher launcher = new CapacityLauncher(this::requestTermination);
 
     public EC2Operations(Ec2Client ec2, SsmClient ssm, AwsFactory awsFactory) {
         this.ec2 = ec2;
         this.ssm = ssm;
         this.awsFactory = awsFactory;
+        this.stateCache = new InstanceStateCache(this);
     }
 
-    // Reference [19], [22], [23]
-    public String createEC2Instance(String instanceName, String userDataScript, String amiId, String subnet, String sgId, String iam, InstanceType instanceType, String iamInstanceProfile) throws ISchedulerException {
-        try{
-            RunInstancesRequest runRequest = RunInstancesRequest.builder()
-                    .imageId(amiId)
-                    .instanceType(instanceType)
-                    .maxCount(1)
-                    .minCount(1)
-                    .subnetId(subnet)
-                    .securityGroupIds(sgId)
-                    .iamInstanceProfile(IamInstanceProfileSpecification.builder()
-                            .name(iamInstanceProfile)
-                            .build())
-                    .instanceInitiatedShutdownBehavior(ShutdownBehavior.TERMINATE)
-                    .userData(Base64.getEncoder().encodeToString(userDataScript.getBytes(StandardCharsets.UTF_8)))
-                    .tagSpecifications(TagSpecification.builder()
-                            .resourceType(ResourceType.INSTANCE)
-                            .tags(Tag.builder().key("Name").value(instanceName).build(),
-                                    Tag.builder().key("JobName").value(instanceName.split("-")[0]).build())
-                            .build())
-                    .build();
+    // All-or-nothing launch of count identical instances in one RunInstances call (each can tell itself
+    // apart through its ami-launch-index), trying the candidates in order until one has capacity
+    // (see CapacityLauncher)
+    public CapacityLauncher.Launched launchInstances(String instanceName, String userDataScript, String amiId,
+                                                     Map<String, String> subnets, String sgId, String iamInstanceProfile,
+                                                     int count, Map<String, String> extraTags,
+                                                     List<CapacityLauncher.Candidate> candidates) throws ISchedulerException {
+        return launcher.launch(candidates, subnets, (candidate, subnet) ->
+                runInstances(instanceName, userDataScript, amiId, subnet, sgId, candidate.type(), iamInstanceProfile, count,
+                        extraTags, candidate.spot()));
+    }
 
-            RunInstancesResponse response = ec2.runInstances(runRequest);
-            String instanceId = response.instances().get(0).instanceId();
+    // Candidates in the market IGNIS_MARKET asks for; onDemandOnly forces on-demand (e.g. a job that
+    // has been interrupted too many times)
+    public List<CapacityLauncher.Candidate> forMarket(List<CapacityLauncher.Candidate> candidates, boolean onDemandOnly) {
+        if (onDemandOnly || MARKET.equals("on-demand")) return candidates;
+        List<CapacityLauncher.Candidate> marketed = new ArrayList<>();
+        candidates.forEach(c -> marketed.add(c.onSpot(true)));
+        if (MARKET.equals("spot-first")) marketed.addAll(candidates);
+        return marketed;
+    }
 
-            LOGGER.info("Instance launched: {}", instanceId);
-            return instanceId;
+    public boolean isSpotEnabled() {
+        return !MARKET.equals("on-demand");
+    }
+
+    public void spotReclaimed(CapacityLauncher.Candidate candidate) {
+        launcher.reclaimed(candidate);
+    }
+
+    // EC2 took the spot instance back (also true when it happened before any notice was seen)
+    public boolean wasSpotReclaimed(String instanceId) {
+        try {
+            Instance instance = getInstanceInfo(instanceId);
+            return instance != null && instance.stateReason() != null &&
+                    SPOT_RECLAIMED.equals(instance.stateReason().code());
+        } catch (ISchedulerException e) {
+            LOGGER.debug("Could not read the state reason of {}", instanceId, e);
+            return false;
+        }
+    }
+
+    private List<String> runInstances(String instanceName, String userDataScript, String amiId, String subnet, String sgId,
+                                      InstanceType instanceType, String iamInstanceProfile, int count,
+                                      Map<String, String> extraTags, boolean spot) {
+        List<Tag> tags = new ArrayList<>();
+        tags.add(Tag.builder().key("Name").value(instanceName).build());
+        tags.add(Tag.builder().key("JobName").value(instanceName.split("-")[0]).build());
+        extraTags.forEach((k, v) -> tags.add(Tag.builder().key(k).value(v).build()));
+        if (spot) tags.add(Tag.builder().key("IgnisMarket").value("spot").build());
+
+        RunInstancesRequest.Builder runRequest = RunInstancesRequest.builder()
+                .imageId(amiId)
+                .instanceType(instanceType)
+                .maxCount(count)
+                .minCount(count)
+                .subnetId(subnet)
+                .securityGroupIds(sgId)
+                .iamInstanceProfile(IamInstanceProfileSpecification.builder()
+                        .name(iamInstanceProfile)
+                        .build())
+                .instanceInitiatedShutdownBehavior(ShutdownBehavior.TERMINATE)
+                .userData(Base64.getEncoder().encodeToString(userDataScript.getBytes(StandardCharsets.UTF_8)))
+                .tagSpecifications(TagSpecification.builder()
+                        .resourceType(ResourceType.INSTANCE)
+                        .tags(tags)
+                        .build());
+        if (spot) {
+            // One-time request: an interrupted instance terminates and the scheduler relaunches the job
+            SpotMarketOptions.Builder options = SpotMarketOptions.builder()
+                    .spotInstanceType(SpotInstanceType.ONE_TIME)
+                    .instanceInterruptionBehavior(InstanceInterruptionBehavior.TERMINATE);
+            if (!SPOT_MAX_PRICE.isBlank()) options.maxPrice(SPOT_MAX_PRICE.trim());
+            runRequest.instanceMarketOptions(InstanceMarketOptionsRequest.builder()
+                    .marketType(MarketType.SPOT)
+                    .spotOptions(options.build())
+                    .build());
+        }
+
+        RunInstancesResponse response = ec2.runInstances(runRequest.build());
+        List<String> instanceIds = response.instances().stream().map(Instance::instanceId).toList();
+
+        LOGGER.info("Instances launched: {}", instanceIds);
+        return instanceIds;
+    }
+
+    // Non-terminated instances carrying every given tag
+    public List<Instance> findInstances(Map<String, String> tags) throws ISchedulerException {
+        List<Filter> filters = new ArrayList<>();
+        tags.forEach((k, v) -> filters.add(Filter.builder().name("tag:" + k).values(v).build()));
+        filters.add(Filter.builder().name("instance-state-name")
+                .values("pending", "running", "stopping", "stopped").build());
+        try {
+            List<Instance> instances = new ArrayList<>();
+            ec2.describeInstancesPaginator(DescribeInstancesRequest.builder().filters(filters).build())
+                    .reservations().forEach(r -> instances.addAll(r.instances()));
+            return instances;
         } catch (Ec2Exception e) {
-            LOGGER.error("Failed to create EC2 instance. AWS error: {} - {}",
-                    e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : "unknown",
-                    e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage(),
-                    e);
-            throw new ISchedulerException("Failed to create EC2 instance: " +
-                    (e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage()), e);
+            throw new ISchedulerException("Failed to find instances tagged " + tags, e);
         }
     }
 
@@ -84,6 +179,41 @@ public class EC2Operations implements Closeable {
         }
     }
 
+    // Fire and forget, for instances nobody is waiting on
+    private void requestTermination(List<String> instanceIds) {
+        try {
+            ec2.terminateInstances(TerminateInstancesRequest.builder().instanceIds(instanceIds).build());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to terminate instances {}", instanceIds, e);
+        }
+    }
+
+    // Batch variant for pool draining: one request and one waiter for every instance
+    public void terminateInstances(List<String> instanceIds) throws ISchedulerException {
+        if (instanceIds.isEmpty()) return;
+        try {
+            ec2.terminateInstances(TerminateInstancesRequest.builder().instanceIds(instanceIds).build());
+            LOGGER.info("Termination requested for instances: {}", instanceIds);
+            ec2.waiter().waitUntilInstanceTerminated(DescribeInstancesRequest.builder().instanceIds(instanceIds).build());
+        } catch (Ec2Exception e) {
+            String code = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : null;
+            if ("InvalidInstanceID.NotFound".equals(code)) return;
+            throw new ISchedulerException("Failed to terminate instances " + instanceIds, e);
+        }
+    }
+
+    public void tagInstanceName(String instanceId, String instanceName) throws ISchedulerException {
+        try {
+            ec2.createTags(CreateTagsRequest.builder()
+                    .resources(instanceId)
+                    .tags(Tag.builder().key("Name").value(instanceName).build(),
+                            Tag.builder().key("JobName").value(instanceName.split("-")[0]).build())
+                    .build());
+        } catch (Ec2Exception e) {
+            throw new ISchedulerException("Failed to tag instance " + instanceId, e);
+        }
+    }
+
     // Reference: [40]
     public Instance getInstanceInfo(String instanceId) throws ISchedulerException {
         if (instanceId == null || instanceId.trim().isEmpty()){
@@ -111,35 +241,114 @@ public class EC2Operations implements Closeable {
         }
     }
 
+    // Served by the shared state cache: one batched DescribeInstances per refresh cycle
     public String getInstanceState(String instanceId) throws ISchedulerException {
-        Instance inst = getInstanceInfo(instanceId);
-        if (inst == null) {
-            return "not_found";
+        if (instanceId == null || instanceId.trim().isEmpty()){
+            throw new ISchedulerException("Instance id can't be null or empty");
+        }
+        return stateCache.getState(instanceId);
+    }
+
+    public InstanceStateCache getStateCache() {
+        return stateCache;
+    }
+
+    // Lower-case state of every instance that still exists. Uses an instance-id filter instead of
+    // InstanceIds so an unknown id doesn't fail the whole batch.
+    public Map<String, String> describeInstanceStates(Collection<String> instanceIds) throws ISchedulerException {
+        Map<String, String> states = new HashMap<>();
+        List<String> ids = new ArrayList<>(instanceIds);
+        try {
+            for (int from = 0; from < ids.size(); from += MAX_FILTER_VALUES) {
+                List<String> batch = ids.subList(from, Math.min(ids.size(), from + MAX_FILTER_VALUES));
+                ec2.describeInstancesPaginator(DescribeInstancesRequest.builder()
+                                .filters(Filter.builder().name("instance-id").values(batch).build())
+                                .build())
+                        .reservations()
+                        .forEach(r -> r.instances().forEach(i ->
+                                states.put(i.instanceId(), i.state().nameAsString().toLowerCase())));
+            }
+            return states;
+        } catch (Ec2Exception e) {
+            throw new ISchedulerException("Failed to describe " + ids.size() + " instances", e);
         }
-        return inst.state().nameAsString().toLowerCase();
     }
 
 
-    public InstanceType resolveInstanceType(IClusterRequest driver) throws ISchedulerException {
+    // (type, AZ) alternatives for CapacityLauncher. Spread: the best type in every AZ before the second
+    // best anywhere. zoneFirst: every type of the first AZ before leaving it (executors stay next to
+    // their driver unless that AZ has nothing left).
+    public List<CapacityLauncher.Candidate> rankLaunchCandidates(IClusterRequest request, List<String> azs,
+                                                                 boolean zoneFirst) throws ISchedulerException {
+        Map<String, List<InstanceType>> ranked = new LinkedHashMap<>();
+        ISchedulerException error = null;
+        for (String az : azs) {
+            try {
+                ranked.put(az, rankInstanceTypes(request, az));
+            } catch (ISchedulerException e) {
+                error = e;
+            }
+        }
+        if (ranked.isEmpty()) {
+            throw error != null ? error : new ISchedulerException("No availability zones to launch in");
+        }
+
+        List<CapacityLauncher.Candidate> candidates = new ArrayList<>();
+        if (zoneFirst) {
+            ranked.forEach((az, types) -> types.forEach(t -> candidates.add(new CapacityLauncher.Candidate(t, az))));
+        } else {
+            int depth = ranked.values().stream().mapToInt(List::size).max().orElse(0);
+            for (int i = 0; i < depth; i++) {
+                for (Map.Entry<String, List<InstanceType>> e : ranked.entrySet()) {
+                    if (i < e.getValue().size()) candidates.add(new CapacityLauncher.Candidate(e.getValue().get(i), e.getKey()));
+                }
+            }
+        }
+        LOGGER.info("Launch candidates for {}: {}", request.name(), candidates.subList(0, Math.min(candidates.size(), 6)));
+        return candidates;
+    }
+
+    // Every instance type that can run the request in the AZ, best first for IGNIS_INSTANCE_OBJECTIVE;
+    // the rest are fallbacks for when the first one has no capacity
+    public List<InstanceType> rankInstanceTypes(IClusterRequest request, String az) throws ISchedulerException {
         String type =  System.getenv("IGNIS_INSTANCE_TYPE");
         if(type != null && !type.isBlank()) {
-            try {
-                return InstanceType.fromValue(type.trim());
-            }  catch (Exception e) {
-                throw new ISchedulerException("Invalid instance type '" + type, e);
+            List<InstanceType> types = new ArrayList<>();
+            for (String value : type.split(",")) {
+                if (value.isBlank()) continue;
+                InstanceType parsed = InstanceType.fromValue(value.trim());
+                if (parsed == InstanceType.UNKNOWN_TO_SDK_VERSION) {
+                    throw new ISchedulerException("Invalid instance type '" + value.trim() + "'");
+                }
+                types.add(parsed);
             }
+            return types;
+        }
+
+        InstanceCatalog catalog = instanceCatalog(az);
+        if (catalog == null) {
+            return List.of(legacyInstanceType(request));
+        }
+
+        InstanceTypeSelector.Requirements req = InstanceTypeSelector.Requirements.of(request, INSTANCE_MIN_NVME_GB);
+        List<InstanceType> ranked = new ArrayList<>();
+        for (InstanceCatalog.Entry entry : instanceSelector.rank(catalog, req)) {
+            InstanceType parsed = InstanceType.fromValue(entry.type());
+            if (parsed != InstanceType.UNKNOWN_TO_SDK_VERSION) ranked.add(parsed);
         }
+        if (ranked.isEmpty()) {
+            throw new ISchedulerException("No instance type offered in " + az + " fits " + req +
+                    " (objective " + instanceSelector.objective().name().toLowerCase() + ")");
+        }
+        LOGGER.debug("Instance types for {} in {}: {}", req, az, ranked);
+        return ranked;
+    }
 
+    // Used only when the catalog cannot be read (e.g. no ec2:DescribeInstanceTypes permission)
+    private static InstanceType legacyInstanceType(IClusterRequest driver) {
         int cpus = driver.resources().cpus();
         long ram = driver.resources().memory() / (1024L * 1024L);
 
-       /* if (cpus <= 2 && ram <= 1024) return InstanceType.T3_MICRO;
-        if (cpus <= 2 && ram <= 2048) return InstanceType.T3_SMALL;
-        if (cpus <= 2 && ram <= 4096) return InstanceType.T3_MEDIUM;
-        if (cpus <= 2 && ram <= 8192) return InstanceType.T3_LARGE;
-        if (cpus <= 4 && ram <= 16384) return InstanceType.T3_XLARGE;
-        if (cpus <= 8 && ram <= 32768) return InstanceType.T3_2_XLARGE;*/
-
         // T3 para cargas ligeras (burst)
         if (cpus <= 2 && ram <= 2048)  return InstanceType.T3_SMALL;
         if (cpus <= 2 && ram <= 4096)  return InstanceType.T3_MEDIUM;
@@ -155,9 +364,136 @@ public class EC2Operations implements Closeable {
         if (cpus <= 32) return InstanceType.C6_I_8_XLARGE;
 
         return InstanceType.M6_I_2_XLARGE; // fallback razonable
-        // TODO: analizar otras familias y requisitos MEJOR
+    }
 
-        // return InstanceType.T3_LARGE;
+    // Catalog of the AZ: IGNIS_INSTANCE_CATALOG_FILE if given (offline), else the local copy while it is
+    // fresh, else EC2. Prices from IGNIS_INSTANCE_PRICES go on top. Null if none can be had.
+    private synchronized InstanceCatalog instanceCatalog(String az) {
+        InstanceCatalog catalog = catalogs.get(az);
+        if (catalog != null && System.currentTimeMillis() - catalog.createdAt() < CATALOG_TTL_MS) {
+            return catalog;
+        }
+
+        Path fixture = CATALOG_FILE.isBlank() ? null : Path.of(CATALOG_FILE);
+        Path cached = Path.of(System.getProperty("java.io.tmpdir"), "ignis-instance-catalog-" + az + ".json");
+        try {
+            if (fixture != null) {
+                catalog = InstanceCatalog.load(fixture);
+            } else if (Files.exists(cached) &&
+                    System.currentTimeMillis() - Files.getLastModifiedTime(cached).toMillis() < CATALOG_TTL_MS) {
+                catalog = InstanceCatalog.load(cached);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not read the instance catalog ({})", e.getMessage());
+        }
+        if (catalog == null || catalog.isEmpty()) {
+            try {
+                catalog = new InstanceCatalog(describeInstanceCatalog(az), System.currentTimeMillis());
+                catalog.save(cached);
+            } catch (ISchedulerException e) {
+                LOGGER.warn("Instance catalog unavailable, using the built-in instance types: {}", e.getMessage());
+                return null;
+            }
+        }
+
+        if (!PRICES_FILE.isBlank()) {
+            try {
+                catalog = catalog.withPrices(InstanceCatalog.loadPrices(Path.of(PRICES_FILE)));
+            } catch (Exception e) {
+                LOGGER.warn("Could not read the price table {} ({})", PRICES_FILE, e.getMessage());
+            }
+        }
+        catalogs.put(az, catalog);
+        return catalog;
+    }
+
+    // Current-generation, non-metal instance types offered in the AZ
+    public List<InstanceCatalog.Entry> describeInstanceCatalog(String az) throws ISchedulerException {
+        try {
+            Set<String> offered = new HashSet<>();
+            ec2.describeInstanceTypeOfferingsPaginator(DescribeInstanceTypeOfferingsRequest.builder()
+                            .locationType(LocationType.AVAILABILITY_ZONE)
+                            .filters(Filter.builder().name("location").values(az).build())
+                            .build())
+                    .instanceTypeOfferings()
+                    .forEach(offering -> offered.add(offering.instanceTypeAsString()));
+
+            List<InstanceCatalog.Entry> entries = new ArrayList<>();
+            for (InstanceCatalog.Entry entry : describeRegionTypes()) {
+                if (offered.contains(entry.type())) entries.add(entry);
+            }
+            LOGGER.info("Instance catalog for {}: {} types", az, entries.size());
+            return entries;
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to describe the instance types of " + az, e);
+        }
+    }
+
+    // Types are the same in every AZ of the region, only the offerings differ: described once
+    private List<InstanceCatalog.Entry> describeRegionTypes() {
+        List<InstanceCatalog.Entry> types = regionTypes;
+        if (types == null) {
+            List<InstanceCatalog.Entry> described = new ArrayList<>();
+            ec2.describeInstanceTypesPaginator(DescribeInstanceTypesRequest.builder()
+                            .filters(Filter.builder().name("current-generation").values("true").build(),
+                                    Filter.builder().name("bare-metal").values("false").build())
+                            .build())
+                    .instanceTypes()
+                    .forEach(info -> described.add(catalogEntry(info)));
+            types = List.copyOf(described);
+            regionTypes = types;
+        }
+        return types;
+    }
+
+    private static InstanceCatalog.Entry catalogEntry(InstanceTypeInfo info) {
+        int gpus = 0;
+        String gpuManufacturer = null;
+        String gpuName = null;
+        if (info.gpuInfo() != null && info.gpuInfo().hasGpus()) {
+            for (GpuDeviceInfo gpu : info.gpuInfo().gpus()) {
+                gpus += gpu.count() != null ? gpu.count() : 0;
+                gpuManufacturer = gpu.manufacturer();
+                gpuName = gpu.name();
+            }
+        }
+        long nvmeGb = info.instanceStorageInfo() != null &&
+                info.instanceStorageInfo().nvmeSupport() != EphemeralNvmeSupport.UNSUPPORTED &&
+                info.instanceStorageInfo().totalSizeInGB() != null ? info.instanceStorageInfo().totalSizeInGB() : 0;
+        return new InstanceCatalog.Entry(
+                info.instanceTypeAsString(),
+                info.vCpuInfo().defaultVCpus(),
+                info.memoryInfo().sizeInMiB(),
+                gpus, gpuManufacturer, gpuName,
+                info.processorInfo().supportedArchitecturesAsStrings(),
+                info.processorInfo().sustainedClockSpeedInGhz(),
+                nvmeGb,
+                networkGbps(info.networkInfo()),
+                Boolean.TRUE.equals(info.burstablePerformanceSupported()),
+                null);
+    }
+
+    // Baseline bandwidth when EC2 reports it; otherwise guessed from the "Up to 12.5 Gigabit" label
+    private static double networkGbps(NetworkInfo network) {
+        if (network == null) return 0;
+        if (network.hasNetworkCards()) {
+            double baseline = network.networkCards().stream()
+                    .map(NetworkCardInfo::baselineBandwidthInGbps)
+                    .filter(Objects::nonNull)
+                    .mapToDouble(Double::doubleValue)
+                    .sum();
+            if (baseline > 0) return baseline;
+        }
+        String label = Objects.requireNonNullElse(network.networkPerformance(), "").toLowerCase();
+        Matcher m = NETWORK_LABEL.matcher(label);
+        if (m.find()) {
+            double gbps = Double.parseDouble(m.group(1));
+            return label.startsWith("up to") ? gbps / 8 : gbps; // Burst figure; the baseline is a fraction
+        }
+        if (label.contains("high")) return 1;
+        if (label.contains("low to moderate")) return 0.3;
+        if (label.contains("moderate")) return 0.5;
+        return 0.1;
     }
 
     // Reference: [46], [47]
@@ -176,7 +512,7 @@ public class EC2Operations implements Closeable {
 
             var response = ec2.describeImages(request);
             if(!response.images().isEmpty()){
-                String customAmi = response.images().get(0).imageId();
+                String customAmi = newestFirst(response.images()).get(0).imageId();
                 System.out.println(String.format("Custom AMI: %s", customAmi));
                 LOGGER.info("Optimización detectada: Usando AMI personalizada {}", customAmi);
                 return customAmi;
@@ -185,6 +521,11 @@ public class EC2Operations implements Closeable {
             LOGGER.warn("No se pudo buscar la AMI personalizada: {}. Usando fallback...", e.getMessage());
         }
 
+        return resolveBaseAMI();
+    }
+
+    // Stock Amazon Linux 2023, what baked AMIs start from
+    public String resolveBaseAMI() throws ISchedulerException {
         String paramName = "/aws/service/ami-amazon-linux-latest/al2023-ami-kernel-default-x86_64";
 
         try{
@@ -198,28 +539,147 @@ public class EC2Operations implements Closeable {
         }
     }
 
+    public List<Image> findOwnImages(List<Filter> filters) throws ISchedulerException {
+        try {
+            return newestFirst(ec2.describeImages(DescribeImagesRequest.builder().owners("self").filters(filters).build()).images());
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to describe images", e);
+        }
+    }
+
+    private static List<Image> newestFirst(List<Image> images) {
+        // creationDate is ISO-8601, so it sorts as text
+        return images.stream()
+                .sorted(Comparator.comparing(Image::creationDate, Comparator.nullsFirst(Comparator.naturalOrder())).reversed())
+                .toList();
+    }
+
+    // Snapshot of a running instance (no reboot: the instance has synced and is idle by then)
+    public String createImage(String instanceId, String name, Map<String, String> tags) throws ISchedulerException {
+        try {
+            List<Tag> tagList = tags.entrySet().stream().map(e -> Tag.builder().key(e.getKey()).value(e.getValue()).build()).toList();
+            return ec2.createImage(CreateImageRequest.builder()
+                    .instanceId(instanceId)
+                    .name(name)
+                    .noReboot(true)
+                    .tagSpecifications(
+                            TagSpecification.builder().resourceType(ResourceType.IMAGE).tags(tagList).build(),
+                            TagSpecification.builder().resourceType(ResourceType.SNAPSHOT).tags(tagList).build())
+                    .build()).imageId();
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to create image from " + instanceId, e);
+        }
+    }
+
+    public String getImageState(String imageId) throws ISchedulerException {
+        try {
+            List<Image> images = ec2.describeImages(DescribeImagesRequest.builder().imageIds(imageId).build()).images();
+            return images.isEmpty() ? "not_found" : images.get(0).stateAsString();
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to describe image " + imageId, e);
+        }
+    }
+
+    // Deregisters the AMI and deletes its EBS snapshots, which otherwise keep being billed
+    public void deleteImage(Image image) throws ISchedulerException {
+        try {
+            ec2.deregisterImage(DeregisterImageRequest.builder().imageId(image.imageId()).build());
+            for (BlockDeviceMapping mapping : image.blockDeviceMappings()) {
+                if (mapping.ebs() != null && mapping.ebs().snapshotId() != null) {
+                    ec2.deleteSnapshot(DeleteSnapshotRequest.builder().snapshotId(mapping.ebs().snapshotId()).build());
+                }
+            }
+            LOGGER.info("Deleted image {} ({})", image.imageId(), image.name());
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to delete image " + image.imageId(), e);
+        }
+    }
+
+    // Instance used to bake an AMI: root volume big enough for the images it pulls
+    public String createBuilderInstance(String instanceName, String userDataScript, String amiId, String subnet, String sgId,
+                                        InstanceType instanceType, String iamInstanceProfile, int volumeGb,
+                                        Map<String, String> tags) throws ISchedulerException {
+        try {
+            String rootDevice = ec2.describeImages(DescribeImagesRequest.builder().imageIds(amiId).build())
+                    .images().get(0).rootDeviceName();
+            List<Tag> tagList = new ArrayList<>();
+            tagList.add(Tag.builder().key("Name").value(instanceName).build());
+            tags.forEach((k, v) -> tagList.add(Tag.builder().key(k).value(v).build()));
+
+            RunInstancesResponse response = ec2.runInstances(RunInstancesRequest.builder()
+                    .imageId(amiId)
+                    .instanceType(instanceType)
+                    .minCount(1)
+                    .maxCount(1)
+                    .subnetId(subnet)
+                    .securityGroupIds(sgId)
+                    .iamInstanceProfile(IamInstanceProfileSpecification.builder().name(iamInstanceProfile).build())
+                    .instanceInitiatedShutdownBehavior(ShutdownBehavior.TERMINATE)
+                    .blockDeviceMappings(BlockDeviceMapping.builder()
+                            .deviceName(rootDevice)
+                            .ebs(EbsBlockDevice.builder().volumeSize(volumeGb).volumeType(VolumeType.GP3).deleteOnTermination(true).build())
+                            .build())
+                    .userData(Base64.getEncoder().encodeToString(userDataScript.getBytes(StandardCharsets.UTF_8)))
+                    .tagSpecifications(TagSpecification.builder().resourceType(ResourceType.INSTANCE).tags(tagList).build())
+                    .build());
+            String instanceId = response.instances().get(0).instanceId();
+            LOGGER.info("Builder instance launched: {}", instanceId);
+            return instanceId;
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to launch builder instance", e);
+        }
+    }
+
+    // Primary AZ: where the catalog and single-subnet resources live
     public String resolveAvailabilityZone() throws ISchedulerException {
-        // 1. Env var
+        return resolveAvailabilityZones().get(0);
+    }
+
+    // AZs the stack gets a subnet in and launches may fall back to
+    public List<String> resolveAvailabilityZones() throws ISchedulerException {
+        List<String> azs = availabilityZones;
+        if (azs == null) {
+            azs = lookupAvailabilityZones();
+            availabilityZones = azs;
+        }
+        return azs;
+    }
+
+    private List<String> lookupAvailabilityZones() {
+        // 1. Env vars: a list, or a single pinned AZ (no zone fallback then)
+        String configuredAZs = System.getenv("IGNIS_AWS_AZS");
+        if (configuredAZs != null && !configuredAZs.isBlank()) {
+            List<String> azs = Arrays.stream(configuredAZs.split(",")).map(String::trim).filter(z -> !z.isEmpty()).toList();
+            LOGGER.info("Using AZs from IGNIS_AWS_AZS: {}", azs);
+            return azs;
+        }
         String configuredAZ = System.getenv("IGNIS_AWS_AZ");
         if(configuredAZ != null && !configuredAZ.isBlank()) {
             LOGGER.info("Using AZ from IGNIS_AWS_AZ: {}", configuredAZ);
-            return configuredAZ.trim();
+            return List.of(configuredAZ.trim());
         }
 
-        // 2. Search available AZs at the region
+        // 2. Search available AZs at the region (not local or wavelength zones)
         try{
             DescribeAvailabilityZonesRequest request = DescribeAvailabilityZonesRequest.builder()
                     .filters(Filter.builder()
-                            .name("state")
-                            .values("available")
-                            .build())
+                                    .name("state")
+                                    .values("available")
+                                    .build(),
+                            Filter.builder()
+                                    .name("zone-type")
+                                    .values("availability-zone")
+                                    .build())
                     .build();
 
-            List<AvailabilityZone> zones = ec2.describeAvailabilityZones(request).availabilityZones();
-            if(!zones.isEmpty()) {
-                String az = zones.get(0).zoneName();
-                LOGGER.info("Auto-resolved AZ for region {}: {}", awsFactory.getRegion(), az);
-                return az;
+            List<String> azs = ec2.describeAvailabilityZones(request).availabilityZones().stream()
+                    .map(AvailabilityZone::zoneName)
+                    .sorted()
+                    .limit(MAX_AZS)
+                    .toList();
+            if(!azs.isEmpty()) {
+                LOGGER.info("Auto-resolved AZs for region {}: {}", awsFactory.getRegion(), azs);
+                return azs;
             }
         } catch (Exception e) {
             LOGGER.warn("Could not auto-resolve AZ from AWS, falling back to default", e);
@@ -228,7 +688,7 @@ public class EC2Operations implements Closeable {
         // 3. Fallback
         String fallback = awsFactory.getRegion().id() + "a";
         LOGGER.info("Using fallback AZ: {}", fallback);
-        return fallback;
+        return List.of(fallback);
     }
 
     public void verifyConnectivity() throws ISchedulerException {
@@ -0,0 +1,361 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ignis.scheduler.model.IClusterInfo;
+import org.ignis.scheduler.model.IClusterRequest;
+import org.ignis.scheduler.model.IContainerInfo;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.model.Instance;
+
+import java.util.*;
+import java.util.function.Function;
+
+// Executor clusters spread over EC2 instances (IGNIS_CLUSTER_MODE=ec2). createCluster launches all
+// nodes with a single RunInstances call; each node starts its executor container and registers
+// itself under jobs/<job>/clusters/<cluster>/<iid>.json with its private address. Instances are
+// tagged with the job and cluster, which is how destroy/get/repair find them again.
+// Runs inside the driver container, so the network settings come from the env set by userdata.
+public class Ec2ClusterManager {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(Ec2ClusterManager.class);
+
+    private static final String TAG_JOB = "IgnisJob";
+    private static final String TAG_CLUSTER = "IgnisCluster";
+    private static final long READY_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_EC2_EXECUTOR_READY_TIMEOUT_SECONDS", "600") // Default: 10 mins
+    ) * 1000;
+    private static final int READY_PORT = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_EC2_EXECUTOR_READY_PORT", "0") // Default: container running is enough
+    );
+    // A node registers STARTING as soon as its script can reach S3; one that is still silent this long
+    // after launch has a script that died before that (no aws CLI, bad user data) and never will
+    private static final long SILENT_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_EC2_EXECUTOR_SILENT_SECONDS", "300") // Default: 5 mins
+    ) * 1000;
+    private static final long REGISTRATION_POLL_MS = 2000;
+
+    private final EC2Operations ec2;
+    private final S3Operations s3;
+    private final UserDataBuilder userDataBuilder;
+    private final String region;
+    private final Function<String, IContainerInfo.IStatus> stateMapper;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Map<String, String> subnets;
+
+    private record Resources(String image, List<String> args, int cpus, String gpu, long memory) { }
+
+    private record Registration(String instanceId, int index, String container, String privateIp, String hostname,
+                                String state, String message) { }
+
+    public Ec2ClusterManager(EC2Operations ec2, S3Operations s3, UserDataBuilder userDataBuilder, String region,
+                             Function<String, IContainerInfo.IStatus> stateMapper) {
+        this.ec2 = ec2;
+        this.s3 = s3;
+        this.userDataBuilder = userDataBuilder;
+        this.region = region;
+        this.stateMapper = stateMapper;
+    }
+
+    public IClusterInfo createCluster(String job, IClusterRequest request) throws ISchedulerException {
+        int instances = request.instances();
+        System.out.println("[ignis-cloud] Launching " + instances + " executor instances for cluster " + request.name());
+        List<String> instanceIds = launch(job, request, instances, "");
+        List<Registration> nodes;
+        try {
+            nodes = awaitRegistrations(job, request.name(), instanceIds);
+        } catch (ISchedulerException e) {
+            terminateQuietly(instanceIds);
+            throw e;
+        }
+        nodes.sort(Comparator.comparingInt(Registration::index));
+
+        List<IContainerInfo> containers = new ArrayList<>();
+        for (Registration node : nodes) {
+            containers.add(buildContainerInfo(job, resources(request), node, IContainerInfo.IStatus.RUNNING));
+        }
+        return IClusterInfo.builder()
+                .id(request.name())
+                .instances(instances)
+                .containers(containers)
+                .build();
+    }
+
+    public void destroyCluster(String job, String id) throws ISchedulerException {
+        List<String> instanceIds = clusterInstances(job, id).stream().map(Instance::instanceId).toList();
+        if (instanceIds.isEmpty()) {
+            LOGGER.info("No executor instances found for cluster {} job {}", id, job);
+            return;
+        }
+        ec2.terminateInstances(instanceIds);
+        LOGGER.info("Executor instances {} terminated for cluster {} job {}", instanceIds, id, job);
+    }
+
+    // Every executor node of the job, whatever its cluster. Nodes don't stop on their own, so this is
+    // for when the driver can no longer destroy its clusters: cancelled, timed out, failed or relaunched.
+    public void terminateJobNodes(String job) throws ISchedulerException {
+        List<String> instanceIds = ec2.findInstances(Map.of(TAG_JOB, job)).stream().map(Instance::instanceId).toList();
+        if (instanceIds.isEmpty()) return;
+        ec2.terminateInstances(instanceIds);
+        LOGGER.info("Executor instances {} terminated for job {}", instanceIds, job);
+    }
+
+    public IClusterInfo getCluster(String job, String id, JobMeta meta) throws ISchedulerException {
+        Map<String, Registration> registrations = registrations(job, id);
+        List<IContainerInfo> containers = new ArrayList<>();
+        for (Instance instance : clusterInstances(job, id)) {
+            Registration node = registrations.get(instance.instanceId());
+            if (node == null) {
+                node = new Registration(instance.instanceId(), -1, instance.instanceId(), instance.privateIpAddress(),
+                        instance.privateDnsName(), "PENDING", "");
+            }
+            IContainerInfo.IStatus status = "FAILED".equals(node.state()) ? IContainerInfo.IStatus.ERROR
+                    : stateMapper.apply(instance.state().nameAsString());
+            containers.add(buildContainerInfo(job, resources(meta), node, status));
+        }
+        return IClusterInfo.builder()
+                .id(id)
+                .instances(containers.size())
+                .containers(containers)
+                .build();
+    }
+
+    // Replaces every node whose instance is gone or not running with a new instance at the same index
+    public IClusterInfo repairCluster(String job, IClusterInfo cluster, IClusterRequest request) throws ISchedulerException {
+        Map<String, Instance> live = new HashMap<>();
+        for (Instance instance : clusterInstances(job, cluster.id())) {
+            live.put(instance.instanceId(), instance);
+        }
+
+        List<IContainerInfo> containers = new ArrayList<>(cluster.containers());
+        boolean repaired = false;
+        for (int i = 0; i < containers.size(); i++) {
+            IContainerInfo container = containers.get(i);
+            Instance instance = live.get(container.id());
+            if (instance != null && "running".equals(instance.state().nameAsString())) continue;
+
+            LOGGER.warn("Executor node {} of cluster {} is not running, replacing it", container.id(), cluster.id());
+            if (instance != null) terminateQuietly(List.of(instance.instanceId()));
+
+            List<String> replacement = launch(job, request, 1, String.valueOf(i));
+            Registration node;
+            try {
+                node = awaitRegistrations(job, cluster.id(), replacement).get(0);
+            } catch (ISchedulerException e) {
+                terminateQuietly(replacement);
+                throw e;
+            }
+            containers.set(i, buildContainerInfo(job, resources(request), node, IContainerInfo.IStatus.RUNNING));
+            repaired = true;
+        }
+
+        if (!repaired) {
+            LOGGER.info("No executor nodes needed repair for cluster {} job {}", cluster.id(), job);
+            return cluster;
+        }
+        return IClusterInfo.builder()
+                .id(cluster.id())
+                .instances(cluster.instances())
+                .containers(containers)
+                .build();
+    }
+
+    private List<String> launch(String job, IClusterRequest request, int count, String index) throws ISchedulerException {
+        String bucket = requireEnv("IGNIS_JOBS_BUCKET");
+        Map<String, String> subnets = subnets();
+        String sg = requireEnv("IGNIS_SG_ID");
+        String profile = requireEnv("IGNIS_IAM_INSTANCE_PROFILE");
+        String ami = ec2.resolveAMI();
+        List<CapacityLauncher.Candidate> candidates = ec2.rankLaunchCandidates(request, List.copyOf(subnets.keySet()), true);
+
+        IContainerInfo resources = request.resources();
+        List<String> args = new ArrayList<>();
+        args.add("ignis-logger");
+        if (resources.args() != null && !resources.args().isEmpty()) {
+            args.addAll(resources.args());
+        } else {
+            args.add("ignis-run");
+        }
+        String publicKey = resources.env().getOrDefault("IGNIS_CRYPTO_PUBLIC", "");
+        if (publicKey.isBlank()) {
+            LOGGER.warn("IGNIS_CRYPTO_PUBLIC not found, executors of cluster {} may fail SSH authentication", request.name());
+        }
+
+        String userData = userDataBuilder.buildExecutorUserData(region, bucket, job, request.name(), resources.image(), index,
+                publicKey.trim(), resources.env(), args, READY_PORT);
+        return ec2.launchInstances(job + "-" + request.name() + "-executor", userData, ami, subnets, sg, profile,
+                count, Map.of(TAG_JOB, job, TAG_CLUSTER, request.name()), candidates).instanceIds();
+    }
+
+    // AZ -> subnet from IGNIS_SUBNET_IDS, the driver's own AZ first so executors stay next to it
+    // unless it has no capacity. Older drivers only get IGNIS_SUBNET_ID.
+    private synchronized Map<String, String> subnets() throws ISchedulerException {
+        if (subnets != null) return subnets;
+        String driverAz = null;
+        try {
+            Instance self = ec2.getInstanceInfo(System.getenv("IGNIS_SCHEDULER_ENV_CONTAINER"));
+            if (self != null && self.placement() != null) driverAz = self.placement().availabilityZone();
+        } catch (ISchedulerException e) {
+            LOGGER.warn("Could not find the driver's AZ ({})", e.getMessage());
+        }
+
+        String ids = System.getenv("IGNIS_SUBNET_IDS");
+        if (ids == null || ids.isBlank()) {
+            subnets = Map.of(driverAz != null ? driverAz : ec2.resolveAvailabilityZone(), requireEnv("IGNIS_SUBNET_ID"));
+            return subnets;
+        }
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String pair : ids.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) parsed.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+        }
+        Map<String, String> ordered = new LinkedHashMap<>();
+        if (driverAz != null && parsed.containsKey(driverAz)) ordered.put(driverAz, parsed.get(driverAz));
+        ordered.putAll(parsed);
+        subnets = ordered;
+        return subnets;
+    }
+
+    // Waits until every instance has registered READY; any FAILED registration, dead instance or node
+    // that stays silent past SILENT_TIMEOUT_MS fails fast
+    private List<Registration> awaitRegistrations(String job, String cluster, List<String> instanceIds) throws ISchedulerException {
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MS;
+        while (true) {
+            Map<String, Registration> registrations = registrations(job, cluster);
+            List<Registration> ready = new ArrayList<>();
+            List<String> failures = new ArrayList<>();
+            for (String id : instanceIds) {
+                Registration r = registrations.get(id);
+                if (r == null) continue;
+                if ("READY".equals(r.state())) {
+                    ready.add(r);
+                } else if ("FAILED".equals(r.state())) {
+                    failures.add(id + " (executor " + r.index() + "): " + r.message());
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new ISchedulerException("Executor nodes failed to start for cluster " + cluster + ":\n  "
+                        + String.join("\n  ", failures));
+            }
+            if (ready.size() == instanceIds.size()) {
+                LOGGER.info("All {} executor nodes of cluster {} registered", ready.size(), cluster);
+                return ready;
+            }
+
+            Map<String, Instance> alive = new HashMap<>();
+            clusterInstances(job, cluster).forEach(i -> alive.put(i.instanceId(), i));
+            List<String> pending = new ArrayList<>();
+            List<String> silent = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (String id : instanceIds) {
+                Registration r = registrations.get(id);
+                if (r != null && "READY".equals(r.state())) continue;
+                Instance instance = alive.get(id);
+                if (instance == null) {
+                    throw new ISchedulerException("Executor instance " + id + " of cluster " + cluster + " terminated before it was ready");
+                }
+                if (r == null && instance.launchTime() != null
+                        && now - instance.launchTime().toEpochMilli() > SILENT_TIMEOUT_MS) {
+                    silent.add(id);
+                }
+                pending.add(id);
+            }
+            if (!silent.isEmpty()) {
+                throw new ISchedulerException("Executor nodes " + silent + " of cluster " + cluster + " are running but did not register within "
+                        + SILENT_TIMEOUT_MS / 1000 + " seconds of their launch (their startup script failed before reaching S3)");
+            }
+
+            if (System.currentTimeMillis() > deadline) {
+                throw new ISchedulerException("Executor nodes " + pending + " of cluster " + cluster + " not ready after "
+                        + READY_TIMEOUT_MS / 1000 + " seconds");
+            }
+            try {
+                Thread.sleep(REGISTRATION_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ISchedulerException("Interrupted while waiting for executor nodes", e);
+            }
+        }
+    }
+
+    private List<Instance> clusterInstances(String job, String cluster) throws ISchedulerException {
+        return ec2.findInstances(Map.of(TAG_JOB, job, TAG_CLUSTER, cluster));
+    }
+
+    private Map<String, Registration> registrations(String job, String cluster) throws ISchedulerException {
+        String bucket = requireEnv("IGNIS_JOBS_BUCKET");
+        Map<String, Registration> registrations = new HashMap<>();
+        for (String key : s3.listKeys(bucket, s3.jobClusterPrefix(job, cluster))) {
+            String json = s3.getString(bucket, key);
+            if (json == null || json.isBlank()) continue;
+            try {
+                JsonNode node = mapper.readTree(json);
+                Registration r = new Registration(node.path("instanceId").asText(), node.path("index").asInt(-1),
+                        node.path("container").asText(), node.path("privateIp").asText(), node.path("hostname").asText(),
+                        node.path("state").asText(), node.path("message").asText(""));
+                registrations.put(r.instanceId(), r);
+            } catch (Exception e) {
+                LOGGER.debug("Ignoring unreadable registration {}", key, e);
+            }
+        }
+        return registrations;
+    }
+
+    private IContainerInfo buildContainerInfo(String job, Resources resources, Registration node, IContainerInfo.IStatus status) {
+        String nodeName = node.hostname() != null && !node.hostname().isBlank() ? node.hostname() : node.privateIp();
+        Map<String, String> hostnames = node.privateIp() != null && !node.privateIp().isBlank() && nodeName != null
+                ? Map.of(nodeName, node.privateIp()) : Map.of();
+        var builder = IContainerInfo.builder()
+                .id(node.instanceId())
+                .node(nodeName)
+                .writable(true)
+                .tmpdir(true)
+                .ports(List.of())
+                .binds(List.of())
+                .nodelist(List.of())
+                .hostnames(hostnames)
+                .env(Map.of(
+                        "IGNIS_SCHEDULER_ENV_JOB", job,
+                        "IGNIS_SCHEDULER_ENV_CONTAINER", node.instanceId()
+                ))
+                .network(IContainerInfo.INetworkMode.HOST)
+                .status(status)
+                .provider(IContainerInfo.IProvider.DOCKER)
+                .schedulerOptArgs(Map.of());
+        if (resources != null) {
+            builder.image(resources.image())
+                    .args(resources.args() != null ? resources.args() : List.of())
+                    .cpus(resources.cpus())
+                    .gpu(resources.gpu())
+                    .memory(resources.memory());
+        } else {
+            builder.image("").args(List.of()).cpus(1).gpu(null).memory(0L);
+        }
+        return builder.build();
+    }
+
+    private static Resources resources(IClusterRequest request) {
+        IContainerInfo r = request.resources();
+        return new Resources(r.image(), r.args(), r.cpus(), r.gpu(), r.memory());
+    }
+
+    private static Resources resources(JobMeta meta) {
+        if (meta == null) return null;
+        return new Resources(meta.image(), meta.args(), meta.cpus(), meta.gpu(), meta.memory());
+    }
+
+    private void terminateQuietly(List<String> instanceIds) {
+        try {
+            ec2.terminateInstances(instanceIds);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to terminate executor instances {}", instanceIds, e);
+        }
+    }
+
+    private static String requireEnv(String name) throws ISchedulerException {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            throw new ISchedulerException("Missing " + name + " (required by IGNIS_CLUSTER_MODE=ec2)");
+        }
+        return value.trim();
+    }
+}
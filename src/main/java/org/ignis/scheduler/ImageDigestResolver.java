@@ -0,0 +1,123 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Current registry digest of an image reference (what `docker image inspect` lists in RepoDigests
+// after pulling it by tag), read with a HEAD on the Registry v2 manifest. Public images only: a
+// registry that wants credentials (ECR, private repositories) answers null, meaning "unknown".
+public class ImageDigestResolver {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(ImageDigestResolver.class);
+
+    private static final String DOCKER_HUB = "registry-1.docker.io";
+    private static final String MANIFEST_TYPES = String.join(", ",
+            "application/vnd.oci.image.index.v1+json",
+            "application/vnd.docker.distribution.manifest.list.v2+json",
+            "application/vnd.oci.image.manifest.v1+json",
+            "application/vnd.docker.distribution.manifest.v2+json");
+    private static final Pattern CHALLENGE_PARAM = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final long CACHE_TTL_MS = 5 * 60 * 1000;
+
+    private record Cached(String digest, long at) { }
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    public String resolve(String image) {
+        Cached cached = cache.get(image);
+        if (cached != null && System.currentTimeMillis() - cached.at() < CACHE_TTL_MS) {
+            return cached.digest();
+        }
+        String digest = lookup(image);
+        cache.put(image, new Cached(digest, System.currentTimeMillis()));
+        return digest;
+    }
+
+    private String lookup(String image) {
+        int at = image.indexOf('@');
+        if (at > 0) return image.substring(at + 1); // Already pinned
+
+        // [registry/]repository[:tag]
+        String registry = DOCKER_HUB;
+        String rest = image;
+        int slash = image.indexOf('/');
+        if (slash > 0) {
+            String first = image.substring(0, slash);
+            if (first.contains(".") || first.contains(":") || first.equals("localhost")) {
+                registry = first;
+                rest = image.substring(slash + 1);
+            }
+        }
+        String tag = "latest";
+        int colon = rest.lastIndexOf(':');
+        if (colon > rest.lastIndexOf('/')) {
+            tag = rest.substring(colon + 1);
+            rest = rest.substring(0, colon);
+        }
+        if (registry.equals(DOCKER_HUB) && !rest.contains("/")) rest = "library/" + rest;
+
+        URI manifest = URI.create("https://" + registry + "/v2/" + rest + "/manifests/" + tag);
+        try {
+            HttpResponse<Void> response = head(manifest, null);
+            if (response.statusCode() == 401) {
+                String token = anonymousToken(response.headers().firstValue("WWW-Authenticate").orElse(""));
+                if (token == null) return null;
+                response = head(manifest, token);
+            }
+            if (response.statusCode() != 200) {
+                LOGGER.debug("Registry answered {} for {}", response.statusCode(), image);
+                return null;
+            }
+            return response.headers().firstValue("Docker-Content-Digest").orElse(null);
+        } catch (Exception e) {
+            LOGGER.debug("Could not resolve the digest of {}", image, e);
+            return null;
+        }
+    }
+
+    private HttpResponse<Void> head(URI uri, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .header("Accept", MANIFEST_TYPES)
+                .timeout(Duration.ofSeconds(10));
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return http.send(request.build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    // Bearer realm="...",service="...",scope="..." -> token for anonymous pulls
+    private String anonymousToken(String challenge) throws Exception {
+        if (!challenge.startsWith("Bearer ")) return null;
+        Map<String, String> params = new HashMap<>();
+        Matcher m = CHALLENGE_PARAM.matcher(challenge);
+        while (m.find()) params.put(m.group(1), m.group(2));
+        String realm = params.remove("realm");
+        if (realm == null) return null;
+
+        StringBuilder query = new StringBuilder();
+        params.forEach((k, v) -> query.append(query.isEmpty() ? "?" : "&").append(k).append('=')
+                .append(URLEncoder.encode(v, StandardCharsets.UTF_8)));
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(realm + query))
+                .timeout(Duration.ofSeconds(10)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) return null;
+        var body = mapper.readTree(response.body());
+        String token = body.path("token").asText(null);
+        return token != null ? token : body.path("access_token").asText(null);
+    }
+}
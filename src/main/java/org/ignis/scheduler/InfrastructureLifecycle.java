@@ -0,0 +1,175 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+// Keeps one provisioned stack alive while jobs use it. Every job holds a lease; when the last lease
+// is released only that job's prefix is removed, and the stack itself is destroyed after
+// IGNIS_INFRA_IDLE_TTL_SECONDS without new leases. The removals themselves run on the TeardownReaper,
+// never on the thread releasing the lease; a JVM exiting while idle only journals the stack teardown,
+// and the next start carries it out after IGNIS_INFRA_IDLE_TTL_SECONDS without leases (or drops it
+// if it needs the stack again).
+public class InfrastructureLifecycle {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(InfrastructureLifecycle.class);
+
+    private static final long IDLE_TTL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_INFRA_IDLE_TTL_SECONDS", "300") // Default: 5 mins
+    ) * 1000;
+    // At exit the job cleanup still running (or queued) gets this long; the rest resumes on the next start
+    private static final long EXIT_WAIT_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_TEARDOWN_EXIT_WAIT_SECONDS", "0") // Default: no wait, the journal keeps it
+    ) * 1000;
+
+    private final InfrastructureProvisioner provisioner;
+    private final S3Operations s3;
+    private final WarmPool warmPool;
+    private final boolean runtime = Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"));
+    private final Set<String> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ignis-infra-idle");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> pendingTeardown = null;
+    private final TeardownReaper reaper;
+    // Run at exit before the leases are looked at, to give up the ones that can't outlive the JVM
+    private final List<Runnable> exitHooks = new CopyOnWriteArrayList<>();
+
+    public InfrastructureLifecycle(InfrastructureProvisioner provisioner, S3Operations s3, WarmPool warmPool, String region) {
+        this.provisioner = provisioner;
+        this.s3 = s3;
+        this.warmPool = warmPool;
+        this.reaper = new TeardownReaper(region, s3, this::destroyStack);
+        if (reaper.hasHeldStack()) {
+            // Left by an earlier run: it waits the idle TTL like our own, and acquire() drops it
+            LOGGER.info("Stack teardown left by an earlier run, carrying it out in {} s unless a job arrives", IDLE_TTL_MS / 1000);
+            pendingTeardown = timer.schedule(this::resumeTeardown, Math.max(IDLE_TTL_MS, 0), TimeUnit.MILLISECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::teardownOnExit, "ignis-infra-shutdown"));
+    }
+
+    public synchronized void acquire(String leaseId) throws ISchedulerException {
+        cancelPendingTeardown();
+        try {
+            reaper.keepStack();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ISchedulerException("Interrupted while waiting for the infrastructure teardown", e);
+        }
+        provisioner.ensureInfrastructure();
+        leases.add(leaseId);
+        LOGGER.debug("Infrastructure lease {} acquired ({} active)", leaseId, leases.size());
+    }
+
+    // Removes jobs/<id>/ for the job and schedules the stack teardown if nobody else is using it
+    public synchronized void release(String jobId, String bucket) {
+        if (!leases.remove(jobId)) return;
+
+        if (runtime) {
+            LOGGER.info("Runtime mode: skipping infrastructure cleanup for job {}", jobId);
+            return;
+        }
+        if (bucket != null) {
+            reaper.submit(TeardownReaper.Task.job(bucket, jobId));
+        }
+
+        if (!leases.isEmpty()) {
+            LOGGER.info("Keeping infrastructure: {} jobs still using it", leases.size());
+            return;
+        }
+        if (IDLE_TTL_MS <= 0) {
+            teardown();
+            return;
+        }
+        LOGGER.info("Infrastructure idle, tearing down in {} s unless a new job arrives", IDLE_TTL_MS / 1000);
+        pendingTeardown = timer.schedule(this::teardown, IDLE_TTL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void onExit(Runnable hook) {
+        exitHooks.add(hook);
+    }
+
+    public int activeLeases() {
+        return leases.size();
+    }
+
+    private synchronized void teardown() {
+        pendingTeardown = null;
+        if (!leases.isEmpty() || !provisioner.isProvisioned()) return;
+        try {
+            reaper.submit(TeardownReaper.Task.stack(provisioner.requireOutput("jobs_bucket_name")));
+        } catch (ISchedulerException e) {
+            LOGGER.warn("Failed to schedule the infrastructure teardown", e);
+        }
+    }
+
+    private synchronized void resumeTeardown() {
+        pendingTeardown = null;
+        if (leases.isEmpty()) reaper.resumeStack();
+    }
+
+    // On the reaper thread. It must not take this object's lock: acquire() holds it while waiting for this.
+    private void destroyStack(String bucket) throws Exception {
+        if (!leases.isEmpty()) return;
+
+        System.out.println("[ignis-cloud] Cleaning up infrastructure...");
+        warmPool.drain();
+        // Left by an earlier run: destroy() finds the stack from its state or tags, nothing is provisioned for it
+        boolean destroyed = provisioner.destroyIfUnused(() -> {
+            try {
+                s3.emptyBucket(bucket);
+            } catch (ISchedulerException e) {
+                if (!(e.getCause() instanceof NoSuchBucketException)) throw e;
+            }
+        });
+        System.out.println(destroyed ? "[ignis-cloud] Infrastructure cleaned up."
+                : "[ignis-cloud] Infrastructure still used by other schedulers, leaving it provisioned.");
+    }
+
+    private void cancelPendingTeardown() {
+        if (pendingTeardown != null) {
+            pendingTeardown.cancel(false);
+            pendingTeardown = null;
+            LOGGER.info("Reusing idle infrastructure");
+        }
+    }
+
+    private void teardownOnExit() {
+        for (Runnable hook : exitHooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Exit hook failed", e);
+            }
+        }
+        synchronized (this) {
+            if (!leases.isEmpty()) {
+                LOGGER.warn("JVM exiting with {} jobs still using the infrastructure; leaving it provisioned", leases.size());
+                return;
+            }
+            if (pendingTeardown != null) {
+                pendingTeardown.cancel(false);
+                pendingTeardown = null;
+                // Journaled only: a destroy cut short by the exit would leave half a stack behind
+                if (provisioner.isProvisioned()) {
+                    try {
+                        reaper.journal(TeardownReaper.Task.stack(provisioner.requireOutput("jobs_bucket_name")));
+                    } catch (ISchedulerException e) {
+                        LOGGER.warn("Failed to journal the infrastructure teardown", e);
+                    }
+                }
+            }
+        }
+        try {
+            if (!reaper.awaitIdle(EXIT_WAIT_MS)) {
+                System.out.println("[ignis-cloud] Infrastructure teardown not finished, it resumes on the next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.ignis.scheduler;
+
+import java.util.List;
+import java.util.Map;
+
+// Creates and removes the stack the jobs run in (VPC, one subnet per AZ, internet gateway, route
+// table, security group and jobs bucket) and answers its outputs with the terraform output names:
+// vpc_id, subnet_id (primary AZ), sg_id, jobs_bucket_name.
+//   IGNIS_PROVISIONER=terraform  main.tf through the terraform CLI (TerraformManager)
+//   IGNIS_PROVISIONER=sdk        the same resources straight through the AWS SDK (SdkProvisioner)
+public interface InfrastructureProvisioner {
+
+    // Provision if not done yet; nothing in runtime mode (IGNIS_CLOUD_RUNTIME)
+    void ensureInfrastructure() throws ISchedulerException;
+
+    boolean isProvisioned();
+
+    String requireOutput(String key) throws ISchedulerException;
+
+    // AZ -> subnet, primary AZ first
+    Map<String, String> subnets() throws ISchedulerException;
+
+    void destroy() throws ISchedulerException;
+
+    @FunctionalInterface
+    interface Step {
+        void run() throws Exception;
+    }
+
+    // destroy(), unless another scheduler process still uses the same stack (false then, and this one
+    // lets go of it). beforeDestroy runs first, e.g. to empty the bucket, while nobody can take it up.
+    default boolean destroyIfUnused(Step beforeDestroy) throws Exception {
+        beforeDestroy.run();
+        destroy();
+        return true;
+    }
+
+    static InfrastructureProvisioner fromEnv(AwsFactory awsFactory, List<String> azs) {
+        String kind = System.getenv().getOrDefault("IGNIS_PROVISIONER", "terraform").trim().toLowerCase(); // Default: terraform
+        return switch (kind) {
+            case "sdk" -> new SdkProvisioner(awsFactory.createEc2Client(), awsFactory.createS3Client(),
+                    awsFactory.getRegion().id(), azs);
+            case "terraform" -> new TerraformManager(awsFactory.getRegion().id(), azs);
+            default -> throw new IllegalArgumentException("Unknown IGNIS_PROVISIONER '" + kind + "' (terraform or sdk)");
+        };
+    }
+
+    static void printInfrastructureTable(Map<String, String> outputs, Map<String, String> subnets) {
+        String vpc    = outputs.getOrDefault("vpc_id",           "N/A");
+        String subnet = outputs.getOrDefault("subnet_id",        "N/A");
+        String sg     = outputs.getOrDefault("sg_id",            "N/A");
+        String bucket = outputs.getOrDefault("jobs_bucket_name", "N/A");
+
+        int col1 = 20;
+        int col2 = Math.max(50, Math.max(Math.max(vpc.length(), subnet.length()),
+                Math.max(sg.length(), bucket.length())) + 2);
+
+        String separator = "+" + "-".repeat(col1 + 2) + "+" + "-".repeat(col2 + 2) + "+";
+        String fmt = "| %-" + col1 + "s | %-" + col2 + "s |";
+
+        System.out.println();
+        System.out.println("[ignis-cloud] Provisioned infrastructure:");
+        System.out.println(separator);
+        System.out.printf((fmt) + "%n", "Resource", "Value");
+        System.out.println(separator);
+        System.out.printf((fmt) + "%n", "VPC ID",           vpc);
+        System.out.printf((fmt) + "%n", "Subnet ID",        subnet);
+        subnets.forEach((az, id) -> {
+            if (!id.equals(subnet)) System.out.printf((fmt) + "%n", "Subnet ID (" + az + ")", id);
+        });
+        System.out.printf((fmt) + "%n", "Security Group ID", sg);
+        System.out.printf((fmt) + "%n", "S3 Bucket",        bucket);
+        System.out.println(separator);
+        System.out.println();
+    }
+}
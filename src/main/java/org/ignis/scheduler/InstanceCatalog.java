@@ -0,0 +1,83 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Instance types offered in one availability zone, reduced to what InstanceTypeSelector looks at.
+// Built from DescribeInstanceTypes + DescribeInstanceTypeOfferings (EC2Operations) and kept as a
+// JSON file between runs; the same file format works as an offline fixture.
+public class InstanceCatalog {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(InstanceCatalog.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // price is USD per hour and optional: without it the selector estimates one
+    public record Entry(String type, int vcpus, long memoryMiB, int gpus, String gpuManufacturer, String gpuName,
+                        List<String> architectures, Double clockGhz, long nvmeGb, double networkGbps,
+                        boolean burstable, Double price) {
+
+        public Entry withPrice(Double price) {
+            return new Entry(type, vcpus, memoryMiB, gpus, gpuManufacturer, gpuName, architectures, clockGhz,
+                    nvmeGb, networkGbps, burstable, price);
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long createdAt;
+
+    public InstanceCatalog(List<Entry> entries, long createdAt) {
+        this.entries = List.copyOf(entries);
+        this.createdAt = createdAt;
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public long createdAt() {
+        return createdAt;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // The file's own mtime dates the catalog, so a copied fixture never looks stale
+    public static InstanceCatalog load(Path file) throws IOException {
+        List<Entry> entries = MAPPER.readValue(file.toFile(), new TypeReference<List<Entry>>() { });
+        return new InstanceCatalog(entries, Files.getLastModifiedTime(file).toMillis());
+    }
+
+    public void save(Path file) {
+        try {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), entries);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.debug("Could not cache the instance catalog at {}", file, e);
+        }
+    }
+
+    // {"m6i.large": 0.096, ...}; a table price wins over one already in the catalog
+    public static Map<String, Double> loadPrices(Path file) throws IOException {
+        return MAPPER.readValue(file.toFile(), new TypeReference<Map<String, Double>>() { });
+    }
+
+    public InstanceCatalog withPrices(Map<String, Double> prices) {
+        if (prices.isEmpty()) return this;
+        List<Entry> priced = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            Double price = prices.get(entry.type());
+            priced.add(price != null ? entry.withPrice(price) : entry);
+        }
+        return new InstanceCatalog(priced, createdAt);
+    }
+}
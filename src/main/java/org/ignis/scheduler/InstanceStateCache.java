@@ -0,0 +1,159 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.model.Ec2Exception;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Instance states answered from memory. Every tracked instance is refreshed by the same batched
+// DescribeInstances cycle, so the EC2 API load depends on the refresh rate and not on how often
+// jobs are polled. The interval shrinks while some instance is changing state, grows while all are
+// stable and backs off further when EC2 throttles us. Terminated instances are dropped once their
+// listeners have seen it, and so are instances nobody asked about for a while (with listeners only
+// if they are gone); Cloud untracks a job's instances when the job ends.
+public class InstanceStateCache {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(InstanceStateCache.class);
+
+    private static final long BASE_INTERVAL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_EC2_STATE_REFRESH_SECONDS", "5")
+    ) * 1000;
+    private static final long MIN_INTERVAL_MS = 1000;
+    private static final long MAX_INTERVAL_MS = 60_000;
+    private static final long IDLE_EVICTION_MS = 10 * 60 * 1000;
+    private static final Set<String> TRANSITIONAL = Set.of("pending", "stopping", "shutting-down");
+    private static final Set<String> GONE = Set.of("terminated", "not_found");
+
+    public interface StateListener {
+        void onTransition(String instanceId, String previousState, String newState);
+    }
+
+    private static final class Entry {
+        volatile String state;
+        volatile long lastQueried = System.currentTimeMillis();
+    }
+
+    private final EC2Operations ec2;
+    private final Map<String, Entry> tracked = new ConcurrentHashMap<>();
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final Object refreshLock = new Object();
+    private ScheduledExecutorService scheduler = null;
+    private long intervalMs = BASE_INTERVAL_MS;
+
+    public InstanceStateCache(EC2Operations ec2) {
+        this.ec2 = ec2;
+    }
+
+    // Cached state; an instance seen for the first time is fetched right away (in a batch with the rest)
+    public String getState(String instanceId) throws ISchedulerException {
+        Entry entry = tracked.get(instanceId);
+        if (entry == null || entry.state == null) {
+            // Kept from before the refresh, which drops the entry if the instance is terminated
+            entry = tracked.computeIfAbsent(instanceId, id -> new Entry());
+            ensureScheduler();
+            refresh();
+        }
+        entry.lastQueried = System.currentTimeMillis();
+        return entry.state != null ? entry.state : "not_found";
+    }
+
+    public void track(String instanceId) {
+        tracked.computeIfAbsent(instanceId, id -> new Entry());
+        ensureScheduler();
+    }
+
+    public void untrack(String instanceId) {
+        if (instanceId != null) tracked.remove(instanceId);
+    }
+
+    public void addListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int trackedCount() {
+        return tracked.size();
+    }
+
+    private void refresh() throws ISchedulerException {
+        synchronized (refreshLock) {
+            if (tracked.isEmpty()) return;
+            Map<String, String> states = ec2.describeInstanceStates(tracked.keySet());
+            long now = System.currentTimeMillis();
+            boolean changing = false;
+            for (var e : tracked.entrySet()) {
+                String id = e.getKey();
+                Entry entry = e.getValue();
+                String previous = entry.state;
+                String current = states.getOrDefault(id, "not_found");
+                entry.state = current;
+                if (previous != null && !previous.equals(current)) {
+                    notifyListeners(id, previous, current);
+                }
+                if (TRANSITIONAL.contains(current)) changing = true;
+                // A fresh launch may still be not_found, so that one waits for the idle eviction
+                boolean idle = now - entry.lastQueried > IDLE_EVICTION_MS;
+                if (current.equals("terminated") || idle && (listeners.isEmpty() || GONE.contains(current))) {
+                    tracked.remove(id, entry);
+                }
+            }
+            intervalMs = changing ? Math.max(MIN_INTERVAL_MS, BASE_INTERVAL_MS / 5)
+                    : Math.min(MAX_INTERVAL_MS, Math.max(BASE_INTERVAL_MS, intervalMs + BASE_INTERVAL_MS));
+        }
+    }
+
+    private void notifyListeners(String id, String previous, String current) {
+        LOGGER.debug("Instance {} changed state: {} -> {}", id, previous, current);
+        for (StateListener listener : listeners) {
+            try {
+                listener.onTransition(id, previous, current);
+            } catch (Exception e) {
+                LOGGER.warn("Instance state listener failed", e);
+            }
+        }
+    }
+
+    private void backgroundRefresh() {
+        try {
+            refresh();
+        } catch (ISchedulerException e) {
+            if (e.getCause() instanceof Ec2Exception ec2e && ec2e.awsErrorDetails() != null
+                    && "RequestLimitExceeded".equals(ec2e.awsErrorDetails().errorCode())) {
+                synchronized (refreshLock) {
+                    intervalMs = Math.min(MAX_INTERVAL_MS, intervalMs * 2);
+                }
+                LOGGER.warn("EC2 throttled state refresh, next in {} ms", intervalMs);
+            } else {
+                LOGGER.debug("Instance state refresh failed", e);
+            }
+        } finally {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void ensureScheduler() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-ec2-state");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNext();
+    }
+
+    private synchronized void scheduleNext() {
+        if (tracked.isEmpty()) {
+            scheduler.shutdown();
+            scheduler = null;
+            return;
+        }
+        long delay;
+        synchronized (refreshLock) {
+            delay = intervalMs;
+        }
+        scheduler.schedule(this::backgroundRefresh, delay, TimeUnit.MILLISECONDS);
+    }
+}
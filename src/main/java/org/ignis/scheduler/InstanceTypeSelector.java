@@ -0,0 +1,164 @@
+package org.ignis.scheduler;
+
+import org.ignis.scheduler.model.IClusterRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+// Picks instance types from an InstanceCatalog: every type that fits the request, best first, so the
+// caller can fall back down the list. No AWS calls in here; it works the same on a fixture.
+//   cost:    cheapest first
+//   speed:   fastest sustained CPU (no burstable), then local NVMe, among the types costing at most
+//            IGNIS_INSTANCE_COST_SLACK times the cheapest fit
+//   network: highest baseline bandwidth, same cost limit
+public class InstanceTypeSelector {
+
+    public enum Objective { COST, SPEED, NETWORK }
+
+    public record Requirements(int cpus, long memoryMiB, int gpus, String gpuName, long nvmeGb) {
+
+        public static Requirements of(IClusterRequest request, long nvmeGb) {
+            int cpus = Math.max(1, request.resources().cpus());
+            long memoryMiB = request.resources().memory() / (1024L * 1024L);
+            String gpu = request.resources().gpu();
+            return new Requirements(cpus, memoryMiB, parseGpuCount(gpu), parseGpuName(gpu), nvmeGb);
+        }
+
+        @Override
+        public String toString() {
+            return cpus + " cpus/" + memoryMiB + " MiB" + (gpus > 0 ? "/" + gpus + " " +
+                    (gpuName != null ? gpuName : "gpu") : "") + (nvmeGb > 0 ? "/" + nvmeGb + " GB nvme" : "");
+        }
+    }
+
+    // gpu as Ignis passes it: "", "0", "2", "nvidia", "nvidia:2", "nvidia.com/gpu=2", "a10g:4"
+    private static final Pattern GPU = Pattern.compile("^\\s*([A-Za-z][\\w.\\-/]*?)?\\s*[:=]?\\s*(\\d+)?\\s*$");
+    private static final Set<String> NO_GPU = Set.of("", "0", "false", "none", "no");
+
+    private final Objective objective;
+    private final Set<String> architectures;
+    private final List<String> families;
+    private final boolean burstable;
+    private final double costSlack;
+    private final Double maxPrice;
+
+    public InstanceTypeSelector(Objective objective, Set<String> architectures, List<String> families,
+                                boolean burstable, double costSlack, Double maxPrice) {
+        this.objective = objective;
+        this.architectures = architectures;
+        this.families = families;
+        this.burstable = burstable;
+        this.costSlack = Math.max(1.0, costSlack);
+        this.maxPrice = maxPrice;
+    }
+
+    public static InstanceTypeSelector fromEnv() {
+        Objective objective = Objective.valueOf(System.getenv()
+                .getOrDefault("IGNIS_INSTANCE_OBJECTIVE", "cost").trim().toUpperCase(Locale.ROOT)); // Default: cost
+        // The AMIs are x86_64; arm64 (or any) needs IGNIS_AMI and the job images built for it
+        Set<String> archs = csv(System.getenv().getOrDefault("IGNIS_INSTANCE_ARCH", "x86_64")) // Default: x86_64
+                .stream().collect(Collectors.toSet());
+        List<String> families = csv(System.getenv().getOrDefault("IGNIS_INSTANCE_FAMILIES", "")); // Default: any
+        boolean burstable = Boolean.parseBoolean(System.getenv()
+                .getOrDefault("IGNIS_INSTANCE_BURSTABLE", "true")); // Default: true
+        double slack = Double.parseDouble(System.getenv()
+                .getOrDefault("IGNIS_INSTANCE_COST_SLACK", "2.0")); // Default: 2.0
+        String max = System.getenv("IGNIS_INSTANCE_MAX_PRICE");
+        return new InstanceTypeSelector(objective, archs, families, burstable, slack,
+                max == null || max.isBlank() ? null : Double.parseDouble(max.trim()));
+    }
+
+    public Objective objective() {
+        return objective;
+    }
+
+    public List<InstanceCatalog.Entry> rank(InstanceCatalog catalog, Requirements req) {
+        List<InstanceCatalog.Entry> fits = new ArrayList<>();
+        for (InstanceCatalog.Entry e : catalog.entries()) {
+            if (fits(e, req) && (maxPrice == null || cost(e) <= maxPrice)) fits.add(e);
+        }
+        if (fits.isEmpty()) return fits;
+
+        // Ties go to the least oversized type, then by name so the choice is stable
+        Comparator<InstanceCatalog.Entry> byCost = Comparator.comparingDouble(InstanceTypeSelector::cost)
+                .thenComparingInt(InstanceCatalog.Entry::vcpus)
+                .thenComparingLong(InstanceCatalog.Entry::memoryMiB)
+                .thenComparing(InstanceCatalog.Entry::type);
+        if (objective == Objective.COST) {
+            fits.sort(byCost);
+            return fits;
+        }
+
+        double budget = fits.stream().mapToDouble(InstanceTypeSelector::cost).min().orElseThrow() * costSlack;
+        fits.removeIf(e -> cost(e) > budget);
+        Comparator<InstanceCatalog.Entry> order = switch (objective) {
+            case SPEED -> Comparator.comparing(InstanceCatalog.Entry::burstable)
+                    .thenComparing(Comparator.comparingDouble(InstanceTypeSelector::clock).reversed())
+                    .thenComparing(Comparator.comparingLong(InstanceCatalog.Entry::nvmeGb).reversed());
+            case NETWORK -> Comparator.comparingDouble(InstanceCatalog.Entry::networkGbps).reversed();
+            case COST -> throw new IllegalStateException();
+        };
+        fits.sort(order.thenComparing(byCost));
+        return fits;
+    }
+
+    private boolean fits(InstanceCatalog.Entry e, Requirements req) {
+        if (e.vcpus() < req.cpus() || e.memoryMiB() < req.memoryMiB() || e.nvmeGb() < req.nvmeGb()) return false;
+        if (e.gpus() < req.gpus()) return false;
+        if (req.gpus() == 0 && e.gpus() > 0) return false; // Never pay for an idle GPU
+        if (req.gpuName() != null && !matchesGpu(e, req.gpuName())) return false;
+        if (e.burstable() && !burstable) return false;
+        if (!architectures.contains("any") && e.architectures().stream().noneMatch(architectures::contains)) return false;
+        if (!families.isEmpty()) {
+            String family = e.type().substring(0, Math.max(0, e.type().indexOf('.')));
+            if (!families.contains(family)) return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesGpu(InstanceCatalog.Entry e, String name) {
+        return (e.gpuManufacturer() != null && e.gpuManufacturer().toLowerCase(Locale.ROOT).contains(name)) ||
+                (e.gpuName() != null && e.gpuName().toLowerCase(Locale.ROOT).contains(name));
+    }
+
+    // Price table first; otherwise a linear fit of on-demand Linux prices (m6i/c6i/r6i/g4dn, us-east-1),
+    // good enough to order types, not to budget with. Graviton runs about 20% cheaper.
+    static double cost(InstanceCatalog.Entry e) {
+        if (e.price() != null) return e.price();
+        double estimate = 0.037 * e.vcpus() + 0.00275 * (e.memoryMiB() / 1024.0) + 0.35 * e.gpus();
+        if (e.burstable()) estimate *= 0.85;
+        if (!e.architectures().contains("x86_64")) estimate *= 0.8;
+        return estimate;
+    }
+
+    private static double clock(InstanceCatalog.Entry e) {
+        return e.clockGhz() != null ? e.clockGhz() : 0;
+    }
+
+    static int parseGpuCount(String gpu) {
+        if (gpu == null || NO_GPU.contains(gpu.trim().toLowerCase(Locale.ROOT))) return 0;
+        Matcher m = GPU.matcher(gpu);
+        if (!m.matches()) return 1;
+        return m.group(2) != null ? Integer.parseInt(m.group(2)) : 1;
+    }
+
+    // "nvidia.com/gpu" only says nvidia
+    static String parseGpuName(String gpu) {
+        if (parseGpuCount(gpu) == 0) return null;
+        Matcher m = GPU.matcher(gpu);
+        if (!m.matches() || m.group(1) == null) return null;
+        String name = m.group(1).split("[./]")[0].toLowerCase(Locale.ROOT);
+        return name.isEmpty() || name.equals("gpu") || name.equals("any") || name.equals("all") ? null : name;
+    }
+
+    private static List<String> csv(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+}
@@ -0,0 +1,47 @@
+package org.ignis.scheduler;
+
+import java.util.List;
+import java.util.Locale;
+
+// Where the objects of a job live in the bucket (IGNIS_S3_KEY_LAYOUT):
+//   flat:   jobs/<id>/...
+//   hashed: <hh>/jobs/<id>/...  with hh the first two hex digits of sha256(<id>)
+// S3 scales request rates per key prefix. Flat puts every job (and every status.json poll) under
+// jobs/; hashed spreads them over 256 prefixes. Reads of an unknown job try both layouts, so jobs
+// written under the other one stay readable. The instances get the same layout through
+// IGNIS_S3_KEY_LAYOUT (driver, agent) or the job root rendered into their scripts.
+public record JobKeyLayout(Kind kind) {
+
+    public enum Kind { FLAT, HASHED }
+
+    public static final String ENV = "IGNIS_S3_KEY_LAYOUT";
+    private static final String JOBS_PREFIX = "jobs/";
+
+    public static JobKeyLayout fromEnv() {
+        String kind = System.getenv().getOrDefault(ENV, "flat").trim().toUpperCase(Locale.ROOT); // Default: flat
+        return new JobKeyLayout(Kind.valueOf(kind));
+    }
+
+    public String envValue() {
+        return kind.name().toLowerCase(Locale.ROOT);
+    }
+
+    // Prefix of every object of the job, with the trailing slash
+    public String root(String jobId) {
+        return root(kind, jobId);
+    }
+
+    // This layout first, then the other one
+    public List<String> candidates(String jobId) {
+        Kind other = kind == Kind.FLAT ? Kind.HASHED : Kind.FLAT;
+        return List.of(root(kind, jobId), root(other, jobId));
+    }
+
+    private static String root(Kind kind, String jobId) {
+        String id = jobId.trim();
+        return switch (kind) {
+            case FLAT -> JOBS_PREFIX + id + "/";
+            case HASHED -> ContentDigest.sha256(id).substring(0, 2) + "/" + JOBS_PREFIX + id + "/";
+        };
+    }
+}
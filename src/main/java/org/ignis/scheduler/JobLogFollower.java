@@ -0,0 +1,85 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Streams the live log of a running job (jobs/<id>/logs/ chunks) to the console. Only chunks newer
+// than the last one printed are fetched; the poll interval stretches while the job is quiet.
+// close() prints whatever is left, and since the instance uploads the end of its log before
+// status.json, closing once the job is finished shows the complete output.
+public class JobLogFollower implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(JobLogFollower.class);
+
+    private static final long MIN_INTERVAL_MS = 1000;
+    private static final long MAX_INTERVAL_MS = 5000;
+    private static final int CHUNKS_PER_REQUEST = 100;
+
+    private final S3Operations s3;
+    private final String bucket;
+    private final String jobId;
+    private final PrintStream out;
+    private final ScheduledExecutorService poller;
+    private String lastKey = null;
+    private long intervalMs = MIN_INTERVAL_MS;
+    private boolean closed = false;
+
+    public JobLogFollower(S3Operations s3, String bucket, String jobId, PrintStream out) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.jobId = jobId;
+        this.out = out;
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-job-log");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.schedule(this::poll, MIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        synchronized (this) {
+            if (closed) return;
+            try {
+                intervalMs = drain() > 0 ? MIN_INTERVAL_MS : Math.min(MAX_INTERVAL_MS, intervalMs * 2);
+            } catch (ISchedulerException e) {
+                LOGGER.debug("Could not read the log of job {}", jobId, e);
+                intervalMs = MAX_INTERVAL_MS;
+            }
+        }
+        poller.schedule(this::poll, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Prints every chunk not printed yet, returns how many there were
+    private int drain() throws ISchedulerException {
+        int printed = 0;
+        List<S3Operations.LogChunk> chunks;
+        do {
+            chunks = s3.tailJobLog(bucket, jobId, lastKey, CHUNKS_PER_REQUEST);
+            for (S3Operations.LogChunk chunk : chunks) {
+                out.write(chunk.data(), 0, chunk.data().length);
+                lastKey = chunk.key();
+                printed++;
+            }
+            out.flush();
+        } while (chunks.size() == CHUNKS_PER_REQUEST);
+        return printed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        poller.shutdownNow();
+        try {
+            drain();
+        } catch (ISchedulerException e) {
+            LOGGER.warn("Could not read the end of the log of job {}: {}", jobId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Job metadata lookups, in tiers:
+//   in flight  the jobs this scheduler launched and has not finished; never evicted, and every change
+//              is appended to a journal per region so a restarted scheduler gets them back from disk
+//              (Cloud then retires the ones that ended meanwhile and follows the rest again)
+//   cache      finished jobs and the ones read from S3, bounded (IGNIS_JOB_META_CACHE_SIZE, least
+//              recently used out first) and expiring after IGNIS_JOB_META_TTL_SECONDS; jobs S3 does not
+//              know are cached too, for IGNIS_JOB_META_NEGATIVE_TTL_SECONDS (a failed read is not cached)
+//   S3         job-meta.json, the source of truth, read only when both miss
+// The journal is a memory-mapped file of records [length][type][time][payload], P with the JobMeta as
+// JSON or R with the id of a job that is no longer in flight. The length goes in last, so a record cut
+// by a crash ends the replay. It is rewritten with only the jobs still in flight when it fills up and
+// on every start. A second scheduler on the same region runs without it (the file is locked).
+public class JobMetaStore {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(JobMetaStore.class);
+
+    private static final Path JOURNAL_DIR = Path.of(System.getenv().getOrDefault("IGNIS_JOB_META_DIR",
+            System.getProperty("user.home") + "/.ignis/job-meta")); // Default: ~/.ignis/job-meta
+    private static final int CACHE_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_JOB_META_CACHE_SIZE", "1024") // Default: 1024 jobs
+    );
+    private static final long TTL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_JOB_META_TTL_SECONDS", "600") // Default: 10 mins
+    ) * 1000;
+    private static final long NEGATIVE_TTL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_JOB_META_NEGATIVE_TTL_SECONDS", "30") // Default: 30 s
+    ) * 1000;
+    // Jobs left in flight by an earlier process are dropped from the journal after this long
+    private static final long RETENTION_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_JOB_META_RETENTION_HOURS", "24") // Default: 24 h
+    ) * 3600 * 1000;
+
+    private static final int INITIAL_SIZE = 1 << 20;
+    private static final int HEADER = Integer.BYTES + 1 + Long.BYTES;
+    private static final byte PUT = 'P';
+    private static final byte REMOVE = 'R';
+
+    // meta null: the job does not exist
+    private record Cached(JobMeta meta, long expiresAt) { }
+
+    // Reads job-meta.json from S3: null if the job is not there, an exception if S3 could not tell
+    public interface Loader {
+        JobMeta load(String jobId) throws ISchedulerException;
+    }
+
+    private final Loader loader;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, JobMeta> inFlight = new HashMap<>();
+    // With the time each job was put, to drop the ones an earlier process never finished
+    private final Map<String, Long> putAt = new HashMap<>();
+    private final Map<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final Path journal;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int position;
+
+    public JobMetaStore(String region, Loader loader) {
+        this.loader = loader;
+        this.journal = JOURNAL_DIR.resolve(region + ".journal");
+        openJournal();
+    }
+
+    // In memory or in S3; null if neither has it
+    public JobMeta get(String jobId) throws ISchedulerException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            JobMeta meta = inFlight.get(jobId);
+            if (meta != null) return meta;
+            Cached cached = cache.get(jobId);
+            if (cached != null) {
+                if (cached.expiresAt() > now) return cached.meta();
+                cache.remove(jobId);
+            }
+        }
+        // Outside the lock: a cold miss does not hold up the lookups that hit
+        JobMeta meta = loader.load(jobId);
+        synchronized (this) {
+            JobMeta launched = inFlight.get(jobId);
+            if (launched != null) return launched; // Put while S3 was answering
+            cache.put(jobId, new Cached(meta, now + (meta != null ? TTL_MS : NEGATIVE_TTL_MS)));
+        }
+        return meta;
+    }
+
+    // Right after construction, the jobs recovered from the journal
+    public synchronized List<JobMeta> inFlight() {
+        return List.copyOf(inFlight.values());
+    }
+
+    public synchronized boolean isInFlight(String jobId) {
+        return inFlight.containsKey(jobId);
+    }
+
+    public synchronized void put(JobMeta meta) {
+        cache.remove(meta.jobId());
+        inFlight.put(meta.jobId(), meta);
+        putAt.put(meta.jobId(), System.currentTimeMillis());
+        append(PUT, meta);
+    }
+
+    // Only if the job is still in flight with the expected meta
+    public synchronized boolean replace(String jobId, JobMeta expected, JobMeta next) {
+        if (!expected.equals(inFlight.get(jobId))) return false;
+        put(next);
+        return true;
+    }
+
+    // Finished: stays around as a cached entry
+    public synchronized void retire(String jobId) {
+        JobMeta meta = inFlight.remove(jobId);
+        if (meta == null) return;
+        putAt.remove(jobId);
+        cache.put(jobId, new Cached(meta, System.currentTimeMillis() + TTL_MS));
+        append(REMOVE, jobId);
+    }
+
+    // Cancelled or never started
+    public synchronized void remove(String jobId) {
+        cache.remove(jobId);
+        if (inFlight.remove(jobId) != null) {
+            putAt.remove(jobId);
+            append(REMOVE, jobId);
+        }
+    }
+
+    private void openJournal() {
+        try {
+            Files.createDirectories(journal.getParent());
+            channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                LOGGER.warn("Job meta journal {} is in use by another process, keeping job metadata in memory only", journal);
+                closeJournal();
+                return;
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), INITIAL_SIZE));
+            replay();
+            compact(map.capacity()); // Also whatever a record cut by a crash left past the last one
+            if (!inFlight.isEmpty()) {
+                LOGGER.info("Recovered {} jobs in flight from the job meta journal", inFlight.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not open the job meta journal {}, keeping job metadata in memory only", journal, e);
+            closeJournal();
+        }
+    }
+
+    private void replay() throws IOException {
+        long oldest = System.currentTimeMillis() - RETENTION_MS;
+        position = 0;
+        while (position + HEADER <= map.capacity()) {
+            int length = map.getInt(position);
+            if (length <= 0 || position + HEADER + length > map.capacity()) break;
+            byte type = map.get(position + Integer.BYTES);
+            long time = map.getLong(position + Integer.BYTES + 1);
+            byte[] payload = new byte[length];
+            map.get(position + HEADER, payload);
+            position += HEADER + length;
+
+            if (type == PUT) {
+                JobMeta meta = mapper.readValue(payload, JobMeta.class);
+                if (time < oldest) {
+                    inFlight.remove(meta.jobId());
+                    putAt.remove(meta.jobId());
+                } else {
+                    inFlight.put(meta.jobId(), meta);
+                    putAt.put(meta.jobId(), time);
+                }
+            } else if (type == REMOVE) {
+                String jobId = new String(payload, StandardCharsets.UTF_8);
+                inFlight.remove(jobId);
+                putAt.remove(jobId);
+            }
+        }
+    }
+
+    private void append(byte type, Object value) {
+        if (map == null) return;
+        try {
+            byte[] payload = type == PUT ? mapper.writeValueAsBytes(value)
+                    : ((String) value).getBytes(StandardCharsets.UTF_8);
+            if (position + HEADER + payload.length + Integer.BYTES > map.capacity()) compact(position);
+            write(type, System.currentTimeMillis(), payload);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not write to the job meta journal {}, keeping job metadata in memory only", journal, e);
+            closeJournal();
+        }
+    }
+
+    // Past the last record there is always room for a zero length, which ends the replay
+    private void write(byte type, long time, byte[] payload) throws IOException {
+        int size = HEADER + payload.length;
+        if (position + size + Integer.BYTES > map.capacity()) {
+            long capacity = Math.max(2L * map.capacity(), position + size + Integer.BYTES);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        map.put(position + Integer.BYTES, type);
+        map.putLong(position + Integer.BYTES + 1, time);
+        map.put(position + HEADER, payload);
+        map.putInt(position, payload.length);
+        position += size;
+    }
+
+    // Only the jobs in flight are kept. The old records are zeroed first: a crash half way loses the
+    // journal (S3 still has the jobs) but never replays a stale record
+    private void compact(int end) throws IOException {
+        byte[] zeros = new byte[Math.min(end, 64 * 1024)];
+        for (int offset = 0; offset < end; offset += zeros.length) {
+            map.put(offset, zeros, 0, Math.min(zeros.length, end - offset));
+        }
+        position = 0;
+        for (JobMeta meta : inFlight.values()) {
+            write(PUT, putAt.getOrDefault(meta.jobId(), System.currentTimeMillis()), mapper.writeValueAsBytes(meta));
+        }
+    }
+
+    private void closeJournal() {
+        map = null;
+        try {
+            if (channel != null) channel.close(); // Releases the lock too
+        } catch (IOException e) {
+            LOGGER.debug("Could not close the job meta journal {}", journal, e);
+        }
+        channel = null;
+    }
+}
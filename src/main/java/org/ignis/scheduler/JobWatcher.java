@@ -0,0 +1,196 @@
+package org.ignis.scheduler;
+
+import org.ignis.scheduler.model.IContainerInfo;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// Follows every in-flight job from a single thread and completes a future when the job reaches a
+// terminal state (or its deadline). The thread only exists while there are jobs to watch, so an
+// idle scheduler doesn't keep the JVM alive but a busy one finishes its jobs before exiting.
+//
+// Each job is polled on its own schedule: status.json is fetched with If-None-Match, so an unchanged
+// object costs a 304 and no parsing, and the interval doubles (with jitter) up to a ceiling that
+// grows with the job's age. That ceiling is what a finished job waits to be noticed, so it stays at a
+// couple of seconds; the instance state cache backs off much further and is only the fallback (a
+// state change of the job's instance, e.g. the shutdown after the final status, makes it due at once).
+public class JobWatcher {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(JobWatcher.class);
+
+    private static final long TICK_MS = 200;
+    private static final long MIN_INTERVAL_MS = 1000;
+    private static final long MAX_INTERVAL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_STATUS_POLL_MAX_SECONDS", "2") // Default: 2 s
+    ) * 1000;
+    // Ceiling = job age / AGE_DIVISOR, so polling overhead stays a small fraction of the runtime
+    private static final long AGE_DIVISOR = 60;
+    private static final int POLL_THREADS = 8;
+    private static final Set<String> INSTANCE_GONE = Set.of("shutting-down", "terminated", "not_found");
+
+    private final S3Operations s3;
+    private final Function<String, IContainerInfo.IStatus> statusParser;
+    private final InstanceStateCache instanceStates;
+    private final InstanceStateCache.StateListener instanceListener = this::onInstanceTransition;
+    private final Map<String, WatchedJob> watched = new ConcurrentHashMap<>();
+    // Non-daemon so results finish downloading before the JVM exits; idle threads go away quickly
+    private final ExecutorService completions = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), r -> new Thread(r, "ignis-job-completion"));
+    private ScheduledExecutorService scheduler = null;
+    private ExecutorService pollers = null;
+
+    private static final class WatchedJob {
+        final JobMeta meta;
+        final long startedAt = System.currentTimeMillis();
+        final long deadline;
+        final CompletableFuture<IContainerInfo.IStatus> future = new CompletableFuture<>();
+        volatile String etag = null;
+        volatile long interval = MIN_INTERVAL_MS;
+        volatile long nextPollAt = 0;
+        volatile boolean polling = false;
+        volatile boolean instanceGone = false;
+
+        WatchedJob(JobMeta meta, long timeoutMs) {
+            this.meta = meta;
+            this.deadline = startedAt + timeoutMs;
+        }
+    }
+
+    public JobWatcher(S3Operations s3, Function<String, IContainerInfo.IStatus> statusParser, InstanceStateCache instanceStates) {
+        this.s3 = s3;
+        this.statusParser = statusParser;
+        this.instanceStates = instanceStates;
+    }
+
+    public synchronized CompletableFuture<IContainerInfo.IStatus> watch(JobMeta meta, long timeoutMs) {
+        WatchedJob job = watched.computeIfAbsent(meta.jobId(), id -> new WatchedJob(meta, timeoutMs));
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ignis-job-watcher"));
+            pollers = Executors.newFixedThreadPool(POLL_THREADS, r -> {
+                Thread t = new Thread(r, "ignis-job-poll");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleWithFixedDelay(this::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+            instanceStates.addListener(instanceListener);
+        }
+        if (meta.instanceId() != null) {
+            instanceStates.track(meta.instanceId());
+        }
+        LOGGER.debug("Watching job {} ({} in flight)", meta.jobId(), watched.size());
+        return job.future;
+    }
+
+    // Stops following the job; its future completes with a CancellationException
+    public boolean unwatch(String jobId) {
+        WatchedJob job = watched.remove(jobId);
+        if (job == null) return false;
+        job.future.cancel(false);
+        stopIfIdle();
+        return true;
+    }
+
+    public int inFlight() {
+        return watched.size();
+    }
+
+    // Completion callbacks (downloads, cleanup) run here instead of on the watcher thread
+    public Executor completionExecutor() {
+        return completions;
+    }
+
+    // The watcher thread only decides who is due; the S3 requests run on a small poller pool
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (WatchedJob job : watched.values()) {
+            if (now > job.deadline) {
+                complete(job, null, new TimeoutException("Job " + job.meta.jobId() + " did not finish in time"));
+            } else if (!job.polling && now >= job.nextPollAt) {
+                // Read under the lock: unwatch() may stop the pools while this tick is running
+                ExecutorService pool = currentPollers();
+                if (pool == null) break;
+                job.polling = true;
+                try {
+                    pool.execute(() -> poll(job));
+                } catch (RejectedExecutionException e) {
+                    job.polling = false; // A later watch() starts new pools that pick it up
+                    break;
+                }
+            }
+        }
+        stopIfIdle();
+    }
+
+    private synchronized ExecutorService currentPollers() {
+        return pollers;
+    }
+
+    private void poll(WatchedJob job) {
+        boolean changed = false;
+        // Read before the request: a status fetched after the instance went away is its final one
+        boolean instanceGone = job.instanceGone;
+        try {
+            S3Operations.Versioned status = s3.getStringIfNoneMatch(job.meta.bucket(), s3.jobStatusKey(job.meta.jobId()), job.etag);
+            if (status != null && status.content() != null) {
+                changed = true;
+                job.etag = status.etag();
+                IContainerInfo.IStatus parsed = statusParser.apply(status.content());
+                if (isTerminal(parsed)) {
+                    complete(job, parsed, null);
+                }
+            }
+            if (instanceGone && watched.get(job.meta.jobId()) == job) {
+                // The instance uploads its final status.json before shutting down, so it is not coming
+                LOGGER.warn("Instance {} of job {} is gone without reporting a final status", job.meta.instanceId(), job.meta.jobId());
+                complete(job, IContainerInfo.IStatus.ERROR, null);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Status poll failed for job {}", job.meta.jobId(), e);
+        } finally {
+            long now = System.currentTimeMillis();
+            long ceiling = Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, (now - job.startedAt) / AGE_DIVISOR));
+            job.interval = changed ? MIN_INTERVAL_MS : Math.min(ceiling, job.interval * 2);
+            // +-20% so jobs submitted together don't poll in lockstep
+            long jitter = (long) (job.interval * (ThreadLocalRandom.current().nextDouble(0.4) - 0.2));
+            job.nextPollAt = now + job.interval + jitter;
+            job.polling = false;
+        }
+    }
+
+    private void onInstanceTransition(String instanceId, String previousState, String newState) {
+        for (WatchedJob job : watched.values()) {
+            if (instanceId.equals(job.meta.instanceId())) {
+                LOGGER.debug("Instance {} of job {} is now {}, polling status", instanceId, job.meta.jobId(), newState);
+                if (INSTANCE_GONE.contains(newState)) job.instanceGone = true;
+                job.nextPollAt = 0;
+            }
+        }
+    }
+
+    private void complete(WatchedJob job, IContainerInfo.IStatus status, Throwable error) {
+        if (!watched.remove(job.meta.jobId(), job)) return;
+        if (error != null) {
+            job.future.completeExceptionally(error);
+        } else {
+            job.future.complete(status);
+        }
+    }
+
+    private synchronized void stopIfIdle() {
+        if (watched.isEmpty() && scheduler != null) {
+            scheduler.shutdown();
+            pollers.shutdown();
+            scheduler = null;
+            pollers = null;
+            instanceStates.removeListener(instanceListener);
+        }
+    }
+
+    public static boolean isTerminal(IContainerInfo.IStatus status) {
+        return status == IContainerInfo.IStatus.FINISHED
+                || status == IContainerInfo.IStatus.ERROR
+                || status == IContainerInfo.IStatus.DESTROYED;
+    }
+}
@@ -2,5 +2,6 @@ package org.ignis.scheduler;
 
 public record LargeFile(
         String relativePath,
-        String s3Key
+        String s3Key,
+        long size
 ) { }
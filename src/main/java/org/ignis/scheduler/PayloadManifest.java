@@ -0,0 +1,40 @@
+package org.ignis.scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Per-job payload description: which content-addressed blobs make up /ignis/dfs/payload.
+// Tab separated so userdata can read it with plain awk/read (no jq on stock AMIs):
+//   bundle<TAB><key>
+//   file<TAB><key><TAB><size><TAB><path>
+public record PayloadManifest(
+        String bundleKey,
+        List<LargeFile> files
+) {
+    public static final String FILENAME = "payload/manifest.tsv";
+    public static final String CONTENT_TYPE = "text/tab-separated-values";
+
+    public String render() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("bundle\t").append(bundleKey).append('\n');
+        for (LargeFile f : files) {
+            sb.append("file\t").append(f.s3Key()).append('\t').append(f.size()).append('\t')
+                    .append(f.relativePath()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static PayloadManifest parse(String text) {
+        String bundleKey = null;
+        List<LargeFile> files = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals("bundle") && fields.length >= 2) {
+                bundleKey = fields[1];
+            } else if (fields[0].equals("file") && fields.length >= 4) {
+                files.add(new LargeFile(fields[3], fields[1], Long.parseLong(fields[2])));
+            }
+        }
+        return new PayloadManifest(bundleKey, files);
+    }
+}
@@ -0,0 +1,160 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Buffers exactly one part in memory and ships it as a multipart upload part when full.
+// Payloads smaller than one part are sent with a single PutObject on close.
+// Reference: [28]
+public class S3MultipartOutputStream extends OutputStream {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(S3MultipartOutputStream.class);
+
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String key;
+    private final byte[] buffer;
+    private final List<CompletedPart> parts = new ArrayList<>();
+
+    private int position = 0;
+    private long totalBytes = 0;
+    private String uploadId = null;
+    private boolean closed = false;
+    private boolean aborted = false;
+
+    public S3MultipartOutputStream(S3Client s3, String bucket, String key, int partSize) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.key = key;
+        this.buffer = new byte[Math.max(MIN_PART_SIZE, partSize)];
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        totalBytes++;
+        if (position == buffer.length) {
+            flushPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            totalBytes += n;
+            off += n;
+            len -= n;
+            if (position == buffer.length) {
+                flushPart();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (aborted) return;
+
+        try {
+            if (uploadId == null) {
+                s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(),
+                        bufferBody());
+                LOGGER.info("Uploaded to S3: {} ({} bytes)", key, totalBytes);
+                return;
+            }
+            if (position > 0) {
+                flushPart();
+            }
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+            LOGGER.info("Uploaded to S3: {} ({} bytes, {} parts)", key, totalBytes, parts.size());
+        } catch (Exception e) {
+            abort();
+            throw new IOException("Failed to complete upload of s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    // Discards everything written so far; safe to call more than once
+    public void abort() {
+        if (aborted) return;
+        aborted = true;
+        closed = true;
+        if (uploadId == null) return;
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            LOGGER.debug("Aborted multipart upload {} for {}", uploadId, key);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to abort multipart upload {} for {}", uploadId, key, e);
+        }
+    }
+
+    private void flushPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .build()).uploadId();
+                LOGGER.debug("Started multipart upload {} for {}", uploadId, key);
+            }
+            int partNumber = parts.size() + 1;
+            UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength((long) position)
+                            .build(),
+                    bufferBody());
+            parts.add(CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build());
+            position = 0;
+        } catch (Exception e) {
+            abort();
+            throw new IOException("Failed to upload part " + (parts.size() + 1) + " of s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    // Re-readable view over the buffer so SDK retries don't need a copy of the part
+    private RequestBody bufferBody() {
+        int length = position;
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length),
+                length, "application/octet-stream");
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed for " + key);
+        }
+    }
+}
@@ -9,128 +9,168 @@ import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class S3Operations implements Closeable {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(S3Operations.class);
     private final ObjectMapper mapper = new ObjectMapper();
 
-    private static final String JOBS_PREFIX = "jobs/";
-    private static final String DEFAULT_BUNDLE_FILENAME = "bundle.tar.gz";
+    private static final String CAS_PREFIX = "cas/";
+    private static final long PROGRESS_INTERVAL_SECONDS = 5;
+    private static final int PART_SIZE_BYTES = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_S3_PART_SIZE_MB", "8") // Default: 8 MB (S3 minimum is 5 MB)
+    ) * 1024 * 1024;
+    private static final int DELETES_IN_FLIGHT = Math.max(1, Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_S3_DELETES_IN_FLIGHT", "4") // Default: 4 batches of 1000 keys
+    ));
 
     private final S3Client s3;
+    private final S3TransferEngine transfers;
+    private final JobKeyLayout layout = JobKeyLayout.fromEnv();
+    // Jobs found under the other layout (see loadJobMetaFromS3); the rest use this one
+    private final Map<String, String> foundRoots = new ConcurrentHashMap<>();
 
     public S3Operations(S3Client s3) {
         this.s3 = s3;
+        this.transfers = new S3TransferEngine(s3, PART_SIZE_BYTES);
     }
 
-    private String uploadToS3(String bucket, String key, RequestBody body) throws ISchedulerException {
-        try{
-            PutObjectRequest put = PutObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
-                    .build();
-            s3.putObject(put, body);
-            LOGGER.info("Uploaded to S3: {}", key);
-            return key;
-        } catch (Exception e) {
-            throw new ISchedulerException("Failed to upload to S3: " + key, e);
-        }
+    public S3TransferEngine getTransferEngine() {
+        return transfers;
     }
 
-    public String uploadJobBundle(String bucket, String jobId, byte[] bundleData) throws ISchedulerException {
-        validateUploadParams(bucket, jobId, DEFAULT_BUNDLE_FILENAME, bundleData);
-        String key = buildKey(jobId, DEFAULT_BUNDLE_FILENAME);
-        return uploadToS3(bucket, key, RequestBody.fromBytes(bundleData));
+    public JobKeyLayout getKeyLayout() {
+        return layout;
     }
 
-    public String uploadLargeFile(String bucket, String jobId, String relativePath, Path localPath) throws ISchedulerException {
-        if (!Files.exists(localPath) || !Files.isRegularFile(localPath)) {
-            throw new IllegalArgumentException("Large file does not exist: " + localPath);
-        }
-        String key = JOBS_PREFIX + jobId + "/payload/large/" + stripLeadingSlash(relativePath);
-        return uploadToS3(bucket, key, RequestBody.fromFile(localPath));
+    // Prefix of every object of the job, with the trailing slash
+    public String jobRoot(String jobId) {
+        String id = jobId.trim();
+        return foundRoots.getOrDefault(id, layout.root(id));
     }
 
-    private String stripLeadingSlash(String p) {
-        return (p == null || p.isEmpty()) ? "" : p.replaceFirst("^/+", "");
+    public String jobResultsPrefix(String jobId) {
+        return jobRoot(jobId) + "results/";
     }
 
-    private void validateUploadParams(String bucket, String jobId, String filename, byte[] data){
-        if (data == null || data.length == 0) {
-            throw new IllegalArgumentException("Data is empty to upload to S3");
-        }
-        if(filename == null || filename.trim().isEmpty()) {
-            throw new IllegalArgumentException("Filename is empty to upload to S3");
-        }
-        if(bucket == null || bucket.trim().isEmpty()) {
-            throw new IllegalArgumentException("Bucket is empty to upload to S3");
-        }
-        if(jobId == null || jobId.trim().isEmpty()) {
-            throw new IllegalArgumentException("JobId is empty to upload to S3");
-        }
+    // Executor registrations of an EC2 cluster (see Ec2ClusterManager)
+    public String jobClusterPrefix(String jobId, String cluster) {
+        return jobRoot(jobId) + "clusters/" + cluster + "/";
     }
 
-    private String buildKey(String jobId, String fileName){
-        String cleanFileName = fileName.trim().replaceAll("^/+", "").replaceAll("/+$", "");
-        return JOBS_PREFIX + jobId + "/" + cleanFileName;
+    // Content-addressed storage shared by every job in the bucket; per-job payloads only reference it
+    public String bundleBlobKey(String fingerprint) {
+        return CAS_PREFIX + "bundles/" + fingerprint + ".tar.gz";
     }
 
-    // Reference: [41]
-    private List<S3Object> listObjectsInBucket(String bucket, String prefix) throws ISchedulerException {
-        if(bucket == null || bucket.trim().isEmpty()) {
-            throw new IllegalArgumentException("Bucket is empty to list S3 Objects");
-        }
+    public String blobKey(String sha256) {
+        return CAS_PREFIX + "blobs/sha256/" + sha256;
+    }
 
-        String effectivePrefix = (prefix != null) ? prefix.trim() : "";
-        if (effectivePrefix.startsWith("/")) {
-            effectivePrefix = effectivePrefix.substring(1);
+    public S3MultipartOutputStream openUploadStream(String bucket, String key) {
+        if(bucket == null || bucket.trim().isEmpty()) {
+            throw new IllegalArgumentException("Bucket is empty to upload to S3");
         }
-        if (effectivePrefix.endsWith("/")) {
-            effectivePrefix = effectivePrefix.substring(0, effectivePrefix.length() - 1);
+        if(key == null || key.trim().isEmpty()) {
+            throw new IllegalArgumentException("Key is empty to upload to S3");
         }
+        return new S3MultipartOutputStream(s3, bucket, key, PART_SIZE_BYTES);
+    }
 
-        try{
-        String nextContinuationToken = null;
-        List<S3Object> contents = new ArrayList<>();
+    // Uploads the file as a content-addressed blob unless an identical one is already stored
+    public String uploadLargeFile(String bucket, Path localPath, String sha256) throws ISchedulerException {
+        return await(uploadLargeFileAsync(bucket, localPath, sha256, null), "Failed to upload large file " + localPath);
+    }
 
-            do{
-                ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
-                        .bucket(bucket)
-                        .prefix(effectivePrefix);
+    // Hashing, the existence check and the multipart upload all run on the transfer engine, so callers
+    // can start many files and join them later. Completing cancel stops the upload; the returned future
+    // completes once nothing of it is running any more.
+    public CompletableFuture<String> uploadLargeFileAsync(String bucket, Path localPath, String sha256, CompletableFuture<?> cancel) {
+        if (!Files.exists(localPath) || !Files.isRegularFile(localPath)) {
+            throw new IllegalArgumentException("Large file does not exist: " + localPath);
+        }
+        // The parts are hashed as the engine will cut them; S3 rejects a part whose bytes don't match
+        // (the file changed after hashing), so the content address never gets other content
+        CompletableFuture<String> result = new CompletableFuture<>();
+        transfers.supplyAsync(() -> {
+            if (cancel != null && cancel.isDone()) throw new CancellationException("Upload of " + localPath + " cancelled");
+            long size = Files.size(localPath);
+            ContentDigest.Parts digest = ContentDigest.sha256Parts(localPath, size, transfers.partSizeFor(size));
+            if (sha256 != null && !sha256.equals(digest.sha256())) {
+                throw new IOException("File changed since it was scanned: " + localPath);
+            }
+            String key = blobKey(digest.sha256());
+            return new StoredBlob(key, size, digest.partChecksums(), objectExists(bucket, key));
+        }).thenCompose(blob -> {
+            if (blob.exists()) {
+                LOGGER.info("Reusing stored blob for {}: {}", localPath.getFileName(), blob.key());
+                return CompletableFuture.completedFuture(blob.key());
+            }
+            return transfers.uploadFile(bucket, blob.key(), localPath, blob.size(), blob.partChecksums(), cancel);
+        }).whenComplete((key, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                result.complete(key);
+            }
+        });
+        return result;
+    }
 
-                if(nextContinuationToken != null) {
-                    requestBuilder.continuationToken(nextContinuationToken);
-                }
+    private record StoredBlob(String key, long size, List<String> partChecksums, boolean exists) { }
 
-                ListObjectsV2Response response = s3.listObjectsV2(requestBuilder.build());
+    public static <T> T await(CompletableFuture<T> future, String message) throws ISchedulerException {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ISchedulerException se) throw se;
+            throw new ISchedulerException(message, cause);
+        }
+    }
 
-                for(S3Object s3Object : response.contents()) {
-                    if(!s3Object.key().endsWith("/")) {
-                        contents.add(s3Object);
-                    }
-                }
-                nextContinuationToken = response.nextContinuationToken();
+    public String payloadManifestKey(String jobId) {
+        return buildKey(jobId, PayloadManifest.FILENAME);
+    }
 
-            }while(nextContinuationToken != null);
-            LOGGER.debug("Listing S3 Objects: {}", contents);
+    public String uploadPayloadManifest(String bucket, String jobId, PayloadManifest manifest) throws ISchedulerException {
+        String key = payloadManifestKey(jobId);
+        putString(bucket, key, manifest.render(), PayloadManifest.CONTENT_TYPE);
+        LOGGER.info("Uploaded to S3: {}", key);
+        return key;
+    }
 
-            return contents;
-        }catch (NoSuchBucketException e) {
-            throw new ISchedulerException("Bucket not exists: " + bucket, e);
+    public boolean objectExists(String bucket, String key) throws ISchedulerException {
+        try {
+            s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
         } catch (S3Exception e) {
-            LOGGER.error("Error listing S3 Objects: {}", e.getMessage());
-            throw new ISchedulerException("Error listing S3 Objects: " + e.awsErrorDetails().errorMessage(), e);
+            if (e.statusCode() == 404) return false;
+            throw new ISchedulerException("Failed to check s3://" + bucket + "/" + key, e);
         } catch (Exception e) {
-            LOGGER.error("Unexpected error listing S3 Objects: {}", e.getMessage());
-            throw new ISchedulerException("Unexpected error listing S3 Objects", e);
+            throw new ISchedulerException("Failed to check s3://" + bucket + "/" + key, e);
         }
     }
 
+    private String buildKey(String jobId, String fileName){
+        String cleanFileName = fileName.trim().replaceAll("^/+", "").replaceAll("/+$", "");
+        return jobRoot(jobId) + cleanFileName;
+    }
+
     private void validateDownloadParams(String bucket, String prefix, String localDir) throws ISchedulerException {
         if(bucket == null || bucket.trim().isEmpty()) {
             throw new IllegalArgumentException("Bucket is empty to download S3 Objects");
@@ -144,50 +184,78 @@ public class S3Operations implements Closeable {
     }
 
     // Reference: [41]
+    // Objects are handed to the transfer engine as soon as their listing page arrives; a semaphore
+    // keeps the listing at most a bounded number of objects ahead of the downloads.
     private int downloadObjects(String bucket, String prefix, String localDir) throws ISchedulerException {
-       validateDownloadParams(bucket, prefix, localDir);
-       Path basePath = Paths.get(localDir);
-       try{
-           Files.createDirectories(basePath);
-       } catch (IOException e){
-           throw new ISchedulerException("Error creating directory: " + localDir, e);
-       }
-
-       List<S3Object> objects = listObjectsInBucket(bucket, prefix);
-       int succesCount = 0;
-
+        validateDownloadParams(bucket, prefix, localDir);
+        Path basePath = Paths.get(localDir);
         try{
+            Files.createDirectories(basePath);
+        } catch (IOException e){
+            throw new ISchedulerException("Error creating directory: " + localDir, e);
+        }
 
+        Semaphore inFlight = new Semaphore(transfers.getConcurrency() * 2);
+        List<CompletableFuture<Long>> downloads = new ArrayList<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
 
-        for(S3Object s3Object : objects) {
-               String key =  s3Object.key();
-
-           String relativePath = key.substring(prefix.length());
-           if(relativePath.isEmpty()) continue;
-
-           Path targetPath = basePath.resolve(relativePath);
-
-           try{
-               Files.createDirectories(targetPath.getParent());
+        try (TransferProgress progress = new TransferProgress("Downloading results", PROGRESS_INTERVAL_SECONDS)) {
+            try {
+                var pages = s3.listObjectsV2Paginator(ListObjectsV2Request.builder()
+                        .bucket(bucket)
+                        .prefix(prefix)
+                        .build());
 
-               GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                       .bucket(bucket)
-                       .key(key)
-                       .build();
+                for (S3Object s3Object : pages.contents()) {
+                    if (failure.get() != null) break;
 
-               s3.getObject(getObjectRequest, targetPath);
-               LOGGER.info("Downloaded S3 Object: {}", targetPath);
-               succesCount++;
+                    String key = s3Object.key();
+                    if (key.endsWith("/")) continue;
+                    String relativePath = key.substring(prefix.length());
+                    if (relativePath.isEmpty()) continue;
 
-           } catch (Exception e){
-               throw new ISchedulerException("Error downloading", e);
-           }
-        }
-       } catch(Exception e){
-            throw new ISchedulerException("Error downloading S3 Objects", e);
+                    Path targetPath = basePath.resolve(relativePath).normalize();
+                    if (!targetPath.startsWith(basePath.normalize())) {
+                        throw new ISchedulerException("Refusing to download outside " + localDir + ": " + key);
+                    }
+                    Files.createDirectories(targetPath.getParent());
+
+                    progress.discovered(s3Object.size());
+                    inFlight.acquire();
+                    CompletableFuture<Long> download = transfers.downloadObject(bucket, key, s3Object.size(), targetPath, progress)
+                            .whenComplete((bytes, error) -> {
+                                inFlight.release();
+                                if (error != null) {
+                                    failure.compareAndSet(null, error);
+                                } else {
+                                    LOGGER.debug("Downloaded S3 Object: {}", targetPath);
+                                }
+                            });
+                    downloads.add(download);
+                }
+                progress.listingFinished();
+
+                // The first failure stops the downloads still queued or running
+                S3TransferEngine.allOrFirstFailure(downloads).exceptionally(e -> null).join();
+            } catch (NoSuchBucketException e) {
+                throw new ISchedulerException("Bucket not exists: " + bucket, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                downloads.forEach(d -> d.cancel(true));
+                throw new ISchedulerException("Interrupted downloading S3 Objects", e);
+            } catch (ISchedulerException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new ISchedulerException("Error downloading S3 Objects", e);
+            }
+
+            if (failure.get() != null) {
+                Throwable cause = failure.get() instanceof CompletionException ce && ce.getCause() != null ? ce.getCause() : failure.get();
+                throw new ISchedulerException("Error downloading S3 Objects", cause);
+            }
+            LOGGER.info(progress.summary());
+            return progress.getCompletedObjects();
         }
-       LOGGER.debug("Download S3 Objects: {}", objects);
-       return succesCount;
     }
 
     public void downloadJob(String jobId, String bucket) throws ISchedulerException {
@@ -195,7 +263,7 @@ public class S3Operations implements Closeable {
             throw new IllegalArgumentException("jobId should not be empty");
         }
 
-        String prefix = "jobs/" + jobId.trim() + "/results/";
+        String prefix = jobResultsPrefix(jobId);
 
         String configuredDir = System.getenv("IGNIS_DOWNLOAD_DIR");
         String localDir;
@@ -234,6 +302,37 @@ public class S3Operations implements Closeable {
         }
     }
 
+    public void putBytes(String bucket, String key, byte[] data) throws ISchedulerException {
+        try{
+            s3.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(), RequestBody.fromBytes(data));
+        }catch (Exception e){
+            throw new ISchedulerException("Failed to write s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    // content is null when the object still matches etag (304); the whole result is null if it doesn't exist
+    public record Versioned(String content, String etag) { }
+
+    public Versioned getStringIfNoneMatch(String bucket, String key, String etag) throws ISchedulerException {
+        try{
+            GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(key);
+            if (etag != null) request.ifNoneMatch(etag);
+            ResponseBytes<GetObjectResponse> bytes = s3.getObjectAsBytes(request.build());
+            return new Versioned(bytes.asUtf8String(), bytes.response().eTag());
+        } catch(NoSuchKeyException e) {return null;}
+          catch (S3Exception e) {
+              if (e.statusCode() == 304) return new Versioned(null, etag);
+              if (e.statusCode() == 404) return null;
+              throw new ISchedulerException("Failed to read s3://" + bucket + "/" + key, e);
+          } catch (Exception e) {
+            throw new ISchedulerException("Failed to read s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    public String jobStatusKey(String jobId) {
+        return buildKey(jobId, "status.json");
+    }
+
     public String getString(String bucket, String key) throws ISchedulerException {
         try{
             ResponseBytes<GetObjectResponse> bytes = s3.getObjectAsBytes(
@@ -249,6 +348,15 @@ public class S3Operations implements Closeable {
 
     }
 
+    // Streamed body for consumers that process the object while it downloads
+    public InputStream openObject(String bucket, String key) throws ISchedulerException {
+        try {
+            return s3.getObject(GetObjectRequest.builder().bucket(bucket).key(key).build());
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to read s3://" + bucket + "/" + key, e);
+        }
+    }
+
     public void saveJobMetaToS3(JobMeta meta) throws ISchedulerException {
         try{
             String json = mapper.writeValueAsString(meta);
@@ -258,29 +366,122 @@ public class S3Operations implements Closeable {
         }
     }
 
-    private String jobMetaKey(String jobId){
-        return "jobs/" + jobId + "/job-meta.json";
+    public String jobMetaKey(String jobId){
+        return buildKey(jobId, "job-meta.json");
+    }
+
+    // A job this process didn't write may be under the other layout; once found there, every key of
+    // the job resolves to it. Null only when no layout has it; any other failure is thrown.
+    public JobMeta loadJobMetaFromS3(String jobId, String bucket) throws ISchedulerException {
+        for (String root : layout.candidates(jobId)) {
+            String json = getString(bucket, root + "job-meta.json");
+            if (json == null || json.isBlank()) continue;
+            if (!root.equals(layout.root(jobId))) {
+                LOGGER.info("Job {} found under {}", jobId, root);
+                foundRoots.put(jobId.trim(), root);
+            }
+            try {
+                return mapper.readValue(json, JobMeta.class);
+            } catch (Exception e) {
+                throw new ISchedulerException("Invalid job meta in s3://" + bucket + "/" + root + "job-meta.json", e);
+            }
+        }
+        return null;
     }
 
-    public JobMeta loadJobMetaFromS3(String jobId, String bucket) {
+    public List<String> listKeys(String bucket, String prefix) throws ISchedulerException {
         try {
-            String key = jobMetaKey(jobId);
-            String json = getString(bucket, key);
-            if (json == null || json.isBlank()) return null;
-            return mapper.readValue(json, JobMeta.class);
+            List<String> keys = new ArrayList<>();
+            s3.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build())
+                    .contents().forEach(o -> keys.add(o.key()));
+            return keys;
         } catch (Exception e) {
-            LOGGER.warn("Could not load job meta from S3 for job {}", jobId, e);
-            return null;
+            throw new ISchedulerException("Failed to list s3://" + bucket + "/" + prefix, e);
+        }
+    }
+
+    // The whole log, written once the job ends (the chunks under logs/ are what a follower reads)
+    public String jobOutputKey(String jobId) {
+        return buildKey(jobId, "out.txt");
+    }
+
+    public String jobLogPrefix(String jobId) {
+        return jobRoot(jobId) + "logs/";
+    }
+
+    public String jobLogChunkKey(String jobId, long sequence) {
+        return jobLogPrefix(jobId) + String.format("%08d.log", sequence);
+    }
+
+    // A relaunched job numbers its chunks from here, so they sort after (and never overwrite) the
+    // ones of the interrupted instance, which may still be shipping during its notice period
+    public static long firstLogSequence(int attempt) {
+        return attempt * 1_000_000L;
+    }
+
+    // Whatever an interrupted attempt had written when it got the notice
+    public String jobAttemptResultsPrefix(String jobId, int attempt) {
+        return jobRoot(jobId) + "attempts/" + attempt + "/results/";
+    }
+
+    public String jobHeartbeatKey(String jobId) {
+        return buildKey(jobId, "heartbeat.json");
+    }
+
+    public record LogChunk(String key, byte[] data) { }
+
+    // Live log chunks written after afterKey (null for the first ones), in order, at most maxChunks.
+    // Chunk names are zero-padded sequence numbers and are never rewritten, so StartAfter skips
+    // everything that was already read without listing or downloading it again.
+    public List<LogChunk> tailJobLog(String bucket, String jobId, String afterKey, int maxChunks) throws ISchedulerException {
+        try {
+            ListObjectsV2Request.Builder request = ListObjectsV2Request.builder()
+                    .bucket(bucket)
+                    .prefix(jobLogPrefix(jobId))
+                    .maxKeys(maxChunks);
+            if (afterKey != null) request.startAfter(afterKey);
+
+            List<LogChunk> chunks = new ArrayList<>();
+            for (S3Object object : s3.listObjectsV2(request.build()).contents()) {
+                byte[] data = s3.getObjectAsBytes(GetObjectRequest.builder().bucket(bucket).key(object.key()).build())
+                        .asByteArray();
+                chunks.add(new LogChunk(object.key(), data));
+            }
+            return chunks;
+        } catch (Exception e) {
+            throw new ISchedulerException("Failed to read the log of job " + jobId, e);
         }
     }
 
     public void emptyBucket(String bucket) throws ISchedulerException {
         LOGGER.info("Emptying bucket {}", bucket);
+        deletePrefix(bucket, null);
+        LOGGER.info("Bucket {} emptied successfully", bucket);
+    }
+
+    // Only this job's objects; content-addressed blobs stay for later jobs
+    public void deleteJobPrefix(String bucket, String jobId) throws ISchedulerException {
+        if (jobId == null || jobId.isBlank()) {
+            throw new IllegalArgumentException("jobId should not be empty");
+        }
+        int deleted = deletePrefix(bucket, jobRoot(jobId));
+        LOGGER.info("Deleted {} objects of job {}", deleted, jobId);
+    }
+
+    // Listing goes on while the pages already listed are deleted (one DeleteObjects call per page of
+    // up to 1000 keys), with at most IGNIS_S3_DELETES_IN_FLIGHT calls at once
+    int deletePrefix(String bucket, String prefix) throws ISchedulerException {
+        Semaphore inFlight = new Semaphore(DELETES_IN_FLIGHT);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<Integer>> batches = new ArrayList<>();
         try{
             String continuationToken = null;
             do {
                 ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
                         .bucket(bucket);
+                if (prefix != null) {
+                    requestBuilder.prefix(prefix);
+                }
                 if (continuationToken != null) {
                     requestBuilder.continuationToken(continuationToken);
                 }
@@ -292,25 +493,48 @@ public class S3Operations implements Closeable {
                         .toList();
 
                 if (!objectsToDelete.isEmpty()) {
-                    s3.deleteObjects(DeleteObjectsRequest.builder()
-                            .bucket(bucket)
-                            .delete(Delete.builder().objects(objectsToDelete).build())
-                            .build());
-                    LOGGER.debug("Deleted {} objects from bucket {}", objectsToDelete.size(), bucket);
+                    inFlight.acquire();
+                    CompletableFuture<Integer> batch = transfers.submitWorker(() ->
+                            transfers.withRetries("delete of " + objectsToDelete.size() + " objects", () ->
+                                    deleteBatch(bucket, objectsToDelete)));
+                    batch.whenComplete((n, e) -> {
+                        if (e != null) failure.compareAndSet(null, e);
+                        inFlight.release();
+                    });
+                    batches.add(batch);
                 }
 
                 continuationToken = response.isTruncated() ? response.nextContinuationToken() : null;
 
-            } while (continuationToken != null);
+            } while (continuationToken != null && failure.get() == null);
 
-            LOGGER.info("Bucket {} emptied successfully", bucket);
+            await(CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)), "Failed to delete objects");
+            return batches.stream().mapToInt(CompletableFuture::join).sum();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ISchedulerException("Interrupted while deleting objects from bucket " + bucket, e);
         } catch (Exception e) {
-            throw new ISchedulerException("Failed to empty bucket " + bucket, e);
+            throw new ISchedulerException("Failed to delete objects from bucket " + bucket + (prefix != null ? " under " + prefix : ""), e);
+        }
+    }
+
+    private int deleteBatch(String bucket, List<ObjectIdentifier> objects) throws ISchedulerException {
+        DeleteObjectsResponse response = s3.deleteObjects(DeleteObjectsRequest.builder()
+                .bucket(bucket)
+                .delete(Delete.builder().objects(objects).quiet(true).build())
+                .build());
+        // A batch call succeeds even when single keys fail
+        if (response.hasErrors() && !response.errors().isEmpty()) {
+            S3Error first = response.errors().get(0);
+            throw new ISchedulerException(response.errors().size() + " objects not deleted, e.g. " + first.key() + ": " + first.message());
         }
+        LOGGER.debug("Deleted {} objects from bucket {}", objects.size(), bucket);
+        return objects.size();
     }
 
     @Override
     public void close(){
+        transfers.close();
         s3.close();
     }
 }
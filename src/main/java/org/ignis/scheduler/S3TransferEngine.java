@@ -0,0 +1,406 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Shared transfer pool behind S3Operations. Every file is split into parts (or byte ranges when
+// downloading) that are queued on one global worker pool, so several files transfer at once and the
+// total number of in-flight requests (and part buffers in memory) never exceeds
+// IGNIS_S3_TRANSFER_CONCURRENCY.
+// Reference: [28]
+public class S3TransferEngine implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(S3TransferEngine.class);
+
+    private static final int MAX_PARTS = 10_000;
+
+    private static final int CONCURRENCY = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_S3_TRANSFER_CONCURRENCY",
+                    String.valueOf(Math.min(64, Runtime.getRuntime().availableProcessors() * 4)))
+    );
+    private static final long MAX_BANDWIDTH_BYTES = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_S3_MAX_BANDWIDTH_MBPS", "0") // Default: unlimited
+    ) * 1024 * 1024 / 8;
+    private static final int PART_RETRIES = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_S3_PART_RETRIES", "3")
+    );
+
+    private final S3Client s3;
+    private final int partSize;
+    private final ExecutorService workers;
+    private final ExecutorService coordinator;
+    private final BandwidthLimiter limiter;
+
+    public S3TransferEngine(S3Client s3, int partSize) {
+        this.s3 = s3;
+        this.partSize = Math.max(S3MultipartOutputStream.MIN_PART_SIZE, partSize);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, CONCURRENCY), daemonThreads("ignis-s3-transfer"));
+        this.coordinator = Executors.newCachedThreadPool(daemonThreads("ignis-s3-coordinator"));
+        this.limiter = new BandwidthLimiter(MAX_BANDWIDTH_BYTES);
+        LOGGER.debug("S3 transfer engine: concurrency={}, partSize={}, bandwidth={}",
+                CONCURRENCY, this.partSize, limiter.isUnlimited() ? "unlimited" : MAX_BANDWIDTH_BYTES + " B/s");
+    }
+
+    public int getConcurrency() {
+        return CONCURRENCY;
+    }
+
+    public BandwidthLimiter getLimiter() {
+        return limiter;
+    }
+
+    // Runs blocking work (hashing, HEAD checks) off the part workers so it never starves them
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, coordinator);
+    }
+
+    public <T> CompletableFuture<T> submitWorker(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, workers);
+    }
+
+    // Size of the parts uploadFile cuts a file of this size into (the whole file if it goes in one PUT)
+    public long partSizeFor(long size) {
+        return size <= partSize ? Math.max(size, 1) : Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    public CompletableFuture<String> uploadFile(String bucket, String key, Path file, long size) {
+        return uploadFile(bucket, key, file, size, null, null);
+    }
+
+    // checksums: base64 SHA-256 of every part (ContentDigest.sha256Parts with partSizeFor). S3 checks
+    // each part against its own and the upload fails instead of storing different bytes.
+    // Once cancel completes (or a part fails) queued parts don't start, running ones stop retrying and
+    // the upload is aborted. The returned future completes only when no request of the transfer is
+    // running any more, so a caller that cancels can wait on it for the upload to stop.
+    public CompletableFuture<String> uploadFile(String bucket, String key, Path file, long size, List<String> checksums,
+                                               CompletableFuture<?> cancel) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // Done once the transfer has to stop: the caller cancelled it or a part failed
+        CompletableFuture<Void> stop = new CompletableFuture<>();
+        if (cancel != null) cancel.whenComplete((v, error) -> stop.cancel(false));
+        result.whenComplete((k, error) -> stop.cancel(false)); // Also when the caller cancels the result
+        if (size <= partSize) {
+            submitWorker(() -> withRetries("upload " + key, stop, () -> {
+                limiter.acquire(size);
+                PutObjectRequest.Builder put = PutObjectRequest.builder().bucket(bucket).key(key);
+                if (checksums != null) put.checksumSHA256(checksums.get(0));
+                s3.putObject(put.build(), RequestBody.fromFile(file));
+                return key;
+            })).whenComplete((k, error) -> settle(result, k, error));
+            return result;
+        }
+
+        long effectivePartSize = partSizeFor(size);
+        int partCount = (int) ((size + effectivePartSize - 1) / effectivePartSize);
+        if (checksums != null && checksums.size() != partCount) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    checksums.size() + " checksums for the " + partCount + " parts of " + key));
+        }
+
+        supplyAsync(() -> withRetries("create multipart " + key, stop, () -> {
+            CreateMultipartUploadRequest.Builder create = CreateMultipartUploadRequest.builder().bucket(bucket).key(key);
+            if (checksums != null) create.checksumAlgorithm(ChecksumAlgorithm.SHA256);
+            return s3.createMultipartUpload(create.build()).uploadId();
+        })).whenComplete((uploadId, createError) -> {
+            if (createError != null) {
+                result.completeExceptionally(unwrap(createError));
+                return;
+            }
+            LOGGER.debug("Uploading {} in {} parts of {} bytes ({})", key, partCount, effectivePartSize, uploadId);
+            List<CompletableFuture<CompletedPart>> parts = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * effectivePartSize;
+                long length = Math.min(effectivePartSize, size - offset);
+                String checksum = checksums != null ? checksums.get(i) : null;
+                parts.add(submitWorker(() -> uploadPart(bucket, key, uploadId, partNumber, file, offset, length, checksum, stop)));
+            }
+            allSettled(parts, stop)
+                    .thenApplyAsync(completed -> {
+                        try {
+                            withRetries("complete " + key, stop, () -> s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                                    .bucket(bucket)
+                                    .key(key)
+                                    .uploadId(uploadId)
+                                    .multipartUpload(CompletedMultipartUpload.builder()
+                                            .parts(completed.stream().sorted(Comparator.comparingInt(CompletedPart::partNumber)).toList())
+                                            .build())
+                                    .build()));
+                        } catch (Exception e) {
+                            throw new CompletionException(e);
+                        }
+                        LOGGER.info("Uploaded to S3: {} ({} bytes, {} parts)", key, size, partCount);
+                        return key;
+                    }, coordinator)
+                    .whenCompleteAsync((k, error) -> {
+                        // Every part has stopped by now, so none of them lands after the abort
+                        if (error != null) abort(bucket, key, uploadId);
+                        settle(result, k, error);
+                    }, coordinator);
+        });
+        return result;
+    }
+
+    private CompletedPart uploadPart(String bucket, String key, String uploadId, int partNumber, Path file, long offset,
+                                     long length, String checksum, CompletableFuture<?> transfer) throws Exception {
+        checkCancelled("part " + partNumber + " of " + key, transfer);
+        byte[] data = new byte[(int) length];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("File shrank while uploading: " + file);
+                }
+            }
+        }
+
+        return withRetries("part " + partNumber + " of " + key, transfer, () -> {
+            limiter.acquire(length);
+            UploadPartResponse response = s3.uploadPart(UploadPartRequest.builder()
+                            .bucket(bucket)
+                            .key(key)
+                            .uploadId(uploadId)
+                            .partNumber(partNumber)
+                            .contentLength(length)
+                            .checksumSHA256(checksum)
+                            .build(),
+                    RequestBody.fromBytes(data));
+            return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag())
+                    .checksumSHA256(response.checksumSHA256()).build();
+        });
+    }
+
+    // Objects up to two parts are fetched with one GET; bigger ones are preallocated and filled by
+    // parallel ranged GETs, each writing at its own offset. As with uploads, the returned future is the
+    // cancel flag of the ranges: the first one that fails fails the download and stops the rest, and
+    // the partial file is removed.
+    public CompletableFuture<Long> downloadObject(String bucket, String key, long size, Path target, TransferProgress progress) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        if (size <= 2L * partSize) {
+            submitWorker(() -> withRetries("download " + key, result, () -> {
+                limiter.acquire(size);
+                try (ResponseInputStream<GetObjectResponse> in = s3.getObject(
+                        GetObjectRequest.builder().bucket(bucket).key(key).build());
+                     FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long written = copy(in, out, 0, progress);
+                    progress.objectCompleted();
+                    return written;
+                }
+            })).whenComplete((written, error) -> settle(result, written, error));
+            return result;
+        }
+
+        int rangeCount = (int) ((size + partSize - 1) / partSize);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            // Preallocate so every range can be written in place
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<CompletableFuture<Long>> ranges = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            long start = (long) i * partSize;
+            long end = Math.min(size, start + partSize) - 1;
+            ranges.add(submitWorker(() -> withRetries("range " + start + "-" + end + " of " + key, result, () -> {
+                limiter.acquire(end - start + 1);
+                try (ResponseInputStream<GetObjectResponse> in = s3.getObject(GetObjectRequest.builder()
+                        .bucket(bucket).key(key).range("bytes=" + start + "-" + end).build())) {
+                    return copy(in, channel, start, progress);
+                }
+            })));
+        }
+
+        allOrFirstFailure(ranges).whenComplete((written, error) -> {
+            if (error == null) {
+                closeQuietly(channel, target);
+                progress.objectCompleted();
+                LOGGER.debug("Downloaded {} in {} ranges", key, rangeCount);
+            }
+            settle(result, size, error);
+        });
+        result.whenComplete((written, error) -> {
+            if (error == null) return;
+            ranges.forEach(r -> r.cancel(false));
+            CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new))
+                    .handle((v, e) -> null)
+                    .thenRunAsync(() -> {
+                        closeQuietly(channel, target);
+                        try {
+                            Files.deleteIfExists(target);
+                        } catch (IOException e) {
+                            LOGGER.warn("Failed to remove the partial download {}", target, e);
+                        }
+                    }, coordinator);
+        });
+        return result;
+    }
+
+    // Completes when all of them do, or at the first one that fails, which cancels the rest (so does
+    // cancelling the returned future)
+    public static <T> CompletableFuture<List<T>> allOrFirstFailure(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> all = new CompletableFuture<>();
+        for (CompletableFuture<T> f : futures) {
+            f.whenComplete((v, error) -> {
+                if (error != null) all.completeExceptionally(unwrap(error));
+            });
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).whenComplete((v, error) -> {
+            if (error == null) all.complete(futures.stream().map(CompletableFuture::join).toList());
+        });
+        all.whenComplete((v, error) -> {
+            if (error != null) futures.forEach(f -> f.cancel(false));
+        });
+        return all;
+    }
+
+    // Completes once all of them have, whatever the outcome, so none of them is still running. The first
+    // failure completes stop, which the rest check before each request, and is the one reported.
+    public static <T> CompletableFuture<List<T>> allSettled(List<CompletableFuture<T>> futures, CompletableFuture<?> stop) {
+        for (CompletableFuture<T> f : futures) {
+            f.whenComplete((v, error) -> {
+                if (error != null) stop.completeExceptionally(unwrap(error));
+            });
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).handle((v, error) -> {
+            if (error == null) return futures.stream().map(CompletableFuture::join).toList();
+            stop.completeExceptionally(unwrap(error));
+            throw new CompletionException(stop.handle((x, first) -> unwrap(first)).join());
+        });
+    }
+
+    private static <T> void settle(CompletableFuture<T> result, T value, Throwable error) {
+        if (error != null) {
+            result.completeExceptionally(unwrap(error));
+        } else {
+            result.complete(value);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void closeQuietly(FileChannel channel, Path target) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close {}", target, e);
+        }
+    }
+
+    // A retried range rewrites the same offsets, so only the bytes of the successful attempt count
+    private long copy(InputStream in, FileChannel out, long offset, TransferProgress progress) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        long position = offset;
+        long counted = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                while (bb.hasRemaining()) {
+                    position += out.write(bb, position);
+                }
+                progress.transferred(n);
+                counted += n;
+            }
+            return position - offset;
+        } catch (IOException e) {
+            progress.transferred(-counted);
+            throw e;
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket).key(key).uploadId(uploadId).build());
+            LOGGER.debug("Aborted multipart upload {} for {}", uploadId, key);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to abort multipart upload {} for {}", uploadId, key, e);
+        }
+    }
+
+    public <T> T withRetries(String what, Callable<T> action) throws Exception {
+        return withRetries(what, null, action);
+    }
+
+    // No attempt starts once transfer is done
+    private <T> T withRetries(String what, CompletableFuture<?> transfer, Callable<T> action) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            checkCancelled(what, transfer);
+            try {
+                return action.call();
+            } catch (Exception e) {
+                if (attempt >= PART_RETRIES || !isRetryable(e) || (transfer != null && transfer.isDone())) {
+                    throw e;
+                }
+                long backoff = (long) (200 * Math.pow(2, attempt)) + ThreadLocalRandom.current().nextLong(100);
+                LOGGER.warn("Retrying {} in {} ms (attempt {}/{}): {}", what, backoff, attempt + 1, PART_RETRIES, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    private static void checkCancelled(String what, CompletableFuture<?> transfer) {
+        if (transfer != null && transfer.isDone()) {
+            throw new CancellationException(what + ": transfer already failed or cancelled");
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof S3Exception s3e) {
+            int status = s3e.statusCode();
+            return status >= 500 || status == 429 || status == 408;
+        }
+        return e instanceof SdkClientException || e instanceof IOException;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        coordinator.shutdownNow();
+    }
+}
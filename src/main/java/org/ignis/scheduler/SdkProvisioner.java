@@ -0,0 +1,468 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.*;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Bucket;
+import software.amazon.awssdk.services.s3.model.BucketLocationConstraint;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.PublicAccessBlockConfiguration;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+// The resources of main.tf created straight through the AWS SDK, without the terraform CLI (no
+// provider download, no forks). Everything carries the tag IgnisStack=<IGNIS_STACK_NAME>, and a
+// later run finds the tagged VPC and reuses whatever of the stack is already there, creating only
+// what is missing. The bucket name is kept as the IgnisBucket tag of the VPC, and the bucket carries
+// the stack tag itself, so one created by a run cut short is still found.
+// Independent resources are created at once: the bucket next to the VPC, then the subnets, the
+// security group and the internet gateway; the route table waits for the gateway.
+public class SdkProvisioner implements InfrastructureProvisioner {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(SdkProvisioner.class);
+
+    private static final String STACK = System.getenv().getOrDefault("IGNIS_STACK_NAME", "ignis"); // Default: ignis
+    private static final String STACK_TAG = "IgnisStack";
+    private static final String BUCKET_TAG = "IgnisBucket";
+    private static final String VPC_CIDR = "10.0.0.0/16";
+    private static final String SG_NAME = "ignis-sg";
+    private static final String BUCKET_PREFIX = "ignis-jobs-";
+    // Local registry of the scheduler processes using the stack (StackHolders)
+    private static final Path HOLDERS_DIR = Path.of(System.getenv().getOrDefault("IGNIS_SDK_STACK_DIR",
+            System.getProperty("user.home") + "/.ignis/sdk")); // Default: ~/.ignis/sdk
+    // Instances still terminating keep their network interfaces for a while
+    private static final long DEPENDENCY_WAIT_MS = 5 * 60 * 1000;
+
+    private final Ec2Client ec2;
+    private final S3Client s3;
+    private final String region;
+    private final List<String> azs;
+    private final StackHolders holders;
+    private final Map<String, String> outputs = new HashMap<>();
+    private final Map<String, String> subnets = new LinkedHashMap<>();
+    private String igwId = null;
+    private String routeTableId = null;
+    private final ExecutorService steps = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ignis-provision");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SdkProvisioner(Ec2Client ec2, S3Client s3, String region, List<String> azs) {
+        this.ec2 = ec2;
+        this.s3 = s3;
+        this.region = region;
+        this.azs = List.copyOf(azs);
+        this.holders = new StackHolders(HOLDERS_DIR.resolve(region + "-" + STACK));
+    }
+
+    @Override
+    public synchronized void ensureInfrastructure() throws ISchedulerException {
+        if (Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"))) {
+            LOGGER.info("Cloud runtime mode detected: skipping infrastructure provisioning");
+            return;
+        }
+        if (isProvisioned()) {
+            LOGGER.debug("Infrastructure already provisioned, reusing it");
+            return;
+        }
+        provision();
+    }
+
+    @Override
+    public synchronized boolean isProvisioned() {
+        return !outputs.isEmpty();
+    }
+
+    private void provision() throws ISchedulerException {
+        System.out.println("[ignis-cloud] Provisioning infrastructure...");
+        long started = System.currentTimeMillis();
+        try {
+            holders.lockRegistry();
+            Vpc existing = findVpc();
+            CompletableFuture<String> bucket = async(() -> ensureBucket(existing));
+            String vpcId = existing != null ? existing.vpcId() : createVpc();
+            if (existing != null) LOGGER.info("Reusing VPC {} of stack {}", vpcId, STACK);
+
+            CompletableFuture<Map<String, String>> subnetIds = async(() -> ensureSubnets(vpcId));
+            CompletableFuture<String> sg = async(() -> ensureSecurityGroup(vpcId));
+            CompletableFuture<String> igw = async(() -> ensureInternetGateway(vpcId));
+            CompletableFuture<String> routeTable = igw.thenCompose(gateway -> async(() -> ensureRouteTable(vpcId, gateway)));
+
+            Map<String, String> created = S3Operations.await(subnetIds, "Could not create the subnets");
+            associate(S3Operations.await(routeTable, "Could not create the route table"), created.values());
+            String bucketName = S3Operations.await(bucket, "Could not create the jobs bucket");
+            ec2.createTags(r -> r.resources(vpcId).tags(tag(BUCKET_TAG, bucketName)));
+
+            outputs.put("vpc_id", vpcId);
+            outputs.put("subnet_id", created.get(azs.get(0)));
+            outputs.put("sg_id", S3Operations.await(sg, "Could not create the security group"));
+            outputs.put("jobs_bucket_name", bucketName);
+            subnets.putAll(created);
+            igwId = igw.join();
+            routeTableId = routeTable.join();
+            holders.hold();
+
+            InfrastructureProvisioner.printInfrastructureTable(outputs, subnets);
+            System.out.println("[ignis-cloud] Infrastructure ready.");
+            LOGGER.info("SDK infrastructure ready in {} ms", System.currentTimeMillis() - started);
+        } catch (Ec2Exception | S3Exception e) {
+            // What was created is tagged, so the next attempt picks it up instead of duplicating it
+            clear();
+            throw new ISchedulerException("Failure during SDK provision: " + message(e), e);
+        } catch (ISchedulerException | IOException e) {
+            clear();
+            throw new ISchedulerException("Failure during SDK provision", e);
+        } finally {
+            holders.unlockRegistry();
+        }
+    }
+
+    private Vpc findVpc() {
+        List<Vpc> vpcs = ec2.describeVpcs(r -> r.filters(filter("tag:" + STACK_TAG, STACK))).vpcs();
+        if (vpcs.size() > 1) LOGGER.warn("{} VPCs tagged {}={}, using {}", vpcs.size(), STACK_TAG, STACK, vpcs.get(0).vpcId());
+        return vpcs.isEmpty() ? null : vpcs.get(0);
+    }
+
+    private String createVpc() {
+        String vpcId = ec2.createVpc(r -> r.cidrBlock(VPC_CIDR)
+                .tagSpecifications(tags(ResourceType.VPC, "ignis_vpc"))).vpc().vpcId();
+        ec2.waiter().waitUntilVpcAvailable(r -> r.vpcIds(vpcId));
+        // One attribute per call
+        ec2.modifyVpcAttribute(r -> r.vpcId(vpcId).enableDnsSupport(enabled()));
+        ec2.modifyVpcAttribute(r -> r.vpcId(vpcId).enableDnsHostnames(enabled()));
+        LOGGER.info("Created VPC {}", vpcId);
+        return vpcId;
+    }
+
+    private String ensureBucket(Vpc existing) {
+        String recorded = existing == null ? null : existing.tags().stream()
+                .filter(t -> t.key().equals(BUCKET_TAG)).map(Tag::value).findFirst().orElse(null);
+        String name = recorded != null ? recorded : findTaggedBucket();
+        if (name != null) {
+            try {
+                s3.headBucket(r -> r.bucket(name));
+                LOGGER.info("Reusing bucket {}", name);
+                return name;
+            } catch (NoSuchBucketException e) {
+                LOGGER.info("Bucket {} of stack {} is gone, creating a new one", name, STACK);
+            }
+        }
+        String bucket = BUCKET_PREFIX + randomSuffix();
+        // us-east-1 rejects its own name as a location constraint
+        s3.createBucket(r -> {
+            r.bucket(bucket);
+            if (!region.equals("us-east-1")) {
+                r.createBucketConfiguration(c -> c.locationConstraint(BucketLocationConstraint.fromValue(region)));
+            }
+        });
+        s3.putPublicAccessBlock(r -> r.bucket(bucket).publicAccessBlockConfiguration(PublicAccessBlockConfiguration.builder()
+                .blockPublicAcls(true)
+                .blockPublicPolicy(true)
+                .ignorePublicAcls(true)
+                .restrictPublicBuckets(true)
+                .build()));
+        s3.putBucketTagging(r -> r.bucket(bucket).tagging(t -> t.tagSet(
+                software.amazon.awssdk.services.s3.model.Tag.builder().key("Name").value("ignis-jobs-bucket").build(),
+                software.amazon.awssdk.services.s3.model.Tag.builder().key(STACK_TAG).value(STACK).build())));
+        LOGGER.info("Created bucket {}", bucket);
+        return bucket;
+    }
+
+    // A bucket tagged with the stack but not recorded in the VPC (a provision that failed after creating it)
+    private String findTaggedBucket() {
+        for (Bucket bucket : s3.listBuckets().buckets()) {
+            if (!bucket.name().startsWith(BUCKET_PREFIX)) continue;
+            try {
+                boolean ours = s3.getBucketTagging(r -> r.bucket(bucket.name())).tagSet().stream()
+                        .anyMatch(t -> t.key().equals(STACK_TAG) && t.value().equals(STACK));
+                if (ours) {
+                    LOGGER.info("Found bucket {} of stack {} left by an earlier run", bucket.name(), STACK);
+                    return bucket.name();
+                }
+            } catch (S3Exception e) {
+                // No tags, another region or no access: not one of ours
+                LOGGER.debug("Skipping bucket {}: {}", bucket.name(), message(e));
+            }
+        }
+        return null;
+    }
+
+    // 10.0.<n>.0/24 per AZ like cidrsubnet(vpc, 8, n) in main.tf, n taken from the free ones when the
+    // VPC already has subnets for other zones
+    private Map<String, String> ensureSubnets(String vpcId) throws ISchedulerException {
+        List<Subnet> existing = ec2.describeSubnets(r -> r.filters(filter("vpc-id", vpcId))).subnets();
+        Map<String, String> byAz = new HashMap<>();
+        Set<String> usedCidrs = new HashSet<>();
+        for (Subnet subnet : existing) {
+            byAz.putIfAbsent(subnet.availabilityZone(), subnet.subnetId());
+            usedCidrs.add(subnet.cidrBlock());
+        }
+
+        Map<String, CompletableFuture<String>> pending = new LinkedHashMap<>();
+        int next = 1;
+        for (String az : azs) {
+            if (byAz.containsKey(az)) {
+                pending.put(az, CompletableFuture.completedFuture(byAz.get(az)));
+                continue;
+            }
+            while (usedCidrs.contains("10.0." + next + ".0/24")) next++;
+            String cidr = "10.0." + next++ + ".0/24";
+            pending.put(az, async(() -> createSubnet(vpcId, az, cidr)));
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (var entry : pending.entrySet()) {
+            result.put(entry.getKey(), S3Operations.await(entry.getValue(), "Could not create the subnet in " + entry.getKey()));
+        }
+        return result;
+    }
+
+    private String createSubnet(String vpcId, String az, String cidr) {
+        String subnetId = ec2.createSubnet(r -> r.vpcId(vpcId).cidrBlock(cidr).availabilityZone(az)
+                .tagSpecifications(tags(ResourceType.SUBNET, "ignis_subnet_" + az))).subnet().subnetId();
+        ec2.modifySubnetAttribute(r -> r.subnetId(subnetId).mapPublicIpOnLaunch(enabled()));
+        LOGGER.info("Created subnet {} ({}) in {}", subnetId, cidr, az);
+        return subnetId;
+    }
+
+    private String ensureSecurityGroup(String vpcId) {
+        List<SecurityGroup> groups = ec2.describeSecurityGroups(r -> r.filters(
+                filter("vpc-id", vpcId), filter("group-name", SG_NAME))).securityGroups();
+        if (!groups.isEmpty()) return groups.get(0).groupId();
+
+        String sgId = ec2.createSecurityGroup(r -> r.groupName(SG_NAME).vpcId(vpcId)
+                .description("Security group for Ignis scheduler instances")
+                .tagSpecifications(tags(ResourceType.SECURITY_GROUP, SG_NAME))).groupId();
+        // New groups already allow all egress
+        ec2.authorizeSecurityGroupIngress(r -> r.groupId(sgId).ipPermissions(
+                tcpFromAnywhere(22),
+                tcpFromAnywhere(80),
+                // Driver <-> executor traffic between instances of the same group (EC2 cluster mode)
+                IpPermission.builder().ipProtocol("-1")
+                        .userIdGroupPairs(UserIdGroupPair.builder().groupId(sgId).build()).build()));
+        LOGGER.info("Created security group {}", sgId);
+        return sgId;
+    }
+
+    private String ensureInternetGateway(String vpcId) {
+        List<InternetGateway> attached = ec2.describeInternetGateways(r -> r.filters(
+                filter("attachment.vpc-id", vpcId))).internetGateways();
+        if (!attached.isEmpty()) return attached.get(0).internetGatewayId();
+
+        String igw = ec2.createInternetGateway(r -> r.tagSpecifications(tags(ResourceType.INTERNET_GATEWAY, "ignis-igw")))
+                .internetGateway().internetGatewayId();
+        ec2.attachInternetGateway(r -> r.vpcId(vpcId).internetGatewayId(igw));
+        LOGGER.info("Created internet gateway {}", igw);
+        return igw;
+    }
+
+    private String ensureRouteTable(String vpcId, String igw) {
+        List<RouteTable> tables = ec2.describeRouteTables(r -> r.filters(
+                filter("vpc-id", vpcId), filter("tag:" + STACK_TAG, STACK))).routeTables();
+        String tableId;
+        if (!tables.isEmpty()) {
+            RouteTable table = tables.get(0);
+            tableId = table.routeTableId();
+            if (table.routes().stream().anyMatch(route -> "0.0.0.0/0".equals(route.destinationCidrBlock()))) return tableId;
+        } else {
+            tableId = ec2.createRouteTable(r -> r.vpcId(vpcId)
+                    .tagSpecifications(tags(ResourceType.ROUTE_TABLE, "ignis-route-table"))).routeTable().routeTableId();
+            LOGGER.info("Created route table {}", tableId);
+        }
+        ec2.createRoute(r -> r.routeTableId(tableId).destinationCidrBlock("0.0.0.0/0").gatewayId(igw));
+        return tableId;
+    }
+
+    private void associate(String tableId, Collection<String> subnetIds) {
+        RouteTable table = ec2.describeRouteTables(r -> r.routeTableIds(tableId)).routeTables().get(0);
+        Set<String> associated = new HashSet<>();
+        table.associations().forEach(a -> associated.add(a.subnetId()));
+        for (String subnetId : subnetIds) {
+            if (!associated.contains(subnetId)) {
+                ec2.associateRouteTable(r -> r.routeTableId(tableId).subnetId(subnetId));
+            }
+        }
+    }
+
+    @Override
+    public String requireOutput(String key) throws ISchedulerException {
+        String value;
+        synchronized (this) {
+            value = outputs.get(key);
+        }
+        if (value == null) {
+            throw new ISchedulerException("Output required not found: " + key);
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized Map<String, String> subnets() throws ISchedulerException {
+        if (subnets.isEmpty()) {
+            throw new ISchedulerException("Output required not found: subnet_ids");
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<>(subnets));
+    }
+
+    @Override
+    public synchronized boolean destroyIfUnused(Step beforeDestroy) throws Exception {
+        holders.lockRegistry();
+        try {
+            int others = holders.others();
+            if (others > 0) {
+                LOGGER.info("{} other scheduler processes still use the infrastructure, leaving it to them", others);
+                holders.release();
+                clear();
+                return false;
+            }
+            beforeDestroy.run();
+            destroy();
+            return true;
+        } finally {
+            holders.unlockRegistry();
+        }
+    }
+
+    // Callers outside destroyIfUnused must know nobody else uses the stack.
+    // Reverse order of creation; the security group, the gateway, the subnets and the bucket go at
+    // once and the VPC last. The bucket has to be empty already (InfrastructureLifecycle empties it).
+    @Override
+    public synchronized void destroy() throws ISchedulerException {
+        try {
+            if (!isProvisioned() && !findExisting()) {
+                LOGGER.info("No stack tagged {}={}, nothing to destroy", STACK_TAG, STACK);
+                return;
+            }
+        } catch (Ec2Exception | S3Exception e) {
+            throw new ISchedulerException("Could not look up the stack to destroy: " + message(e), e);
+        }
+        System.out.println("[ignis-cloud] Destroying infrastructure...");
+        String vpcId = outputs.get("vpc_id");
+        String bucket = outputs.get("jobs_bucket_name");
+        String sgId = outputs.get("sg_id");
+        List<String> subnetIds = new ArrayList<>(subnets.values());
+        try {
+            List<CompletableFuture<?>> deletes = new ArrayList<>();
+            if (bucket != null) deletes.add(async(() -> s3.deleteBucket(r -> r.bucket(bucket))));
+            if (sgId != null) deletes.add(async(() -> whenFree(() -> ec2.deleteSecurityGroup(r -> r.groupId(sgId)))));
+            if (igwId != null) {
+                deletes.add(async(() -> whenFree(() -> {
+                    ec2.detachInternetGateway(r -> r.internetGatewayId(igwId).vpcId(vpcId));
+                    return ec2.deleteInternetGateway(r -> r.internetGatewayId(igwId));
+                })));
+            }
+            // Deleting a subnet drops its route table association with it
+            for (String subnetId : subnetIds) {
+                deletes.add(async(() -> whenFree(() -> ec2.deleteSubnet(r -> r.subnetId(subnetId)))));
+            }
+            S3Operations.await(CompletableFuture.allOf(deletes.toArray(CompletableFuture[]::new)),
+                    "Could not delete the infrastructure");
+            if (routeTableId != null) ec2.deleteRouteTable(r -> r.routeTableId(routeTableId));
+            if (vpcId != null) whenFree(() -> ec2.deleteVpc(r -> r.vpcId(vpcId)));
+            LOGGER.info("Destroy completed");
+            System.out.println("[ignis-cloud] Infrastructure destroyed.");
+        } catch (Exception e) {
+            LOGGER.error("Failed to destroy the SDK infrastructure", e);
+            throw new ISchedulerException("Failed to destroy the SDK infrastructure", e);
+        } finally {
+            holders.release();
+            clear();
+        }
+    }
+
+    private void clear() {
+        outputs.clear();
+        subnets.clear();
+        igwId = null;
+        routeTableId = null;
+    }
+
+    // The stack of an earlier run, from its tags and without creating anything (to destroy it); false if none.
+    // A run that failed before recording the bucket in the VPC (or before creating the VPC) is found by
+    // the tag of the bucket itself.
+    private boolean findExisting() {
+        Vpc vpc = findVpc();
+        String bucket = vpc == null ? null : vpc.tags().stream().filter(t -> t.key().equals(BUCKET_TAG))
+                .map(Tag::value).findFirst().orElse(null);
+        if (bucket == null) bucket = findTaggedBucket();
+        if (bucket != null) outputs.put("jobs_bucket_name", bucket);
+        if (vpc == null) return bucket != null;
+        String vpcId = vpc.vpcId();
+        outputs.put("vpc_id", vpcId);
+        ec2.describeSecurityGroups(r -> r.filters(filter("vpc-id", vpcId), filter("group-name", SG_NAME)))
+                .securityGroups().stream().findFirst().ifPresent(g -> outputs.put("sg_id", g.groupId()));
+        ec2.describeSubnets(r -> r.filters(filter("vpc-id", vpcId))).subnets()
+                .forEach(subnet -> subnets.put(subnet.availabilityZone(), subnet.subnetId()));
+        igwId = ec2.describeInternetGateways(r -> r.filters(filter("attachment.vpc-id", vpcId))).internetGateways()
+                .stream().findFirst().map(InternetGateway::internetGatewayId).orElse(null);
+        routeTableId = ec2.describeRouteTables(r -> r.filters(filter("vpc-id", vpcId), filter("tag:" + STACK_TAG, STACK)))
+                .routeTables().stream().findFirst().map(RouteTable::routeTableId).orElse(null);
+        LOGGER.info("Found VPC {} of stack {} left by an earlier run", vpcId, STACK);
+        return true;
+    }
+
+    // Retries a delete while AWS answers DependencyViolation
+    private <T> T whenFree(Callable<T> delete) throws Exception {
+        long deadline = System.currentTimeMillis() + DEPENDENCY_WAIT_MS;
+        while (true) {
+            try {
+                return delete.call();
+            } catch (Ec2Exception e) {
+                String code = e.awsErrorDetails() != null ? e.awsErrorDetails().errorCode() : "";
+                if (!code.equals("DependencyViolation") || System.currentTimeMillis() > deadline) throw e;
+                LOGGER.debug("Waiting for dependencies to go away: {}", message(e));
+                Thread.sleep(5000);
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> async(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, steps);
+    }
+
+    private static TagSpecification tags(ResourceType type, String name) {
+        return TagSpecification.builder().resourceType(type).tags(tag("Name", name), tag(STACK_TAG, STACK)).build();
+    }
+
+    private static Tag tag(String key, String value) {
+        return Tag.builder().key(key).value(value).build();
+    }
+
+    private static Filter filter(String name, String value) {
+        return Filter.builder().name(name).values(value).build();
+    }
+
+    private static AttributeBooleanValue enabled() {
+        return AttributeBooleanValue.builder().value(true).build();
+    }
+
+    private static IpPermission tcpFromAnywhere(int port) {
+        return IpPermission.builder().ipProtocol("tcp").fromPort(port).toPort(port)
+                .ipRanges(IpRange.builder().cidrIp("0.0.0.0/0").build()).build();
+    }
+
+    private static String randomSuffix() {
+        String chars = "abcdefghijklmnopqrstuvwxyz0123456789";
+        SecureRandom random = new SecureRandom();
+        StringBuilder suffix = new StringBuilder();
+        for (int i = 0; i < 8; i++) suffix.append(chars.charAt(random.nextInt(chars.length())));
+        return suffix.toString();
+    }
+
+    private static String message(Exception e) {
+        if (e instanceof Ec2Exception ec2e && ec2e.awsErrorDetails() != null) return ec2e.awsErrorDetails().errorMessage();
+        if (e instanceof S3Exception s3e && s3e.awsErrorDetails() != null) return s3e.awsErrorDetails().errorMessage();
+        return e.getMessage();
+    }
+}
@@ -0,0 +1,99 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+// The scheduler processes of this machine that use a stack kept in a shared workspace. Each one keeps
+// holders/<pid>.lock locked while it uses the stack; the OS drops the lock when a process dies, so a
+// holder file with a free lock is a leftover and goes. registry.lock is held by whoever is adding a
+// holder, provisioning or destroying, so the stack is never destroyed while another process reads it.
+class StackHolders {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(StackHolders.class);
+
+    private final Path registryFile;
+    private final Path holdersDir;
+    private final Path self;
+    private FileChannel held = null;
+    private FileChannel registry = null;
+
+    StackHolders(Path workspace) {
+        this.registryFile = workspace.resolve("registry.lock");
+        this.holdersDir = workspace.resolve("holders");
+        this.self = holdersDir.resolve(ProcessHandle.current().pid() + ".lock");
+    }
+
+    // Blocks while another process holds it. The caller serializes its own threads and unlocks in a finally.
+    void lockRegistry() throws IOException {
+        if (registry != null) throw new IllegalStateException("Registry " + registryFile + " already locked");
+        Files.createDirectories(registryFile.getParent());
+        FileChannel channel = FileChannel.open(registryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        registry = channel;
+    }
+
+    // Also when lockRegistry failed
+    void unlockRegistry() {
+        if (registry == null) return;
+        try {
+            registry.close(); // Releases the lock too
+        } catch (IOException e) {
+            LOGGER.debug("Could not close registry {}", registryFile, e);
+        }
+        registry = null;
+    }
+
+    // With the registry locked
+    void hold() throws IOException {
+        if (held != null) return;
+        Files.createDirectories(holdersDir);
+        FileChannel channel = FileChannel.open(self, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.tryLock() == null) {
+            channel.close();
+            throw new IOException("Holder file " + self + " is locked by another process");
+        }
+        held = channel;
+    }
+
+    void release() {
+        if (held == null) return;
+        try {
+            held.close();
+            Files.deleteIfExists(self);
+        } catch (IOException e) {
+            LOGGER.debug("Could not remove holder file {}", self, e);
+        }
+        held = null;
+    }
+
+    // With the registry locked: the other processes still holding the stack
+    int others() throws IOException {
+        if (!Files.isDirectory(holdersDir)) return 0;
+        int alive = 0;
+        try (Stream<Path> files = Files.list(holdersDir)) {
+            for (Path file : files.filter(f -> !f.equals(self)).toList()) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    FileLock lock = channel.tryLock();
+                    if (lock == null) {
+                        alive++;
+                        continue;
+                    }
+                }
+                LOGGER.info("Removing holder file {} left by a process that is gone", file);
+                Files.deleteIfExists(file);
+            }
+        }
+        return alive;
+    }
+}
@@ -0,0 +1,182 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+// Streaming counterpart of TarGzWriter: extracts ustar entries (with PAX path/size overrides and
+// GNU long names) while the archive is still arriving, so the download and the extraction overlap.
+// Entries other than files and directories are skipped.
+public class TarGzReader {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(TarGzReader.class);
+
+    private static final int BLOCK = 512;
+
+    public record Summary(int files, long bytes) { }
+
+    public static Summary extract(InputStream source, Path root) throws IOException {
+        Path base = root.toAbsolutePath().normalize();
+        InputStream in = new GZIPInputStream(source, 256 * 1024);
+        byte[] header = new byte[BLOCK];
+        Map<String, String> pax = new HashMap<>();
+        String longName = null;
+        int files = 0;
+        long bytes = 0;
+
+        while (readFully(in, header)) {
+            if (isZero(header)) break;
+            char type = (char) header[156];
+            long size = parseOctal(header, 124, 12);
+            String name = cString(header, 0, 100);
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) name = prefix + "/" + name;
+
+            if (type == 'x') {
+                pax = parsePax(readBytes(in, size));
+                skipPadding(in, size);
+                continue;
+            }
+            if (type == 'L') {
+                longName = new String(readBytes(in, size), StandardCharsets.UTF_8).replace("\0", "");
+                skipPadding(in, size);
+                continue;
+            }
+            if (pax.containsKey("path")) name = pax.get("path");
+            else if (longName != null) name = longName;
+            if (pax.containsKey("size")) size = Long.parseLong(pax.get("size"));
+            pax = new HashMap<>();
+            longName = null;
+
+            Path target = base.resolve(name).normalize();
+            if (!target.startsWith(base)) {
+                throw new IOException("Refusing to extract outside " + base + ": " + name);
+            }
+            int mode = (int) parseOctal(header, 100, 8);
+            long mtime = parseOctal(header, 136, 12);
+
+            if (type == '5') {
+                Files.createDirectories(target);
+            } else if (type == '0' || type == '\0') {
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    copy(in, out, size);
+                }
+                applyAttributes(target, mode, mtime);
+                files++;
+                bytes += size;
+            } else {
+                LOGGER.debug("Skipping tar entry {} of type {}", name, type);
+                skip(in, size);
+            }
+            if (type != '5') skipPadding(in, size);
+        }
+        return new Summary(files, bytes);
+    }
+
+    private static void applyAttributes(Path target, int mode, long mtime) {
+        try {
+            Set<PosixFilePermission> perms = EnumSet.noneOf(PosixFilePermission.class);
+            PosixFilePermission[] bits = PosixFilePermission.values(); // OWNER_READ ... OTHERS_EXECUTE
+            for (int i = 0; i < 9; i++) {
+                if ((mode & (1 << (8 - i))) != 0) perms.add(bits[i]);
+            }
+            Files.setPosixFilePermissions(target, perms);
+            Files.setLastModifiedTime(target, FileTime.fromMillis(mtime * 1000));
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Could not set attributes of {}", target, e);
+        }
+    }
+
+    private static Map<String, String> parsePax(byte[] data) {
+        Map<String, String> records = new HashMap<>();
+        int i = 0;
+        // "<len> <key>=<value>\n", where len is the byte length of the whole record
+        while (i < data.length) {
+            int space = i;
+            while (space < data.length && data[space] != ' ') space++;
+            if (space >= data.length) break;
+            int len = Integer.parseInt(new String(data, i, space - i, StandardCharsets.US_ASCII));
+            if (len <= 0 || i + len > data.length) break;
+            String record = new String(data, space + 1, i + len - space - 2, StandardCharsets.UTF_8);
+            int eq = record.indexOf('=');
+            if (eq > 0) records.put(record.substring(0, eq), record.substring(eq + 1));
+            i += len;
+        }
+        return records;
+    }
+
+    private static void copy(InputStream in, OutputStream out, long size) throws IOException {
+        byte[] buffer = new byte[256 * 1024];
+        long left = size;
+        while (left > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (n < 0) throw new IOException("Truncated tar archive");
+            out.write(buffer, 0, n);
+            left -= n;
+        }
+    }
+
+    private static byte[] readBytes(InputStream in, long size) throws IOException {
+        byte[] data = new byte[(int) size];
+        if (!readFully(in, data)) throw new IOException("Truncated tar archive");
+        return data;
+    }
+
+    private static void skip(InputStream in, long size) throws IOException {
+        copy(in, OutputStream.nullOutputStream(), size);
+    }
+
+    private static void skipPadding(InputStream in, long size) throws IOException {
+        int rem = (int) (size % BLOCK);
+        if (rem != 0) skip(in, BLOCK - rem);
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+        int off = 0;
+        while (off < buffer.length) {
+            int n = in.read(buffer, off, buffer.length - off);
+            if (n < 0) {
+                if (off == 0) return false;
+                throw new IOException("Truncated tar archive");
+            }
+            off += n;
+        }
+        return true;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) if (b != 0) return false;
+        return true;
+    }
+
+    private static String cString(byte[] h, int off, int len) {
+        int end = off;
+        while (end < off + len && h[end] != 0) end++;
+        return new String(h, off, end - off, StandardCharsets.UTF_8);
+    }
+
+    private static long parseOctal(byte[] h, int off, int len) {
+        long value = 0;
+        for (int i = off; i < off + len; i++) {
+            byte b = h[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) break;
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+}
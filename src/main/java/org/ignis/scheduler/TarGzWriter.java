@@ -0,0 +1,184 @@
+package org.ignis.scheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.zip.GZIPOutputStream;
+
+// Minimal ustar writer (with PAX headers for long names/sizes) on top of gzip, so bundles can be
+// produced in-process and streamed without a staging directory or the system tar.
+// Reference: [10], [11], [36], [37]
+public class TarGzWriter implements Closeable {
+
+    private static final int BLOCK = 512;
+    private static final int GZIP_BUFFER = 64 * 1024;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    private final GZIPOutputStream out;
+    private final byte[] copyBuffer = new byte[GZIP_BUFFER];
+    private boolean finished = false;
+
+    public TarGzWriter(OutputStream target) throws IOException {
+        this.out = new GZIPOutputStream(target, GZIP_BUFFER);
+    }
+
+    public void putDirectory(String name, long mtimeSeconds) throws IOException {
+        String dirName = name.endsWith("/") ? name : name + "/";
+        writeHeader(dirName, 0, mtimeSeconds, '5', 0755);
+    }
+
+    public void putFile(String name, Path file) throws IOException {
+        putFile(name, file, null);
+    }
+
+    // With expectedSha256, the bytes written must hash to it (the file may have changed since it was
+    // hashed); the caller then has to abort the upload instead of completing it
+    public void putFile(String name, Path file, String expectedSha256) throws IOException {
+        long size = Files.size(file);
+        long mtime = Files.getLastModifiedTime(file).toMillis() / 1000;
+        int mode = Files.isExecutable(file) ? 0755 : 0644;
+        writeHeader(name, size, mtime, '0', mode);
+
+        long written = 0;
+        MessageDigest md = expectedSha256 != null ? ContentDigest.newSha256() : null;
+        try (InputStream is = Files.newInputStream(file)) {
+            int n;
+            while (written < size && (n = is.read(copyBuffer, 0, (int) Math.min(copyBuffer.length, size - written))) > 0) {
+                out.write(copyBuffer, 0, n);
+                if (md != null) md.update(copyBuffer, 0, n);
+                written += n;
+            }
+        }
+        if (written != size || (md != null && !expectedSha256.equals(HexFormat.of().formatHex(md.digest())))) {
+            throw new IOException("File changed while bundling: " + file);
+        }
+        pad(size);
+    }
+
+    public void finish() throws IOException {
+        if (finished) return;
+        out.write(new byte[BLOCK * 2]);
+        out.finish();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeHeader(String name, long size, long mtime, char type, int mode) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        String ustarName = name;
+        String ustarPrefix = "";
+        boolean pax = size > MAX_USTAR_SIZE;
+
+        if (nameBytes.length > 100) {
+            int split = findPrefixSplit(name);
+            if (split > 0) {
+                ustarPrefix = name.substring(0, split);
+                ustarName = name.substring(split + 1);
+            } else {
+                pax = true;
+                ustarName = truncate(name, 100);
+            }
+        }
+
+        if (pax) {
+            StringBuilder records = new StringBuilder();
+            if (nameBytes.length > 100 && ustarPrefix.isEmpty()) {
+                records.append(paxRecord("path", name));
+            }
+            if (size > MAX_USTAR_SIZE) {
+                records.append(paxRecord("size", Long.toString(size)));
+            }
+            byte[] data = records.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(buildHeader("PaxHeader/" + truncate(ustarName, 90), "", data.length, mtime, 'x', 0644));
+            out.write(data);
+            pad(data.length);
+        }
+
+        out.write(buildHeader(ustarName, ustarPrefix, Math.min(size, MAX_USTAR_SIZE), mtime, type, mode));
+    }
+
+    private byte[] buildHeader(String name, String prefix, long size, long mtime, char type, int mode) {
+        byte[] h = new byte[BLOCK];
+        putString(h, 0, 100, name);
+        putOctal(h, 100, 8, mode);
+        putOctal(h, 108, 8, 0);
+        putOctal(h, 116, 8, 0);
+        putOctal(h, 124, 12, size);
+        putOctal(h, 136, 12, mtime);
+        for (int i = 148; i < 156; i++) h[i] = ' ';
+        h[156] = (byte) type;
+        putString(h, 257, 6, "ustar");
+        h[263] = '0';
+        h[264] = '0';
+        putString(h, 265, 32, "root");
+        putString(h, 297, 32, "root");
+        putString(h, 345, 155, prefix);
+
+        long checksum = 0;
+        for (byte b : h) checksum += (b & 0xFF);
+        putOctal(h, 148, 7, checksum);
+        return h;
+    }
+
+    private void pad(long size) throws IOException {
+        int rem = (int) (size % BLOCK);
+        if (rem != 0) {
+            out.write(new byte[BLOCK - rem]);
+        }
+    }
+
+    // ustar splits long paths as prefix (<=155 bytes) + '/' + name (<=100 bytes)
+    private static int findPrefixSplit(String name) {
+        String trimmed = name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+        for (int i = trimmed.lastIndexOf('/'); i > 0; i = trimmed.lastIndexOf('/', i - 1)) {
+            int prefixLen = name.substring(0, i).getBytes(StandardCharsets.UTF_8).length;
+            int nameLen = name.substring(i + 1).getBytes(StandardCharsets.UTF_8).length;
+            if (prefixLen <= 155 && nameLen <= 100) return i;
+            if (prefixLen <= 155) break;
+        }
+        return -1;
+    }
+
+    private static String paxRecord(String key, String value) {
+        String body = " " + key + "=" + value + "\n";
+        int bodyLen = body.getBytes(StandardCharsets.UTF_8).length;
+        int len = bodyLen + 1;
+        while (Integer.toString(len).length() + bodyLen != len) {
+            len = Integer.toString(len).length() + bodyLen;
+        }
+        return len + body;
+    }
+
+    private static String truncate(String s, int maxBytes) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length <= maxBytes) return s;
+        return new String(b, b.length - maxBytes, maxBytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(byte[] h, int offset, int len, String value) {
+        byte[] b = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(b, 0, h, offset, Math.min(len, b.length));
+    }
+
+    private static void putOctal(byte[] h, int offset, int len, long value) {
+        String octal = Long.toOctalString(value);
+        int digits = len - 1;
+        String padded = "0".repeat(Math.max(0, digits - octal.length())) + octal;
+        putString(h, offset, digits, padded);
+        h[offset + digits] = 0;
+    }
+}
@@ -0,0 +1,241 @@
+package org.ignis.scheduler;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Teardown off the job path: deleting a finished job's objects and tearing the stack down run here,
+// one task at a time in the order they were submitted, so a job completes (and cancelJob returns)
+// as soon as its results are in. Each task is written to a journal before it is queued and removed
+// once done. Journals are per process, <region>/<id>.json next to an <id>.lock the process keeps
+// locked while it runs, so schedulers running at once never touch each other's tasks; whatever a
+// process that is gone left behind (it exited or the task failed) is adopted by the next one; an
+// adopted stack teardown is only held until the owner calls resumeStack(), so a start that needs the
+// stack again can still drop it with keepStack().
+public class TeardownReaper {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(TeardownReaper.class);
+
+    private static final Path JOURNAL_DIR = Path.of(System.getenv().getOrDefault("IGNIS_TEARDOWN_DIR",
+            System.getProperty("user.home") + "/.ignis/teardown")); // Default: ~/.ignis/teardown
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    public record Task(String kind, String bucket, String jobId) {
+        public static final String JOB = "job";
+        public static final String STACK = "stack";
+
+        public static Task job(String bucket, String jobId) {
+            return new Task(JOB, bucket, jobId);
+        }
+
+        public static Task stack(String bucket) {
+            return new Task(STACK, bucket, null);
+        }
+
+        boolean isStack() {
+            return STACK.equals(kind);
+        }
+    }
+
+    @FunctionalInterface
+    public interface StackTeardown {
+        void run(String bucket) throws Exception;
+    }
+
+    private final S3Operations s3;
+    private final StackTeardown stackTeardown;
+    private final Path journal;
+    // Locked for as long as this process runs; null if the journal could not be set up
+    private FileChannel owner = null;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Not done yet, including the ones that failed in this process (retried on the next start)
+    private final List<Task> journaled = new ArrayList<>();
+    private final Deque<Task> queue = new ArrayDeque<>();
+    private Task running = null;
+
+    public TeardownReaper(String region, S3Operations s3, StackTeardown stackTeardown) {
+        this.s3 = s3;
+        this.stackTeardown = stackTeardown;
+        Path dir = JOURNAL_DIR.resolve(region);
+        String id = ProcessHandle.current().pid() + "-" + INSTANCES.incrementAndGet();
+        this.journal = dir.resolve(id + ".json");
+        try {
+            Files.createDirectories(dir);
+            owner = FileChannel.open(dir.resolve(id + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            owner.lock();
+            adoptOrphans(dir);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not set up the teardown journal in {}, teardown tasks will not survive this process", dir, e);
+        }
+        journaled.stream().filter(task -> !task.isStack()).forEach(queue::add);
+        if (!journaled.isEmpty()) {
+            LOGGER.info("Resuming {} teardown tasks left by earlier runs", journaled.size());
+        }
+        Thread worker = new Thread(this::work, "ignis-reaper");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void submit(Task task) {
+        if (journaled.contains(task)) return;
+        journaled.add(task);
+        queue.add(task);
+        persist();
+        notifyAll();
+    }
+
+    // Written to the journal but not run here: for the next start to carry out
+    public synchronized void journal(Task task) {
+        if (journaled.contains(task)) return;
+        journaled.add(task);
+        persist();
+    }
+
+    public synchronized boolean hasHeldStack() {
+        return journaled.stream().anyMatch(task -> task.isStack() && !queue.contains(task));
+    }
+
+    // Runs the adopted stack teardown that keepStack() did not drop
+    public synchronized void resumeStack() {
+        for (Task task : journaled) {
+            if (task.isStack() && !queue.contains(task) && !task.equals(running)) queue.add(task);
+        }
+        notifyAll();
+    }
+
+    // The stack is wanted again: a teardown that has not started is dropped, one that has is waited for
+    public synchronized void keepStack() throws InterruptedException {
+        if (journaled.removeIf(Task::isStack)) {
+            queue.removeIf(Task::isStack);
+            persist();
+            LOGGER.info("Dropped the pending stack teardown");
+        }
+        while (running != null && running.isStack()) {
+            wait();
+        }
+    }
+
+    // False if there is still work queued or running after timeoutMs
+    public synchronized boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (running != null || !queue.isEmpty()) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return false;
+            wait(left);
+        }
+        return true;
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                task = queue.poll();
+                running = task;
+            }
+            boolean done = run(task);
+            synchronized (this) {
+                running = null;
+                if (done && journaled.remove(task)) persist();
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean run(Task task) {
+        long started = System.currentTimeMillis();
+        try {
+            if (task.isStack()) {
+                stackTeardown.run(task.bucket());
+            } else if (Task.JOB.equals(task.kind())) {
+                s3.deleteJobPrefix(task.bucket(), task.jobId());
+            } else {
+                LOGGER.warn("Unknown teardown task {}, dropping it", task);
+                return true;
+            }
+            LOGGER.info("Teardown {} done in {} ms", task, System.currentTimeMillis() - started);
+            return true;
+        } catch (Exception e) {
+            if (!task.isStack() && causedBy(e, NoSuchBucketException.class)) {
+                return true; // The stack went first, objects and all
+            }
+            LOGGER.warn("Teardown {} failed, it will be retried on the next start: {}", task, e.getMessage());
+            return false;
+        }
+    }
+
+    // The journals whose lock is free belong to processes that are gone: their tasks become ours
+    private void adoptOrphans(Path dir) throws IOException {
+        List<Path> locks;
+        try (Stream<Path> files = Files.list(dir)) {
+            locks = files.filter(f -> f.getFileName().toString().endsWith(".lock")).toList();
+        }
+        for (Path lockFile : locks) {
+            String name = lockFile.getFileName().toString();
+            Path orphan = lockFile.resolveSibling(name.substring(0, name.length() - ".lock".length()) + ".json");
+            if (orphan.equals(journal)) continue;
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.tryLock();
+                if (lock == null) continue; // Its process is still running
+                if (Files.exists(orphan)) {
+                    for (Task task : mapper.readValue(orphan.toFile(), new TypeReference<List<Task>>() { })) {
+                        if (!journaled.contains(task)) journaled.add(task);
+                    }
+                    persist(); // Ours first, then theirs goes
+                    Files.delete(orphan);
+                }
+                Files.deleteIfExists(lockFile);
+            } catch (OverlappingFileLockException | NoSuchFileException e) {
+                // Another reaper of this JVM, or adopted by another process meanwhile
+            } catch (IOException e) {
+                LOGGER.warn("Could not adopt the teardown journal {}", orphan, e);
+            }
+        }
+    }
+
+    // Written to a temporary file and moved over the journal, so a crash never leaves half of it
+    private void persist() {
+        if (owner == null) return;
+        try {
+            if (journaled.isEmpty()) {
+                Files.deleteIfExists(journal);
+                return;
+            }
+            Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+            mapper.writeValue(tmp.toFile(), journaled);
+            Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write the teardown journal {}", journal, e);
+        }
+    }
+
+    private static boolean causedBy(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) return true;
+        }
+        return false;
+    }
+}
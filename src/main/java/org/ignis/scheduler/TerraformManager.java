@@ -13,25 +13,45 @@ import java.util.*;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
 
-public class TerraformManager {
+// Terraform CLI provisioner. The workspace (config, .terraform, state) persists per region under
+// IGNIS_TERRAFORM_DIR, so a crashed JVM doesn't lose the stack and the next run finds it again.
+// Providers come from a shared TF_PLUGIN_CACHE_DIR. The config and the variables are fingerprinted:
+// init only runs when the config changed and apply only when either did; otherwise the outputs are
+// read from the state file and terraform is not started at all. IGNIS_TERRAFORM_REFRESH=true
+// applies anyway (e.g. after the stack was removed outside of Ignis).
+// Every scheduler process of the region shares that stack: each one registers as a holder once it
+// has it, and only the last holder destroys it (StackHolders).
+public class TerraformManager implements InfrastructureProvisioner {
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(TerraformManager.class);
 
     private static final String TF_BIN_PROP = "ignis.terraform.bin";
     private static final String TF_RESOURCE_DIR = "terraform";
+    private static final Path BASE_DIR = Path.of(System.getenv().getOrDefault("IGNIS_TERRAFORM_DIR",
+            System.getProperty("user.home") + "/.ignis/terraform")); // Default: ~/.ignis/terraform
+    private static final Path PLUGIN_CACHE = Path.of(System.getenv().getOrDefault("IGNIS_TERRAFORM_PLUGIN_CACHE",
+            BASE_DIR.resolve("plugin-cache").toString())); // Default: <IGNIS_TERRAFORM_DIR>/plugin-cache
+    private static final boolean REFRESH = Boolean.parseBoolean(System.getenv("IGNIS_TERRAFORM_REFRESH"));
+    // {"init": <config fingerprint>, "apply": <config + variables fingerprint>} of the last successful run
+    private static final String FINGERPRINT_FILE = ".ignis-fingerprint.json";
+    private static final String STATE_FILE = "terraform.tfstate";
 
     private final String terraformBinary;
     private final Map<String, String> outputs = new HashMap<>();
+    private final Map<String, String> subnets = new LinkedHashMap<>();
     private Path workDir = null;
     private final String region;
-    private final String az;
+    private final List<String> azs;
+    private final StackHolders holders;
 
-    public TerraformManager(String region, String az) {
+    public TerraformManager(String region, List<String> azs) {
         this.terraformBinary = System.getProperty(TF_BIN_PROP, "terraform");
         this.region = region;
-        this.az = az;
+        this.azs = List.copyOf(azs);
+        this.holders = new StackHolders(BASE_DIR.resolve(region));
     }
 
     // Provision Terraform infrastructure if not exists
+    @Override
     public synchronized void ensureInfrastructure() throws ISchedulerException {
 
         boolean runtime = Boolean.parseBoolean(System.getenv("IGNIS_CLOUD_RUNTIME"));
@@ -39,49 +59,125 @@ public class TerraformManager {
             LOGGER.info("Cloud runtime mode detected: skipping infrastructure provisioning");
             return;
         }
+        if (isProvisioned()) {
+            LOGGER.debug("Infrastructure already provisioned, reusing it");
+            return;
+        }
         provision();
     }
 
-    public void provision() throws ISchedulerException {
-        if(this.workDir != null) {
-            LOGGER.warn("WorkDir already exists");
+    @Override
+    public synchronized boolean isProvisioned() {
+        return workDir != null && !outputs.isEmpty();
+    }
+
+    public synchronized void provision() throws ISchedulerException {
+        if (isProvisioned()) {
             throw new ISchedulerException("TerraformManager already provisioned");
         }
 
+        Path workspace = BASE_DIR.resolve(region);
         try {
-            workDir = Files.createTempDirectory("ignis-terraform-");
-            LOGGER.debug("Creating temporary directory: {}", workDir.toString());
-
-            copyTerraformResourcesTo(workDir);
+            holders.lockRegistry();
+            Files.createDirectories(workspace);
+            Files.createDirectories(PLUGIN_CACHE);
+            workDir = workspace;
+
+            // Config files of an older version must not linger next to the new ones
+            try (Stream<Path> old = Files.list(workspace)) {
+                for (Path file : old.filter(f -> f.getFileName().toString().endsWith(".tf")).toList()) {
+                    Files.delete(file);
+                }
+            }
+            copyTerraformResourcesTo(workspace);
+            String initPrint = configFingerprint(workspace);
+            String applyPrint = ContentDigest.sha256(initPrint + "\n" + region + "\n" + azsVar());
+            JsonNode last = readFingerprints(workspace);
+
+            if (!REFRESH && applyPrint.equals(last.path("apply").asText(null)) && Files.exists(workspace.resolve(STATE_FILE))) {
+                LOGGER.info("Terraform config and variables unchanged, reading outputs from {}", workspace.resolve(STATE_FILE));
+                parseOutputs(readStateOutputs(workspace));
+            }
+            if (!isProvisioned()) {
+                System.out.println("[ignis-cloud] Provisioning infrastructure...");
+                if (!initPrint.equals(last.path("init").asText(null)) || !Files.isDirectory(workspace.resolve(".terraform"))) {
+                    executeTerraform(workspace, "init", "-input=false");
+                }
+                // Forget the fingerprint first: an apply cut halfway must run again next time
+                writeFingerprints(workspace, initPrint, null);
 
-            System.out.println("[ignis-cloud] Provisioning infrastructure...");
-            executeTerraform(workDir, "init", "-input=false");
+                System.out.println("[ignis-cloud] Applying Terraform plan...");
+                executeTerraform(workspace, "apply", "-auto-approve", "-input=false",
+                        "-var", "aws_region=" + region,
+                        "-var", "availability_zones=" + azsVar());
 
-            System.out.println("[ignis-cloud] Applying Terraform plan...");
-            executeTerraform(workDir, "apply", "-auto-approve", "-input=false",
-                    "-var", "aws_region=" + region,
-                    "-var", "availability_zone=" + az);
-
-            captureOutputs(workDir);
+                captureOutputs(workspace);
+                writeFingerprints(workspace, initPrint, applyPrint);
+                LOGGER.info("Terraform infrastructure applied successfully.");
+            }
+            holders.hold();
 
-            printInfrastructureTable();
+            InfrastructureProvisioner.printInfrastructureTable(outputs, subnets);
             System.out.println("[ignis-cloud] Infrastructure ready.");
-            LOGGER.info("Terraform infrastructure applied successfully.");
 
         } catch (Exception e) {
-            if (workDir != null && Files.exists(workDir)) {
-                try {
-                    deleteDirectoryRecursively(workDir);
-                    LOGGER.info("Cleaning up partial directory after failure");
-                } catch (Exception ex) {
-                    LOGGER.warn("Could not clean up directory after error", ex);
-                }
-            }
+            // The workspace stays: its state is what lets the next run see what was created
+            outputs.clear();
+            subnets.clear();
             workDir = null;
             throw new ISchedulerException("Failure during terraform provision", e);
+        } finally {
+            holders.unlockRegistry();
+        }
+    }
+
+    // Every .tf file, by name, so an upgraded jar re-inits and re-applies
+    private static String configFingerprint(Path workspace) throws IOException {
+        StringBuilder config = new StringBuilder();
+        try (Stream<Path> files = Files.list(workspace)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".tf")).sorted().toList()) {
+                config.append(file.getFileName()).append(' ').append(ContentDigest.sha256(file)).append('\n');
+            }
         }
+        return ContentDigest.sha256(config.toString());
     }
 
+    private JsonNode readFingerprints(Path workspace) {
+        try {
+            return parseJson(Files.readString(workspace.resolve(FINGERPRINT_FILE)));
+        } catch (Exception e) {
+            return new ObjectMapper().createObjectNode();
+        }
+    }
+
+    private static void writeFingerprints(Path workspace, String init, String apply) throws IOException {
+        var node = new ObjectMapper().createObjectNode();
+        node.put("init", init);
+        if (apply != null) node.put("apply", apply);
+        Files.writeString(workspace.resolve(FINGERPRINT_FILE), node.toString());
+    }
+
+    // The local state has the outputs in the same shape as "terraform output -json"
+    private JsonNode readStateOutputs(Path workspace) throws IOException, ISchedulerException {
+        return parseJson(Files.readString(workspace.resolve(STATE_FILE))).path("outputs");
+    }
+
+    @Override
+    public synchronized Map<String, String> subnets() throws ISchedulerException {
+        if (subnets.isEmpty()) {
+            throw new ISchedulerException("Output required not found: subnet_ids");
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<>(subnets));
+    }
+
+    // HCL list literal: ["eu-west-1a","eu-west-1b"]
+    private String azsVar() {
+        StringJoiner list = new StringJoiner(",", "[", "]");
+        azs.forEach(az -> list.add("\"" + az + "\""));
+        return list.toString();
+    }
+
+    @Override
     public String requireOutput(String key) throws ISchedulerException {
         String value = outputs.get(key);
         if (value == null) {
@@ -153,6 +249,7 @@ public class TerraformManager {
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.directory(workDir.toFile());
         pb.redirectErrorStream(true);
+        pb.environment().put("TF_PLUGIN_CACHE_DIR", PLUGIN_CACHE.toString());
 
         try{
             Process process = pb.start();
@@ -179,45 +276,68 @@ public class TerraformManager {
     // Reference: [10], [11]
     private void captureOutputs(Path workDir) throws ISchedulerException {
         LOGGER.info("Capturing Terraform outputs in directory {}", workDir);
+        try {
+            // No fork needed with the local backend
+            JsonNode root = Files.exists(workDir.resolve(STATE_FILE)) ? readStateOutputs(workDir) : outputJson(workDir);
+            if (!parseOutputs(root)) {
+                throw new ISchedulerException("Terraform outputs are incomplete");
+            }
+        } catch (Exception e){
+            LOGGER.error("Failed to capture Terraform outputs in directory {}", workDir, e);
+            throw new ISchedulerException("Failed to capture Terraform outputs in directory", e);
+        }
+    }
 
+    private JsonNode outputJson(Path workDir) throws Exception {
         ProcessBuilder pb = new ProcessBuilder(terraformBinary, "output", "-json");
         pb.directory(workDir.toFile());
         pb.redirectErrorStream(true);
 
-        try {
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
+        Process process = pb.start();
+        StringBuilder jsonOutput = new StringBuilder();
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    jsonOutput.append(line);
-                }
-            }
-
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new ISchedulerException("Command failed with exit code " + exitCode + ": ");
-            }
-
-            String json = jsonOutput.toString().trim();
-            if(json.isEmpty()) {
-                throw new ISchedulerException("Terraform output is empty");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                jsonOutput.append(line);
             }
+        }
 
-            var root = parseJson(json);
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new ISchedulerException("Command failed with exit code " + exitCode + ": ");
+        }
 
-            outputs.put("subnet_id", getOutputValue(root, "subnet_id"));
-            outputs.put("sg_id", getOutputValue(root, "sg_id"));
-            outputs.put("vpc_id", getOutputValue(root, "vpc_id"));
-            //outputs.put("iam_role_arn", getOutputValue(root, "iam_role_arn"));
-            outputs.put("jobs_bucket_name", getOutputValue(root, "jobs_bucket_name"));
-            //outputs.put("aws_iam_instance_profile", getOutputValue(root, "aws_iam_instance_profile"));
+        String json = jsonOutput.toString().trim();
+        if(json.isEmpty()) {
+            throw new ISchedulerException("Terraform output is empty");
+        }
+        return parseJson(json);
+    }
 
-        } catch (Exception e){
-            LOGGER.error("Failed to capture Terraform outputs in directory {}", workDir, e);
-            throw new ISchedulerException("Failed to capture Terraform outputs in directory", e);
+    // False (and nothing kept) if any output is missing, e.g. the state of a destroyed stack
+    private boolean parseOutputs(JsonNode root) {
+        Map<String, String> parsed = new HashMap<>();
+        parsed.put("subnet_id", getOutputValue(root, "subnet_id"));
+        parsed.put("sg_id", getOutputValue(root, "sg_id"));
+        parsed.put("vpc_id", getOutputValue(root, "vpc_id"));
+        //parsed.put("iam_role_arn", getOutputValue(root, "iam_role_arn"));
+        parsed.put("jobs_bucket_name", getOutputValue(root, "jobs_bucket_name"));
+        //parsed.put("aws_iam_instance_profile", getOutputValue(root, "aws_iam_instance_profile"));
+        if (parsed.containsValue(null)) return false;
+
+        Map<String, String> parsedSubnets = new LinkedHashMap<>();
+        JsonNode subnetIds = root.path("subnet_ids").path("value");
+        for (String az : azs) {
+            JsonNode subnet = subnetIds.path(az);
+            if (subnet.isTextual()) parsedSubnets.put(az, subnet.asText());
+        }
+        if (parsedSubnets.isEmpty()) {
+            parsedSubnets.put(azs.get(0), parsed.get("subnet_id"));
         }
+        outputs.putAll(parsed);
+        subnets.putAll(parsedSubnets);
+        return true;
     }
 
     private String getOutputValue(JsonNode root, String outputName) {
@@ -239,78 +359,70 @@ public class TerraformManager {
         }
     }
 
-    // Reference: [16]
-    private static void deleteDirectoryRecursively(Path dir) throws IOException {
-        if (!Files.exists(dir)) return;
-
-        try (Stream<Path> paths = Files.walk(dir)) {
-            paths.sorted(Comparator.reverseOrder())
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                        } catch (IOException e) {
-                            LOGGER.warn("Failed to delete file: {}", path, e);
-                        }
-                    });
+    @Override
+    public synchronized boolean destroyIfUnused(Step beforeDestroy) throws Exception {
+        holders.lockRegistry();
+        try {
+            int others = holders.others();
+            if (others > 0) {
+                LOGGER.info("{} other scheduler processes still use the infrastructure, leaving it to them", others);
+                holders.release();
+                workDir = null;
+                outputs.clear();
+                subnets.clear();
+                return false;
+            }
+            beforeDestroy.run();
+            destroy();
+            return true;
+        } finally {
+            holders.unlockRegistry();
         }
     }
 
-    public void destroy() throws ISchedulerException {
-        if(this.workDir == null || !Files.exists(this.workDir)) {
-            LOGGER.info("Terraform temporary directory has been deleted");
-            return;
+    // Callers outside destroyIfUnused must know nobody else uses the stack
+    // Works from the state in the workspace, also when this process never provisioned
+    @Override
+    public synchronized void destroy() throws ISchedulerException {
+        Path workspace = this.workDir != null ? this.workDir : BASE_DIR.resolve(region);
+        try {
+            if (!Files.exists(workspace.resolve(STATE_FILE)) || readStateOutputs(workspace).isEmpty()) {
+                LOGGER.info("No Terraform stack in {}, nothing to destroy", workspace);
+                return;
+            }
+        } catch (IOException e) {
+            throw new ISchedulerException("Could not read the Terraform state in " + workspace, e);
         }
 
         try{
             System.out.println("[ignis-cloud] Destroying infrastructure...");
-            executeTerraform(this.workDir, "destroy", "-auto-approve", "-input=false",
+            if (!Files.isDirectory(workspace.resolve(".terraform"))) {
+                executeTerraform(workspace, "init", "-input=false");
+            }
+            executeTerraform(workspace, "destroy", "-auto-approve", "-input=false",
                     "-var", "aws_region=" + region,
-                    "-var", "availability_zone=" + az);
+                    "-var", "availability_zones=" + azsVar());
             LOGGER.info("Destroy completed");
             System.out.println("[ignis-cloud] Infrastructure destroyed.");
         } catch (Exception e){
             LOGGER.error("Failed to destroy Terraform", e);
             throw new ISchedulerException("Failed to destroy Terraform", e);
         } finally {
-            cleanupWorkDir();
+            forgetApply(workspace);
+            holders.release();
             this.workDir = null;
+            this.outputs.clear();
+            this.subnets.clear();
         }
     }
 
-    private void cleanupWorkDir() {
-        if (this.workDir == null || !Files.exists(this.workDir)) return;
-
+    // The workspace (providers, state) is kept for the next provision, which has to apply again
+    private void forgetApply(Path workspace) {
         try {
-            deleteDirectoryRecursively(this.workDir);
-            LOGGER.info("Cleanup completed");
+            JsonNode last = readFingerprints(workspace);
+            writeFingerprints(workspace, last.path("init").asText(null), null);
         } catch (Exception e){
-            LOGGER.error("Failed to cleanup Terraform", e);
+            LOGGER.warn("Could not update the Terraform fingerprint in {}", workspace, e);
         }
     }
-
-    private void printInfrastructureTable() {
-        String vpc    = outputs.getOrDefault("vpc_id",           "N/A");
-        String subnet = outputs.getOrDefault("subnet_id",        "N/A");
-        String sg     = outputs.getOrDefault("sg_id",            "N/A");
-        String bucket = outputs.getOrDefault("jobs_bucket_name", "N/A");
-
-        int col1 = 20;
-        int col2 = Math.max(50, Math.max(Math.max(vpc.length(), subnet.length()),
-                Math.max(sg.length(), bucket.length())) + 2);
-
-        String separator = "+" + "-".repeat(col1 + 2) + "+" + "-".repeat(col2 + 2) + "+";
-        String fmt = "| %-" + col1 + "s | %-" + col2 + "s |";
-
-        System.out.println();
-        System.out.println("[ignis-cloud] Provisioned infrastructure:");
-        System.out.println(separator);
-        System.out.printf((fmt) + "%n", "Resource", "Value");
-        System.out.println(separator);
-        System.out.printf((fmt) + "%n", "VPC ID",           vpc);
-        System.out.printf((fmt) + "%n", "Subnet ID",        subnet);
-        System.out.printf((fmt) + "%n", "Security Group ID", sg);
-        System.out.printf((fmt) + "%n", "S3 Bucket",        bucket);
-        System.out.println(separator);
-        System.out.println();
-    }
 }
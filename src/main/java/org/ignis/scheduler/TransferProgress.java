@@ -0,0 +1,84 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counters shared by the transfer workers plus a periodic console/log report with throughput
+public class TransferProgress implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(TransferProgress.class);
+
+    private final String label;
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger discoveredObjects = new AtomicInteger();
+    private final AtomicLong discoveredBytes = new AtomicLong();
+    private final AtomicInteger completedObjects = new AtomicInteger();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private volatile boolean listingDone = false;
+    private final ScheduledExecutorService reporter;
+
+    public TransferProgress(String label, long reportIntervalSeconds) {
+        this.label = label;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-transfer-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::report, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void discovered(long bytes) {
+        discoveredObjects.incrementAndGet();
+        discoveredBytes.addAndGet(bytes);
+    }
+
+    public void listingFinished() {
+        listingDone = true;
+    }
+
+    public void transferred(long bytes) {
+        transferredBytes.addAndGet(bytes);
+    }
+
+    public void objectCompleted() {
+        completedObjects.incrementAndGet();
+    }
+
+    public int getCompletedObjects() {
+        return completedObjects.get();
+    }
+
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    public double throughputMBps() {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        return transferredBytes.get() / (1024.0 * 1024.0) / seconds;
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT, "%s: %d/%d%s objects, %.1f/%.1f MB, %.1f MB/s",
+                label,
+                completedObjects.get(), discoveredObjects.get(), listingDone ? "" : "+",
+                transferredBytes.get() / (1024.0 * 1024.0), discoveredBytes.get() / (1024.0 * 1024.0),
+                throughputMBps());
+    }
+
+    private void report() {
+        String line = summary();
+        LOGGER.info(line);
+        System.out.println("[ignis-cloud] " + line);
+    }
+
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+    }
+}
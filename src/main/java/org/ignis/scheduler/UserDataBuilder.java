@@ -1,35 +1,171 @@
 package org.ignis.scheduler;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ignis.scheduler.agent.AgentConfig;
+import org.ignis.scheduler.agent.InstanceAgent;
+
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class UserDataBuilder {
 
     private static final String TEMPLATE_RESOURCE_PATH = "scripts/userdata.sh";
+    private static final String POOL_AGENT_RESOURCE_PATH = "scripts/pool-agent.sh";
+    private static final String EXECUTOR_RESOURCE_PATH = "scripts/executor.sh";
+    private static final String BAKE_RESOURCE_PATH = "scripts/bake.sh";
+
+    // Run the job through org.ignis.scheduler.agent.InstanceAgent instead of the bash pipeline
+    private static final boolean INSTANCE_AGENT = Boolean.parseBoolean(
+            System.getenv().getOrDefault("IGNIS_INSTANCE_AGENT", "false") // Default: false
+    );
+    // Inside the job image; by default the directory of the scheduler jars, as installed here
+    private static final String AGENT_CLASSPATH = System.getenv().getOrDefault("IGNIS_AGENT_CLASSPATH", defaultAgentClasspath());
+    private static final String AGENT_JAVA = System.getenv().getOrDefault("IGNIS_AGENT_JAVA", "java");
+    private static final long AGENT_HEARTBEAT_SECONDS = 15;
+
+    // Live job log: how often the instance uploads new output and the largest chunk it uploads
+    private static final long LOG_SHIP_SECONDS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_LOG_SHIP_SECONDS", "5") // Default: 5 s
+    );
+    private static final long LOG_CHUNK_BYTES = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_LOG_CHUNK_MB", "8") // Default: 8 MiB
+    ) * 1024 * 1024;
 
-    public String buildUserData(String region, String jobName, String jobId, String bucket, String bundleKey, String image, String command) throws ISchedulerException{
-        String template = loadTemplate();
+    // Large payload files downloaded at once during boot (each one is already a multipart transfer)
+    private static final int FETCH_PARALLELISM = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_BOOT_FETCH_PARALLELISM", "4") // Default: 4
+    );
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JobKeyLayout keyLayout = JobKeyLayout.fromEnv();
+
+    // bakedImageDigest: digest of image already present in the AMI (see AmiBaker), null to always pull
+    // attempt: 0, or how many times the job was relaunched after a spot interruption
+    public String buildUserData(String region, String jobName, String jobId, String bucket, String manifestKey, String image, String command,
+                                Map<String, String> driverEnv, String bakedImageDigest, int attempt) throws ISchedulerException{
+        String template = loadTemplate(TEMPLATE_RESOURCE_PATH);
 
         Map<String, String> vars = new HashMap<>();
         vars.put("JOB_NAME", shellEscapeSingleQuotes(jobName));
         vars.put("JOB_ID", shellEscapeSingleQuotes(jobId));
+        vars.put("JOB_ROOT", shellEscapeSingleQuotes(keyLayout.root(jobId)));
+        vars.put("KEY_LAYOUT", keyLayout.envValue());
         vars.put("BUCKET", shellEscapeSingleQuotes(bucket));
-        vars.put("BUNDLE_KEY", shellEscapeSingleQuotes(bundleKey));
+        vars.put("MANIFEST_KEY", shellEscapeSingleQuotes(manifestKey));
         vars.put("IMAGE", shellEscapeSingleQuotes(image));
+        vars.put("IMAGE_DIGEST", shellEscapeSingleQuotes(bakedImageDigest));
         vars.put("CMD", shellEscapeSingleQuotes(command));
         vars.put("REGION", region);
+        vars.put("LOG_SHIP_SECONDS", String.valueOf(Math.max(1, LOG_SHIP_SECONDS)));
+        vars.put("FETCH_PARALLELISM", String.valueOf(Math.max(1, FETCH_PARALLELISM)));
+        vars.put("LOG_CHUNK_BYTES", String.valueOf(Math.max(1024 * 1024, LOG_CHUNK_BYTES)));
+        vars.put("ATTEMPT", String.valueOf(attempt));
+        vars.put("LOG_SEQ_START", String.valueOf(S3Operations.firstLogSequence(attempt)));
+
+        // Extra "-e" flags for the driver container, one continuation line each
+        StringBuilder env = new StringBuilder();
+        driverEnv.forEach((k, v) -> env.append("  -e '").append(shellEscapeSingleQuotes(k + "=" + v)).append("' \\\n"));
+        vars.put("DRIVER_ENV", env.toString());
+
+        // Empty unless the agent is enabled; JSON travels base64 encoded so it needs no quoting
+        String agentConfig = "";
+        if (INSTANCE_AGENT) {
+            AgentConfig config = new AgentConfig(region, bucket, jobId, jobName, manifestKey, image, command, driverEnv,
+                    Math.max(1, LOG_SHIP_SECONDS), Math.max(1024 * 1024, LOG_CHUNK_BYTES), AGENT_HEARTBEAT_SECONDS, attempt);
+            try {
+                agentConfig = Base64.getEncoder().encodeToString(mapper.writeValueAsBytes(config));
+            } catch (Exception e) {
+                throw new ISchedulerException("Failed to serialize the agent configuration", e);
+            }
+        }
+        vars.put("AGENT_CONFIG", agentConfig);
+        vars.put("AGENT_CLASSPATH", shellEscapeSingleQuotes(AGENT_CLASSPATH));
+        vars.put("AGENT_JAVA", shellEscapeSingleQuotes(AGENT_JAVA));
+
+        return renderTemplate(template, vars);
+    }
+
+    private static String defaultAgentClasspath() {
+        try {
+            Path jar = Path.of(InstanceAgent.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return jar.getParent() + "/*";
+        } catch (Exception e) {
+            return "/opt/ignis/lib/java/*";
+        }
+    }
+
+    // Executor node of an EC2 cluster. index is empty when the instance should use its ami-launch-index.
+    public String buildExecutorUserData(String region, String bucket, String jobId, String cluster, String image, String index,
+                                        String publicKey, Map<String, String> env, List<String> args, int readyPort) throws ISchedulerException {
+        String template = loadTemplate(EXECUTOR_RESOURCE_PATH);
+
+        // The env file travels base64 encoded so values never need shell quoting
+        StringBuilder envFile = new StringBuilder();
+        env.forEach((k, v) -> envFile.append(k).append('=').append(v == null ? "" : v.trim()).append('\n'));
+        StringBuilder quotedArgs = new StringBuilder();
+        for (String arg : args) {
+            quotedArgs.append(" '").append(shellEscapeSingleQuotes(arg)).append("'");
+        }
+
+        Map<String, String> vars = new HashMap<>();
+        vars.put("REGION", region);
+        vars.put("BUCKET", shellEscapeSingleQuotes(bucket));
+        vars.put("JOB_ID", shellEscapeSingleQuotes(jobId));
+        vars.put("JOB_ROOT", shellEscapeSingleQuotes(keyLayout.root(jobId)));
+        vars.put("CLUSTER", shellEscapeSingleQuotes(cluster));
+        vars.put("IMAGE", shellEscapeSingleQuotes(image));
+        vars.put("INDEX", shellEscapeSingleQuotes(index));
+        vars.put("PUBLIC_KEY", shellEscapeSingleQuotes(publicKey));
+        vars.put("ENV_B64", Base64.getEncoder().encodeToString(envFile.toString().getBytes(StandardCharsets.UTF_8)));
+        vars.put("ARGS", quotedArgs.toString().trim());
+        vars.put("READY_PORT", String.valueOf(readyPort));
+
+        return renderTemplate(template, vars);
+    }
+
+    // Idle warm pool instance: prepares docker + image and waits for a job script under pool/<iid>/
+    public String buildPoolAgentUserData(String region, String bucket, String image, long idleTtlSeconds) throws ISchedulerException {
+        String template = loadTemplate(POOL_AGENT_RESOURCE_PATH);
+
+        Map<String, String> vars = new HashMap<>();
+        vars.put("BUCKET", shellEscapeSingleQuotes(bucket));
+        vars.put("IMAGE", shellEscapeSingleQuotes(image));
+        vars.put("REGION", region);
+        vars.put("IDLE_TTL_SECONDS", String.valueOf(idleTtlSeconds));
+
+        return renderTemplate(template, vars);
+    }
+
+    // AMI builder: installs dependencies, pulls the images and reports their digests under bake/<id>/
+    public String buildBakeUserData(String region, String bucket, String bakeId, List<String> images, long maxSeconds) throws ISchedulerException {
+        String template = loadTemplate(BAKE_RESOURCE_PATH);
+
+        StringBuilder quotedImages = new StringBuilder();
+        for (String image : images) {
+            quotedImages.append(" '").append(shellEscapeSingleQuotes(image)).append("'");
+        }
+
+        Map<String, String> vars = new HashMap<>();
+        vars.put("REGION", region);
+        vars.put("BUCKET", shellEscapeSingleQuotes(bucket));
+        vars.put("BAKE_ID", shellEscapeSingleQuotes(bakeId));
+        vars.put("IMAGES", quotedImages.toString().trim());
+        vars.put("MAX_SECONDS", String.valueOf(maxSeconds));
 
         return renderTemplate(template, vars);
     }
 
-    private String loadTemplate() throws ISchedulerException {
-        try(InputStream is = getClass().getClassLoader().getResourceAsStream(TEMPLATE_RESOURCE_PATH)){
-            if (is == null) throw new ISchedulerException("Resource not found: " + TEMPLATE_RESOURCE_PATH);
+    private String loadTemplate(String path) throws ISchedulerException {
+        try(InputStream is = getClass().getClassLoader().getResourceAsStream(path)){
+            if (is == null) throw new ISchedulerException("Resource not found: " + path);
             return new String(is.readAllBytes(), StandardCharsets.UTF_8);
         } catch (Exception e){
-            throw new ISchedulerException("Failed to load resource: " + TEMPLATE_RESOURCE_PATH, e);
+            throw new ISchedulerException("Failed to load resource: " + path, e);
         }
     }
 
@@ -0,0 +1,182 @@
+package org.ignis.scheduler;
+
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.model.InstanceType;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Pre-launched instances that already have docker and the job image, keyed by instance type and
+// image. A job claims one and hands it its userdata through pool/<iid>/job.sh (the idle agent polls
+// that key), skipping RunInstances, boot and pull. Instances are single use: the job shuts them
+// down when it ends and the pool is topped up in the background. Idle ones are reaped after
+// IGNIS_WARM_POOL_IDLE_TTL_SECONDS. Disabled unless IGNIS_WARM_POOL_SIZE > 0.
+public class WarmPool {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(WarmPool.class);
+
+    private static final String POOL_PREFIX = "pool/";
+    private static final int POOL_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("IGNIS_WARM_POOL_SIZE", "0") // Default: disabled
+    );
+    private static final long IDLE_TTL_MS = Long.parseLong(
+            System.getenv().getOrDefault("IGNIS_WARM_POOL_IDLE_TTL_SECONDS", "600") // Default: 10 mins
+    ) * 1000;
+
+    public record PoolKey(InstanceType instanceType, String image) { }
+
+    // Everything RunInstances needs besides the userdata, captured from the job that filled the pool.
+    // subnets is AZ -> subnet: a pooled instance goes to whichever AZ has capacity for its type.
+    public record LaunchSpec(String bucket, String ami, Map<String, String> subnets, String sg, String iamInstanceProfile) { }
+
+    private record PooledInstance(String instanceId, long launchedAt) { }
+
+    private final EC2Operations ec2;
+    private final S3Operations s3;
+    private final UserDataBuilder userDataBuilder;
+    private final String region;
+    private final Map<PoolKey, Deque<PooledInstance>> idle = new HashMap<>();
+    private final Map<PoolKey, Integer> launching = new HashMap<>();
+    private final ExecutorService launcher = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "ignis-warm-pool");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ignis-warm-pool-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public WarmPool(EC2Operations ec2, S3Operations s3, UserDataBuilder userDataBuilder, String region) {
+        this.ec2 = ec2;
+        this.s3 = s3;
+        this.userDataBuilder = userDataBuilder;
+        this.region = region;
+        if (isEnabled()) {
+            long period = Math.max(10_000, IDLE_TTL_MS / 4);
+            reaper.scheduleWithFixedDelay(this::reapExpired, period, period, TimeUnit.MILLISECONDS);
+            LOGGER.info("Warm pool enabled: {} instances per type/image, idle TTL {} s", POOL_SIZE, IDLE_TTL_MS / 1000);
+        }
+    }
+
+    public boolean isEnabled() {
+        return POOL_SIZE > 0;
+    }
+
+    // Returns a live idle instance for the key, if any. Instances that died while idle are dropped.
+    public synchronized Optional<String> claim(PoolKey key) {
+        Deque<PooledInstance> instances = idle.get(key);
+        while (instances != null && !instances.isEmpty()) {
+            PooledInstance candidate = instances.pollFirst();
+            try {
+                String state = ec2.getInstanceState(candidate.instanceId());
+                if ("running".equals(state) || "pending".equals(state)) {
+                    LOGGER.info("Claimed warm instance {} ({} {}, state {})", candidate.instanceId(),
+                            key.instanceType(), key.image(), state);
+                    return Optional.of(candidate.instanceId());
+                }
+                LOGGER.info("Dropping pooled instance {} in state {}", candidate.instanceId(), state);
+            } catch (ISchedulerException e) {
+                LOGGER.warn("Could not check pooled instance {}, skipping it", candidate.instanceId(), e);
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Hands the job userdata to a claimed instance; the agent runs it as soon as it sees the key
+    public void dispatch(String bucket, String instanceId, String instanceName, String userData) throws ISchedulerException {
+        s3.putString(bucket, POOL_PREFIX + instanceId + "/job.sh", userData, "text/x-shellscript");
+        try {
+            ec2.tagInstanceName(instanceId, instanceName);
+        } catch (ISchedulerException e) {
+            LOGGER.warn("Could not retag pooled instance {}", instanceId, e);
+        }
+    }
+
+    // Launches whatever is missing to keep POOL_SIZE instances idle or booting for the key
+    public synchronized void replenish(PoolKey key, LaunchSpec spec) {
+        if (!isEnabled()) return;
+        int available = idle.getOrDefault(key, new ArrayDeque<>()).size() + launching.getOrDefault(key, 0);
+        int missing = POOL_SIZE - available;
+        if (missing <= 0) return;
+
+        launching.merge(key, missing, Integer::sum);
+        for (int i = 0; i < missing; i++) {
+            launcher.execute(() -> launchOne(key, spec));
+        }
+    }
+
+    private void launchOne(PoolKey key, LaunchSpec spec) {
+        String instanceId = null;
+        try {
+            String userData = userDataBuilder.buildPoolAgentUserData(region, spec.bucket(), key.image(), IDLE_TTL_MS / 1000);
+            List<CapacityLauncher.Candidate> candidates = spec.subnets().keySet().stream()
+                    .map(az -> new CapacityLauncher.Candidate(key.instanceType(), az))
+                    .toList();
+            instanceId = ec2.launchInstances("ignis-pool-" + key.instanceType(), userData, spec.ami(), spec.subnets(),
+                    spec.sg(), spec.iamInstanceProfile(), 1, Map.of(), candidates).instanceIds().get(0);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to launch warm pool instance for {}", key, e);
+        }
+        synchronized (this) {
+            launching.merge(key, -1, Integer::sum);
+            if (instanceId != null) {
+                idle.computeIfAbsent(key, k -> new ArrayDeque<>())
+                        .addLast(new PooledInstance(instanceId, System.currentTimeMillis()));
+                LOGGER.debug("Warm instance {} added to pool for {}", instanceId, key);
+            }
+            notifyAll();
+        }
+    }
+
+    private void reapExpired() {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<PooledInstance> instances : idle.values()) {
+                instances.removeIf(p -> {
+                    if (now - p.launchedAt() < IDLE_TTL_MS) return false;
+                    expired.add(p.instanceId());
+                    return true;
+                });
+            }
+        }
+        if (expired.isEmpty()) return;
+        LOGGER.info("Reaping {} idle warm instances", expired.size());
+        try {
+            ec2.terminateInstances(expired);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to reap idle warm instances {}", expired, e);
+        }
+    }
+
+    // Terminates every idle instance; the stack can't be destroyed while they sit in its subnet
+    public void drain() {
+        List<String> all = new ArrayList<>();
+        synchronized (this) {
+            // Launches in flight would land in the subnet after the drain, so wait for them first
+            long deadline = System.currentTimeMillis() + 120_000;
+            while (launching.values().stream().anyMatch(n -> n > 0) && System.currentTimeMillis() < deadline) {
+                try {
+                    wait(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            idle.values().forEach(instances -> instances.forEach(p -> all.add(p.instanceId())));
+            idle.clear();
+        }
+        if (all.isEmpty()) return;
+        System.out.println("[ignis-cloud] Terminating " + all.size() + " warm pool instances...");
+        try {
+            ec2.terminateInstances(all);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to terminate warm pool instances {}", all, e);
+        }
+    }
+
+    public synchronized int idleCount() {
+        return idle.values().stream().mapToInt(Deque::size).sum();
+    }
+}
@@ -0,0 +1,29 @@
+package org.ignis.scheduler.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+// What the instance agent needs to run a job. UserDataBuilder writes it into the userdata; the
+// instance id and the boot time are only known on the instance and come as environment variables.
+// attempt counts relaunches of the job after spot interruptions (0 for the first instance).
+public record AgentConfig(
+        String region,
+        String bucket,
+        String jobId,
+        String jobName,
+        String manifestKey,
+        String image,
+        String command,
+        Map<String, String> driverEnv,
+        long logShipSeconds,
+        long logChunkBytes,
+        long heartbeatSeconds,
+        int attempt
+) {
+    public static AgentConfig load(Path file) throws IOException {
+        return new ObjectMapper().readValue(file.toFile(), AgentConfig.class);
+    }
+}
@@ -0,0 +1,122 @@
+package org.ignis.scheduler.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ignis.scheduler.S3Operations;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// status.json as the agent sees the job: the usual state/rc/start/end fields (so the scheduler
+// reads it like the userdata one) plus the current phase and how long each phase took. It is only
+// rewritten when the phase changes; liveness goes to heartbeat.json, so the watcher's conditional
+// polls keep getting 304s while the job runs. After a spot interruption notice the state is
+// INTERRUPTED for good: the scheduler is already relaunching the job, so nothing is written after it.
+public class AgentStatus implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AgentStatus.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final S3Operations s3;
+    private final String bucket;
+    private final String jobId;
+    private final String instanceId;
+    private final String start = now();
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private final ScheduledExecutorService heartbeat;
+    private volatile String phase = "boot";
+    private volatile String message = null;
+    private volatile boolean interrupted = false;
+
+    public AgentStatus(S3Operations s3, String bucket, String jobId, String instanceId, long heartbeatSeconds) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.jobId = jobId;
+        this.instanceId = instanceId;
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-agent-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, heartbeatSeconds);
+        heartbeat.scheduleWithFixedDelay(this::beat, 0, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void phase(String phase) {
+        this.phase = phase;
+        if (!interrupted) write("RUNNING", null);
+    }
+
+    public synchronized void timing(String name, long millis) {
+        timings.put(name, millis);
+    }
+
+    public void message(String message) {
+        this.message = message;
+    }
+
+    public synchronized void finish(int rc) {
+        phase = "finished";
+        if (!interrupted) write(rc == 0 ? "FINISHED" : "FAILED", rc);
+    }
+
+    public synchronized void interrupted(int attempt, String notice) {
+        interrupted = true;
+        message = "spot interruption: " + notice;
+        write("INTERRUPTED", null, attempt);
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    private void write(String state, Integer rc) {
+        write(state, rc, null);
+    }
+
+    private void write(String state, Integer rc, Integer attempt) {
+        ObjectNode status = mapper.createObjectNode();
+        status.put("state", state);
+        if (attempt != null) status.put("attempt", attempt);
+        if (rc != null) status.put("rc", rc);
+        status.put("phase", phase);
+        status.put("start", start);
+        if (rc != null) status.put("end", now());
+        status.put("instanceId", instanceId);
+        if (message != null) status.put("message", message);
+        ObjectNode t = status.putObject("timings");
+        timings.forEach(t::put);
+        try {
+            s3.putString(bucket, s3.jobStatusKey(jobId), mapper.writeValueAsString(status), "application/json");
+        } catch (Exception e) {
+            LOGGER.warn("Could not write status {} ({})", state, e.getMessage());
+        }
+    }
+
+    private void beat() {
+        ObjectNode beat = mapper.createObjectNode();
+        beat.put("instanceId", instanceId);
+        beat.put("phase", phase);
+        beat.put("time", now());
+        try {
+            s3.putString(bucket, s3.jobHeartbeatKey(jobId), mapper.writeValueAsString(beat), "application/json");
+        } catch (Exception e) {
+            LOGGER.debug("Heartbeat failed", e);
+        }
+    }
+
+    private static String now() {
+        return Instant.now().truncatedTo(ChronoUnit.SECONDS).toString();
+    }
+
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+    }
+}
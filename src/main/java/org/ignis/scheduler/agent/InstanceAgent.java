@@ -0,0 +1,380 @@
+package org.ignis.scheduler.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.ignis.scheduler.*;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.regions.Region;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// On-instance side of a job when IGNIS_INSTANCE_AGENT is set. userdata.sh only installs docker,
+// pulls the image and starts this class from the scheduler jars inside that image; everything the
+// bash pipeline did afterwards happens here:
+//  - payload: the bundle is extracted while it streams from S3, next to the ranged downloads of the
+//    large files and the job meta restore
+//  - readiness: the backend socket is detected with a WatchService on the sockets directory
+//  - results: output and payload directories are uploaded in parallel by the transfer engine
+//  - status.json carries the phase and per-phase timings, heartbeat.json shows the agent is alive
+//  - spot: on the interruption notice the driver is stopped, the status turns INTERRUPTED (unless the
+//    job had already finished) and the log and partial results are saved under attempts/<n>/ while
+//    the scheduler relaunches the job
+// It runs in a container with the host paths it needs mounted at the same locations.
+public class InstanceAgent {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(InstanceAgent.class);
+
+    private static final Path LOG_FILE = Path.of("/var/log/ignis/out.txt");
+    private static final Path EXTRACT_ROOT = Path.of("/");
+    private static final Path DFS = Path.of("/ignis/dfs");
+    private static final String DRIVER_SCRIPT = "scripts/driver.sh";
+    private static final String DRIVER_GO_FILE = ".driver-go";
+    private static final long PAYLOAD_WAIT_MS = 1800 * 1000;
+    private static final long BACKEND_WAIT_MS = 30 * 1000;
+    private static final int SPOT_STOP_SECONDS = 10;
+
+    private final AgentConfig config;
+    private final String instanceId;
+    private final long bootMs;
+    private final S3Operations s3;
+    private final DockerClient docker = new DockerClient("/var/run/docker.sock");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path sockets;
+    // Spot notice against the driver's exit: whichever takes the lock first decides how the job ends
+    private String driver = null;
+    private boolean driverExited = false;
+    private boolean spotNoticed = false;
+    private final CompletableFuture<Integer> driverRc = new CompletableFuture<>();
+    private final CompletableFuture<Void> spotHandled = new CompletableFuture<>();
+
+    public InstanceAgent(AgentConfig config, String instanceId, long bootMs) {
+        this.config = config;
+        this.instanceId = instanceId;
+        this.bootMs = bootMs;
+        this.s3 = new S3Operations(new AwsFactory(Region.of(config.region())).createS3Client());
+        this.sockets = Path.of("/opt/ignis/jobs", config.jobId(), "sockets");
+    }
+
+    public static void main(String[] args) {
+        int rc;
+        try {
+            String instanceId = System.getenv().getOrDefault("IGNIS_AGENT_INSTANCE_ID", "unknown");
+            long bootMs = Long.parseLong(System.getenv().getOrDefault("IGNIS_AGENT_BOOT_MS", "0"));
+            rc = new InstanceAgent(AgentConfig.load(Path.of(args[0])), instanceId, bootMs).run();
+        } catch (Exception e) {
+            LOGGER.error("Instance agent failed", e);
+            rc = 1;
+        }
+        System.exit(rc);
+    }
+
+    public int run() throws IOException {
+        Files.createDirectories(LOG_FILE.getParent());
+        long started = System.currentTimeMillis();
+        try (AgentStatus status = new AgentStatus(s3, config.bucket(), config.jobId(), instanceId, config.heartbeatSeconds())) {
+            int rc;
+            // Closing the shipper uploads the end of the log, which has to be in S3 before the final status
+            try (LogShipper logs = new LogShipper(s3, config.bucket(), config.jobId(), LOG_FILE,
+                    config.logShipSeconds(), config.logChunkBytes(), S3Operations.firstLogSequence(config.attempt()))) {
+                SpotNoticeWatcher spot = new SpotNoticeWatcher(notice -> onSpotNotice(status, logs, notice));
+                try {
+                    rc = runJob(status, started);
+                } finally {
+                    spot.close();
+                }
+            }
+            if (!status.isInterrupted()) uploadOutput();
+            status.finish(rc);
+            return rc;
+        }
+    }
+
+    private int runJob(AgentStatus status, long started) {
+        int rc = 1;
+        if (bootMs > 0) status.timing("bootMs", started - bootMs);
+        try {
+            status.phase("payload");
+            long t = System.currentTimeMillis();
+            fetchPayload();
+            status.timing("payloadMs", milestone("payload ready", t));
+
+            status.phase("starting");
+            t = System.currentTimeMillis();
+            String container = startDriver();
+            boolean noticed;
+            synchronized (this) {
+                driver = container;
+                noticed = spotNoticed;
+            }
+            if (noticed) docker.stopContainer(container, 10); // The notice came while it was starting
+            if (!awaitBackend(container)) {
+                status.message("backend did not start");
+                docker.stopContainer(container, 10);
+            }
+            status.timing("readyMs", milestone("backend ready", t));
+
+            status.phase("running");
+            t = System.currentTimeMillis();
+            rc = docker.waitContainer(container);
+            driverDone(rc);
+            status.timing("runMs", milestone("driver exited with rc=" + rc, t));
+            removeQuietly(container);
+
+            if (!status.isInterrupted()) {
+                status.phase("uploading");
+                t = System.currentTimeMillis();
+                uploadResults(s3.jobResultsPrefix(config.jobId()));
+                status.timing("uploadMs", milestone("results uploaded", t));
+            }
+        } catch (Exception e) {
+            LOGGER.error("Job {} failed on the instance", config.jobId(), e);
+            status.message(e.getMessage());
+            appendLog("[agent] ERROR: " + e.getMessage());
+            rc = rc == 0 ? 1 : rc;
+        } finally {
+            driverDone(rc);
+        }
+        status.timing("totalMs", System.currentTimeMillis() - started);
+        return rc;
+    }
+
+    // From here on a notice leaves the job's own outcome alone. If one came first, its handler has
+    // stopped the driver and decides how the job ends, so this waits for it.
+    private void driverDone(int rc) {
+        boolean noticed;
+        synchronized (this) {
+            driverExited = true;
+            noticed = spotNoticed;
+        }
+        driverRc.complete(rc);
+        if (noticed) spotHandled.join();
+    }
+
+    // About two minutes left. The driver is stopped first, so it is never running while the relaunched
+    // one starts; if it had finished by then (rc 0) the job stands as FINISHED. Otherwise the status goes
+    // next so the scheduler starts the relaunch right away, then the log and whatever results there
+    // are, for the next attempt or for the user to look at.
+    private void onSpotNotice(AgentStatus status, LogShipper logs, String notice) {
+        String container;
+        synchronized (this) {
+            if (driverExited) return; // The job ended on its own: that status stands
+            spotNoticed = true;
+            container = driver;
+        }
+        try {
+            boolean finished = false;
+            if (container != null) {
+                appendLog("[agent] spot interruption notice, stopping the driver");
+                try {
+                    docker.stopContainer(container, SPOT_STOP_SECONDS);
+                    finished = driverRc.get(SPOT_STOP_SECONDS + 30, TimeUnit.SECONDS) == 0;
+                } catch (Exception e) {
+                    LOGGER.warn("Could not stop the driver on the spot notice: {}", e.getMessage());
+                }
+            }
+            if (finished) {
+                appendLog("[agent] spot interruption notice, but the job had already finished");
+                return;
+            }
+            status.interrupted(config.attempt(), notice);
+            appendLog("[agent] spot interruption notice, the job will be relaunched");
+            logs.flush();
+            try {
+                uploadResults(s3.jobAttemptResultsPrefix(config.jobId(), config.attempt()));
+            } catch (Exception e) {
+                LOGGER.warn("Could not save the partial results: {}", e.getMessage());
+            }
+        } finally {
+            spotHandled.complete(null);
+        }
+    }
+
+    private void fetchPayload() throws Exception {
+        PayloadManifest manifest = PayloadManifest.parse(awaitManifest());
+        S3TransferEngine transfers = s3.getTransferEngine();
+        List<CompletableFuture<?>> steps = new ArrayList<>();
+
+        // The bundle is read once, straight into the extractor
+        steps.add(transfers.supplyAsync(() -> {
+            try (InputStream in = s3.openObject(config.bucket(), manifest.bundleKey())) {
+                TarGzReader.Summary summary = TarGzReader.extract(in, EXTRACT_ROOT);
+                LOGGER.info("Bundle extracted: {} files, {} bytes", summary.files(), summary.bytes());
+                return summary;
+            }
+        }));
+        steps.add(transfers.supplyAsync(() -> {
+            String meta = s3.getString(config.bucket(), s3.jobMetaKey(config.jobId()));
+            if (meta == null) throw new ISchedulerException("job-meta.json not found");
+            Path target = Path.of("/var/tmp/ignis-cloud/jobs", config.jobId() + ".json");
+            Files.createDirectories(target.getParent());
+            Files.writeString(target, meta);
+            return target;
+        }));
+        try (TransferProgress progress = new TransferProgress("Downloading payload", 5)) {
+            for (LargeFile file : manifest.files()) {
+                Path target = EXTRACT_ROOT.resolve(file.relativePath());
+                Files.createDirectories(target.getParent());
+                progress.discovered(file.size());
+                steps.add(transfers.downloadObject(config.bucket(), file.s3Key(), file.size(), target, progress));
+            }
+            progress.listingFinished();
+            S3Operations.await(CompletableFuture.allOf(steps.toArray(CompletableFuture[]::new)), "Could not fetch the payload");
+        }
+    }
+
+    private String awaitManifest() throws Exception {
+        long deadline = System.currentTimeMillis() + PAYLOAD_WAIT_MS;
+        while (true) {
+            String manifest = s3.getString(config.bucket(), config.manifestKey());
+            if (manifest != null) return manifest;
+            if (System.currentTimeMillis() > deadline) {
+                throw new ISchedulerException("payload not ready after " + PAYLOAD_WAIT_MS / 1000 + "s");
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    private String startDriver() throws Exception {
+        String jobId = config.jobId();
+        Files.createDirectories(sockets);
+        Files.deleteIfExists(sockets.resolve(DRIVER_GO_FILE));
+
+        String script;
+        try (InputStream in = InstanceAgent.class.getClassLoader().getResourceAsStream(DRIVER_SCRIPT)) {
+            if (in == null) throw new ISchedulerException("Resource not found: " + DRIVER_SCRIPT);
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        ObjectNode container = mapper.createObjectNode();
+        container.put("Image", config.image());
+        ArrayNode env = container.putArray("Env");
+        env.add("IGNIS_SCHEDULER_NAME=Cloud");
+        env.add("IGNIS_SCHEDULER_URL=cloud://aws");
+        env.add("IGNIS_JOB_ID=" + jobId);
+        env.add("IGNIS_SCHEDULER_ENV_JOB=" + jobId);
+        env.add("IGNIS_JOB_DIR=/opt/ignis/jobs/" + jobId);
+        env.add("IGNIS_SCHEDULER_ENV_CONTAINER=" + instanceId);
+        env.add("IGNIS_HOME=/opt/ignis");
+        env.add("IGNIS_JOB_SOCKETS=" + sockets);
+        env.add("IGNIS_WDIR=/ignis/dfs/payload");
+        env.add("IGNIS_JOBS_BUCKET=" + config.bucket());
+        env.add("IGNIS_AWS_REGION=" + config.region());
+        env.add("IGNIS_DRIVER_CMD=" + config.command());
+        config.driverEnv().forEach((k, v) -> env.add(k + "=" + v));
+        container.putArray("Cmd").add("/bin/bash").add("-lc").add(script);
+
+        ObjectNode host = container.putObject("HostConfig");
+        host.put("NetworkMode", "host");
+        host.putArray("Binds")
+                .add("/ignis/dfs:/ignis/dfs")
+                .add("/var/tmp/ignis-cloud:/var/tmp/ignis-cloud")
+                .add("/var/run/docker.sock:/var/run/docker.sock")
+                .add(sockets + ":" + sockets)
+                .add("/usr/bin/docker:/usr/bin/docker")
+                .add(LOG_FILE.getParent() + ":" + LOG_FILE.getParent());
+
+        String id = docker.createContainer(jobId + "-driver", container);
+        docker.startContainer(id);
+        return id;
+    }
+
+    // Waits for the backend socket and lets the driver go. Returns false if it never appeared.
+    private boolean awaitBackend(String container) throws Exception {
+        long deadline = System.currentTimeMillis() + BACKEND_WAIT_MS;
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            sockets.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            // Anything created before the watch was registered
+            boolean ready = hasSocket();
+            while (!ready && System.currentTimeMillis() < deadline) {
+                WatchKey key = watcher.poll(500, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    ready = key.pollEvents().stream()
+                            .anyMatch(e -> e.context() instanceof Path p && p.toString().endsWith(".sock"));
+                    key.reset();
+                } else if (!docker.inspectContainer(container).path("State").path("Running").asBoolean(false)) {
+                    return true; // The container already failed and logged why; its exit code is the result
+                }
+            }
+            if (!ready) {
+                appendLog("[agent] ERROR: socket never appeared after " + BACKEND_WAIT_MS / 1000 + "s");
+                return false;
+            }
+        }
+        Files.createFile(sockets.resolve(DRIVER_GO_FILE));
+        return true;
+    }
+
+    private boolean hasSocket() throws IOException {
+        try (Stream<Path> entries = Files.list(sockets)) {
+            return entries.anyMatch(p -> p.getFileName().toString().endsWith(".sock"));
+        }
+    }
+
+    // /ignis/dfs/output goes to <results>, every payload directory to <results><dir>/, all at once
+    private void uploadResults(String results) throws Exception {
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
+        queueUploads(DFS.resolve("output"), results, uploads);
+        Path payload = DFS.resolve("payload");
+        if (Files.isDirectory(payload)) {
+            try (Stream<Path> dirs = Files.list(payload)) {
+                for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                    queueUploads(dir, results + dir.getFileName() + "/", uploads);
+                }
+            }
+        }
+        S3Operations.await(CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)), "Could not upload the results");
+        LOGGER.info("Uploaded {} result files", uploads.size());
+    }
+
+    private void uploadOutput() {
+        try {
+            S3Operations.await(s3.getTransferEngine().uploadFile(config.bucket(), s3.jobOutputKey(config.jobId()),
+                    LOG_FILE, Files.size(LOG_FILE)), "Could not upload out.txt");
+        } catch (Exception e) {
+            LOGGER.warn("Could not upload out.txt: {}", e.getMessage());
+        }
+    }
+
+    private void queueUploads(Path dir, String prefix, List<CompletableFuture<String>> uploads) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        S3TransferEngine transfers = s3.getTransferEngine();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String key = prefix + dir.relativize(file).toString().replace('\\', '/');
+                uploads.add(transfers.uploadFile(config.bucket(), key, file, Files.size(file)));
+            }
+        }
+    }
+
+    private long milestone(String what, long since) {
+        long elapsed = System.currentTimeMillis() - since;
+        appendLog(String.format("[agent] %s in %.1f s", what, elapsed / 1000.0));
+        return elapsed;
+    }
+
+    // Agent milestones go to the job log too, so they show up in the streamed output
+    private void appendLog(String line) {
+        LOGGER.info(line);
+        try {
+            Files.writeString(LOG_FILE, line + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOGGER.debug("Could not write to {}", LOG_FILE, e);
+        }
+    }
+
+    private void removeQuietly(String container) {
+        try {
+            docker.removeContainer(container, true);
+        } catch (ISchedulerException e) {
+            LOGGER.debug("Could not remove {}", container, e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.ignis.scheduler.agent;
+
+import org.ignis.scheduler.ISchedulerException;
+import org.ignis.scheduler.S3Operations;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Same live log format as the userdata shipper: the new bytes of the job output are uploaded
+// every few seconds as numbered chunks under jobs/<id>/logs/, which JobLogFollower tails.
+// The offset only moves after a chunk is stored, and close() uploads whatever is left.
+// Numbering starts at firstSequence (see S3Operations.firstLogSequence) on relaunched jobs.
+public class LogShipper implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(LogShipper.class);
+
+    private final S3Operations s3;
+    private final String bucket;
+    private final String jobId;
+    private final Path file;
+    private final int chunkBytes;
+    private final ScheduledExecutorService shipper;
+    private long offset = 0;
+    private long sequence = 0;
+
+    public LogShipper(S3Operations s3, String bucket, String jobId, Path file, long intervalSeconds, long chunkBytes,
+                      long firstSequence) {
+        this.s3 = s3;
+        this.sequence = firstSequence;
+        this.bucket = bucket;
+        this.jobId = jobId;
+        this.file = file;
+        this.chunkBytes = (int) Math.min(Integer.MAX_VALUE, chunkBytes);
+        this.shipper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-log-shipper");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, intervalSeconds);
+        shipper.scheduleWithFixedDelay(this::shipQuietly, interval, interval, TimeUnit.SECONDS);
+    }
+
+    // Uploads everything written so far, now
+    public void flush() {
+        shipQuietly();
+    }
+
+    private void shipQuietly() {
+        try {
+            ship();
+        } catch (IOException | ISchedulerException e) {
+            LOGGER.warn("Log upload failed, retrying later: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void ship() throws IOException, ISchedulerException {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (size <= offset) return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (size > offset) {
+                ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkBytes, size - offset));
+                while (chunk.hasRemaining() && channel.read(chunk, offset + chunk.position()) > 0) { }
+                s3.putBytes(bucket, s3.jobLogChunkKey(jobId, sequence), chunk.array());
+                offset += chunk.capacity();
+                sequence++;
+            }
+        }
+    }
+
+    // Stops the periodic upload and ships the rest of the file; a failed attempt is retried once
+    @Override
+    public void close() {
+        shipper.shutdown();
+        try {
+            shipper.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ship();
+                return;
+            } catch (IOException | ISchedulerException e) {
+                LOGGER.warn("Could not upload the end of the log: {}", e.getMessage());
+            }
+        }
+    }
+}
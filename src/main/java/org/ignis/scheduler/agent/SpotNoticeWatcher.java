@@ -0,0 +1,87 @@
+package org.ignis.scheduler.agent;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Polls the instance metadata for the spot interruption notice (spot/instance-action answers 404
+// until EC2 decides to take the instance back, about two minutes before it does) and calls the
+// handler once with the notice. On an on-demand instance it stops after the first look.
+public class SpotNoticeWatcher implements Closeable {
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(SpotNoticeWatcher.class);
+
+    private static final String IMDS = "http://169.254.169.254/latest/";
+    private static final long POLL_SECONDS = 5;
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final Consumer<String> handler;
+    private final ScheduledExecutorService poller;
+    private Boolean spot = null;
+
+    public SpotNoticeWatcher(Consumer<String> handler) {
+        this.handler = handler;
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ignis-agent-spot");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(this::check, 0, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void check() {
+        try {
+            String token = token();
+            if (spot == null) {
+                spot = "spot".equals(get("meta-data/instance-life-cycle", token));
+                if (!spot) {
+                    poller.shutdown();
+                    return;
+                }
+                LOGGER.info("Spot instance, watching for the interruption notice");
+            }
+            String notice = get("meta-data/spot/instance-action", token);
+            if (notice != null) {
+                LOGGER.warn("Spot interruption notice: {}", notice);
+                poller.shutdown();
+                handler.accept(notice);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Instance metadata check failed", e);
+        }
+    }
+
+    // IMDSv2 session token; null falls back to IMDSv1
+    private String token() {
+        try {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(IMDS + "api/token"))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .header("X-aws-ec2-metadata-token-ttl-seconds", "300")
+                    .timeout(Duration.ofSeconds(2))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 ? response.body() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String get(String path, String token) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(IMDS + path)).timeout(Duration.ofSeconds(2));
+        if (token != null) request.header("X-aws-ec2-metadata-token", token);
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == 200 ? response.body().trim() : null;
+    }
+
+    @Override
+    public void close() {
+        poller.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+#!/bin/bash
+set -uo pipefail
+
+# Builder of the optimized AMI: installs the dependencies and leaves the images already pulled.
+# When it is done it reports the digest of every image to s3://$BUCKET/bake/<id>/result.tsv and waits;
+# the scheduler snapshots it (CreateImage) and terminates it. A failure goes to bake/<id>/failed.
+exec > >(tee /var/log/ignis-bake.log | logger -t ignis-bake -s 2>/dev/console) 2>&1
+
+export REGION='{{REGION}}'
+export BUCKET='{{BUCKET}}'
+BAKE_ID='{{BAKE_ID}}'
+MAX_SECONDS={{MAX_SECONDS}}
+IMAGES=({{IMAGES}})
+PREFIX="s3://$BUCKET/bake/$BAKE_ID"
+
+# Safety net if the scheduler goes away mid-bake (shutdown terminates the instance)
+( sleep "$MAX_SECONDS"; shutdown -h now ) &
+
+fail() {
+  echo "[bake] ERROR: $1"
+  echo "$1" | aws --region "$REGION" s3 cp - "$PREFIX/failed" --quiet || true
+  shutdown -h now
+  exit 1
+}
+
+echo "[bake] installing dependencies..."
+if grep -qi "Amazon Linux" /etc/os-release; then
+  dnf -y install tar gzip docker awscli-2 || fail "package installation failed"
+else
+  apt-get update -y && apt-get install -y docker.io awscli tar gzip curl || fail "package installation failed"
+fi
+systemctl enable --now docker || fail "docker did not start"
+
+# Image and digest (the one a `docker pull` by tag leaves in RepoDigests), one per line
+: > /etc/ignis-baked-images
+for image in "${IMAGES[@]}"; do
+  echo "[bake] pulling $image"
+  docker pull "$image" || fail "could not pull $image"
+  digest=$(docker image inspect --format '{{range .RepoDigests}}{{println .}}{{end}}' "$image" | head -1 | sed 's/.*@//')
+  printf '%s\t%s\n' "$image" "$digest" >> /etc/ignis-baked-images
+done
+touch /etc/ignis-baked
+
+# Nothing of this boot should end up in the jobs' instances
+rm -f /var/log/ignis-bake.log
+dnf clean all 2>/dev/null || apt-get clean 2>/dev/null || true
+sync
+
+aws --region "$REGION" s3 cp /etc/ignis-baked-images "$PREFIX/result.tsv" --quiet || fail "could not report the result"
+echo "[bake] ready to be imaged"
@@ -0,0 +1,36 @@
+#!/bin/bash
+# Driver container started by the instance agent. Output goes to the job log that the agent ships.
+# The agent watches $IGNIS_JOB_SOCKETS and creates .driver-go there once the backend socket shows up,
+# so this script only has to wait for that file instead of scanning the filesystem.
+exec >> /var/log/ignis/out.txt 2>&1
+
+echo "[container] preparing environment..."
+mkdir -p /var/tmp/ignis/jobs
+ln -sf "/var/tmp/ignis-cloud/jobs/$IGNIS_JOB_ID.json" "/var/tmp/ignis/jobs/$IGNIS_JOB_ID.json"
+chmod -R 777 /var/tmp/ignis
+chmod 777 /tmp
+
+echo "[container] starting backend..."
+/opt/ignis/bin/ignis-backend > /tmp/backend.log 2>&1 &
+BACKEND_PID=$!
+
+while [ ! -e "$IGNIS_JOB_SOCKETS/.driver-go" ]; do
+  if ! kill -0 $BACKEND_PID 2>/dev/null; then
+    echo "[container] ERROR: backend died before socket appeared"
+    echo "===== BACKEND LOG ====="
+    cat /tmp/backend.log
+    echo "===== END BACKEND LOG ====="
+    exit 1
+  fi
+  sleep 0.1
+done
+
+echo "[container] backend ready, launching driver..."
+eval "$IGNIS_DRIVER_CMD"
+DRIVER_RC=$?
+
+echo "===== BACKEND LOG ====="
+cat /tmp/backend.log
+echo "===== END BACKEND LOG ====="
+
+exit $DRIVER_RC
@@ -0,0 +1,114 @@
+#!/bin/bash
+set -uo pipefail
+
+# Executor node of an EC2 cluster: starts the executor container and registers in S3
+# (jobs/<job>/clusters/<cluster>/<iid>.json) with its private address so the driver can find it.
+exec > >(tee /var/log/user-data.log | logger -t ignis-executor -s 2>/dev/console) 2>&1
+
+export REGION='{{REGION}}'
+export BUCKET='{{BUCKET}}'
+export JOB_ID='{{JOB_ID}}'
+export JOB_ROOT='{{JOB_ROOT}}'
+export CLUSTER='{{CLUSTER}}'
+export IMAGE='{{IMAGE}}'
+INDEX='{{INDEX}}'
+PUBLIC_KEY='{{PUBLIC_KEY}}'
+READY_PORT={{READY_PORT}}
+
+TOKEN=$(curl -fsS -X PUT "http://169.254.169.254/latest/api/token" \
+  -H "X-aws-ec2-metadata-token-ttl-seconds: 21600" || true)
+imds() {
+  if [ -n "$TOKEN" ]; then
+    curl -fsS -H "X-aws-ec2-metadata-token: $TOKEN" "http://169.254.169.254/latest/meta-data/$1"
+  else
+    curl -fsS "http://169.254.169.254/latest/meta-data/$1"
+  fi
+}
+
+IID=$(imds instance-id || echo "unknown")
+PRIVATE_IP=$(imds local-ipv4 || echo "")
+PRIVATE_DNS=$(imds local-hostname || echo "")
+[ -n "$INDEX" ] || INDEX=$(imds ami-launch-index || echo 0)
+NAME="$JOB_ID-executor-$INDEX"
+REG_KEY="s3://$BUCKET/${JOB_ROOT}clusters/$CLUSTER/$IID.json"
+echo "[executor] instance-id=$IID index=$INDEX ip=$PRIVATE_IP"
+
+# A JSON string body: backslashes, quotes and line breaks escaped, other control characters dropped
+json_escape() {
+  local s=${1//\\/\\\\}
+  s=${s//\"/\\\"}
+  s=${s//$'\n'/\\n}
+  s=${s//$'\r'/\\r}
+  s=${s//$'\t'/\\t}
+  printf '%s' "$s" | tr -d '\000-\037'
+}
+
+register() {
+  printf '{"instanceId":"%s","index":%s,"container":"%s","privateIp":"%s","hostname":"%s","state":"%s","message":"%s"}\n' \
+    "$IID" "$INDEX" "$NAME" "$PRIVATE_IP" "$PRIVATE_DNS" "$1" "$(json_escape "$2")" \
+    | aws --region "$REGION" s3 cp - "$REG_KEY" --quiet
+}
+
+fail() {
+  echo "[executor] ERROR: $1"
+  register FAILED "$1" || true
+  exit 1
+}
+
+if [ -f "/etc/ignis-baked" ]; then
+  systemctl start docker
+else
+  if grep -qi "Amazon Linux" /etc/os-release; then
+    dnf -y install tar gzip docker awscli-2
+  else
+    apt-get update -y
+    apt-get install -y docker.io awscli tar gzip curl
+  fi
+  systemctl enable --now docker
+fi
+
+# Without aws nothing can be registered: the driver gives up on a node that stays silent
+command -v aws    >/dev/null 2>&1 || { echo "[executor] ERROR: aws not found"; exit 1; }
+register STARTING "" || echo "[executor] WARNING: could not register, the driver will time out on this node"
+command -v docker >/dev/null 2>&1 || fail "docker not found"
+
+docker pull "$IMAGE" || fail "could not pull image"
+
+echo '{{ENV_B64}}' | base64 -d > /etc/ignis-executor.env
+mkdir -p /ignis/dfs "/opt/ignis/jobs/$JOB_ID"
+
+docker run -d \
+  --network host \
+  --name "$NAME" \
+  --env-file /etc/ignis-executor.env \
+  -e IGNIS_SCHEDULER_ENV_JOB="$JOB_ID" \
+  -e IGNIS_SCHEDULER_ENV_CONTAINER="$IID" \
+  -e IGNIS_JOB_ID="$JOB_ID" \
+  -e IGNIS_JOB_CONTAINER_DIR=/opt/ignis/jobs \
+  -e IGNIS_JOB_DIR="/opt/ignis/jobs/$JOB_ID" \
+  -v /ignis/dfs:/ignis/dfs \
+  -v /var/run/docker.sock:/var/run/docker.sock \
+  -v "/opt/ignis/jobs/$JOB_ID:/opt/ignis/jobs/$JOB_ID" \
+  "$IMAGE" {{ARGS}} || fail "docker run failed"
+
+# Configurar authorized_keys
+if [ -n "$PUBLIC_KEY" ]; then
+  docker exec "$NAME" bash -c "mkdir -p /root/.ssh && chmod 700 /root/.ssh && echo '$PUBLIC_KEY' > /root/.ssh/authorized_keys && chmod 600 /root/.ssh/authorized_keys" \
+    || fail "could not configure SSH keys"
+fi
+
+# Ready once the container keeps running (and, if configured, its port accepts connections)
+for i in $(seq 1 120); do
+  STATE=$(docker inspect --format '{{.State.Status}}' "$NAME" 2>/dev/null || echo missing)
+  if [ "$STATE" != "running" ]; then
+    docker logs --tail 20 "$NAME" || true
+    fail "container is $STATE"
+  fi
+  if [ "$READY_PORT" -eq 0 ] || (exec 3<>"/dev/tcp/127.0.0.1/$READY_PORT") 2>/dev/null; then
+    register READY ""
+    echo "[executor] ready"
+    exit 0
+  fi
+  sleep 1
+done
+fail "port $READY_PORT never opened"
@@ -0,0 +1,59 @@
+#!/bin/bash
+set -uo pipefail
+
+# Warm pool agent: gets the instance ready (docker + image) and waits for a job.
+# The scheduler claims the instance by writing s3://$BUCKET/pool/<iid>/job.sh, which is the regular
+# job userdata; the agent runs it in place, so it ends (and terminates the instance) like a cold job.
+exec > >(tee /var/log/pool-agent.log | logger -t pool-agent -s 2>/dev/console) 2>&1
+
+echo "[pool-agent] starting..."
+export REGION='{{REGION}}'
+export BUCKET='{{BUCKET}}'
+export IMAGE='{{IMAGE}}'
+IDLE_TTL_SECONDS={{IDLE_TTL_SECONDS}}
+
+if [ -f "/etc/ignis-baked" ]; then
+  systemctl start docker
+else
+  if grep -qi "Amazon Linux" /etc/os-release; then
+    dnf -y install tar gzip docker awscli-2
+  else
+    apt-get update -y
+    apt-get install -y docker.io awscli tar gzip curl
+  fi
+  systemctl enable --now docker
+fi
+
+command -v aws    >/dev/null 2>&1 || { echo "[pool-agent] ERROR: aws not found";    shutdown -h now; exit 1; }
+command -v docker >/dev/null 2>&1 || { echo "[pool-agent] ERROR: docker not found"; shutdown -h now; exit 1; }
+
+echo "[pool-agent] pulling image $IMAGE"
+docker pull "$IMAGE" || { echo "[pool-agent] ERROR: pull failed"; shutdown -h now; exit 1; }
+touch /etc/ignis-baked
+
+TOKEN=$(curl -fsS -X PUT "http://169.254.169.254/latest/api/token" \
+  -H "X-aws-ec2-metadata-token-ttl-seconds: 21600" || true)
+if [ -n "$TOKEN" ]; then
+  IID=$(curl -fsS -H "X-aws-ec2-metadata-token: $TOKEN" http://169.254.169.254/latest/meta-data/instance-id)
+else
+  IID=$(curl -fsS http://169.254.169.254/latest/meta-data/instance-id)
+fi
+
+POOL_PREFIX="s3://$BUCKET/pool/$IID"
+date -u +"%Y-%m-%dT%H:%M:%SZ" | aws --region "$REGION" s3 cp - "$POOL_PREFIX/ready" --quiet || true
+echo "[pool-agent] ready, waiting for a job at $POOL_PREFIX/job.sh"
+
+# Safety net in case the scheduler disappears without reaping us
+DEADLINE=$(( $(date +%s) + IDLE_TTL_SECONDS + 300 ))
+while [ "$(date +%s)" -lt "$DEADLINE" ]; do
+  if aws --region "$REGION" s3 cp "$POOL_PREFIX/job.sh" /tmp/job.sh --quiet 2>/dev/null; then
+    aws --region "$REGION" s3 rm "$POOL_PREFIX/" --recursive --quiet || true
+    echo "[pool-agent] job received, handing over"
+    exec bash /tmp/job.sh
+  fi
+  sleep 1
+done
+
+echo "[pool-agent] idle for too long, shutting down"
+aws --region "$REGION" s3 rm "$POOL_PREFIX/" --recursive --quiet || true
+shutdown -h now
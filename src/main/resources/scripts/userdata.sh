@@ -5,6 +5,7 @@ set -euo pipefail
 exec > >(tee /var/log/user-data.log | logger -t user-data -s 2>/dev/console) 2>&1
 
 echo "[user-data] starting..."
+BOOT_MS=$(date +%s%3N)
 export IMAGE='{{IMAGE}}'
 
 # --- 1. GESTIÓN DE DEPENDENCIAS (EL "HORNEADO") ---
@@ -29,23 +30,29 @@ fi
 command -v aws    >/dev/null 2>&1 || { echo "[user-data] ERROR: aws not found";    exit 1; }
 command -v docker >/dev/null 2>&1 || { echo "[user-data] ERROR: docker not found"; exit 1; }
 
-# El PULL siempre fuera: garantiza que la imagen esté lista, sea en AMI base o optimizada
-echo "[user-data] pulling image $IMAGE"
-docker pull "$IMAGE"
-
-# Si no existía la señal, la creamos ahora que sabemos que todo (incluido el pull) está OK
-if [ ! -f "/etc/ignis-baked" ]; then
-    touch /etc/ignis-baked
-    echo "[user-data] Señal de optimización creada para futura AMI."
+# The pull always happens here, so the image is ready on a base AMI and on a baked one alike.
+# It runs in the background while the payload is fetched; the container launch waits for both.
+# A baked AMI lists its images with their digest; if the scheduler checked that ours is still current
+# there is nothing to pull.
+IMAGE_DIGEST='{{IMAGE_DIGEST}}'
+if [ -n "$IMAGE_DIGEST" ] && grep -qxF "$IMAGE"$'\t'"$IMAGE_DIGEST" /etc/ignis-baked-images 2>/dev/null; then
+  echo "[user-data] image $IMAGE baked into the AMI ($IMAGE_DIGEST), skipping pull"
+  true &
+else
+  echo "[user-data] pulling image $IMAGE"
+  docker pull "$IMAGE" > /tmp/pull.log 2>&1 &
 fi
+PULL_PID=$!
 
 
 # Env variables
 export REGION='{{REGION}}'
 export BUCKET='{{BUCKET}}'
 export JOB_ID='{{JOB_ID}}'
+# Prefix of the job's objects: jobs/<id>/ or <hh>/jobs/<id>/ (IGNIS_S3_KEY_LAYOUT)
+export JOB_ROOT='{{JOB_ROOT}}'
 export JOB_NAME='{{JOB_NAME}}'
-export BUNDLE_KEY='{{BUNDLE_KEY}}'
+export MANIFEST_KEY='{{MANIFEST_KEY}}'
 export CMD='{{CMD}}'
 export IGNIS_SCHEDULER_ENV_JOB="$JOB_ID"
 export IGNIS_JOB_ID="$JOB_ID"
@@ -65,19 +72,213 @@ fi
 export IGNIS_SCHEDULER_ENV_CONTAINER="$IID"
 echo "[user-data] instance-id=$IID"
 
-# Bundle and payload download
-echo "[user-data] downloading bundle s3://$BUCKET/$BUNDLE_KEY"
-aws --region "$REGION" s3 cp "s3://$BUCKET/$BUNDLE_KEY" /tmp/bundle.tar.gz
+# Failure before the job starts: report it like a failed job so the scheduler stops waiting
+boot_failed() {
+  echo "[user-data] ERROR: $1"
+  printf '{"state":"FAILED","rc":1}\n' > /tmp/status.json
+  aws --region "$REGION" s3 cp /tmp/status.json "s3://$BUCKET/${JOB_ROOT}status.json" || true
+  shutdown -h now
+  exit 1
+}
+
+await_image() {
+  wait "$PULL_PID" || { cat /tmp/pull.log; boot_failed "could not pull image $IMAGE"; }
+  echo "[user-data] image ready"
+  # Si no existía la señal, la creamos ahora que sabemos que todo (incluido el pull) está OK
+  if [ ! -f "/etc/ignis-baked" ]; then
+      touch /etc/ignis-baked
+      echo "[user-data] Señal de optimización creada para futura AMI."
+  fi
+}
+
+# Instance agent (IGNIS_INSTANCE_AGENT): the rest of the job is done by org.ignis.scheduler.agent.InstanceAgent,
+# run from the scheduler jars in the job image with the host paths it needs mounted in place.
+# It writes status.json itself; if it dies without doing so the scheduler sees the instance go away.
+AGENT_CONFIG='{{AGENT_CONFIG}}'
+if [ -n "$AGENT_CONFIG" ]; then
+  # The agent lives in the image, so here the pull can't overlap with the payload (the agent overlaps the rest)
+  await_image
+  echo "[user-data] handing over to the instance agent"
+  echo "$AGENT_CONFIG" | base64 -d > /etc/ignis-agent.json
+  mkdir -p /ignis/dfs /var/tmp/ignis-cloud/jobs "/opt/ignis/jobs/$JOB_ID/sockets" /var/log/ignis
+  chmod 777 "/opt/ignis/jobs/$JOB_ID/sockets"
+
+  set +e
+  docker run --rm \
+    --network host \
+    --name "$JOB_ID-agent" \
+    -e IGNIS_AGENT_INSTANCE_ID="$IID" \
+    -e IGNIS_AGENT_BOOT_MS="$BOOT_MS" \
+    -e IGNIS_S3_KEY_LAYOUT='{{KEY_LAYOUT}}' \
+    -v /etc/ignis-agent.json:/etc/ignis-agent.json:ro \
+    -v /ignis:/ignis \
+    -v /var/tmp/ignis-cloud:/var/tmp/ignis-cloud \
+    -v "/opt/ignis/jobs/$JOB_ID:/opt/ignis/jobs/$JOB_ID" \
+    -v /var/log/ignis:/var/log/ignis \
+    -v /var/run/docker.sock:/var/run/docker.sock \
+    --entrypoint '{{AGENT_JAVA}}' \
+    "$IMAGE" -cp '{{AGENT_CLASSPATH}}' org.ignis.scheduler.agent.InstanceAgent /etc/ignis-agent.json
+  rc=$?
+
+  echo "[user-data] agent finished with rc=$rc, shutting down instance"
+  shutdown -h now
+  exit "$rc"
+fi
 
+# Payload manifest: content-addressed bundle + large file blobs.
+# The instance is launched while the payload is still uploading; the manifest is written last,
+# so its presence means every blob (and job-meta.json) is already in S3.
+PAYLOAD_WAIT_SECONDS=1800
+echo "[user-data] waiting for payload manifest s3://$BUCKET/$MANIFEST_KEY"
+WAITED=0
+until aws --region "$REGION" s3 cp "s3://$BUCKET/$MANIFEST_KEY" /tmp/payload.manifest --quiet 2>/dev/null; do
+  [ "$WAITED" -ge "$PAYLOAD_WAIT_SECONDS" ] && boot_failed "payload not ready after ${PAYLOAD_WAIT_SECONDS}s"
+  sleep 2
+  WAITED=$((WAITED + 2))
+done
+echo "[user-data] payload ready after ${WAITED}s"
+BUNDLE_KEY=$(awk -F'\t' '$1 == "bundle" { print $2 }' /tmp/payload.manifest)
+
+# Image pull, bundle and large files all at once: boot takes as long as the slowest of them.
+# The bundle is extracted while it streams in, without a temporary copy.
+FETCH_PARALLELISM={{FETCH_PARALLELISM}}
 mkdir -p /ignis
-tar -xzf /tmp/bundle.tar.gz -C /
+echo "[user-data] streaming bundle s3://$BUCKET/$BUNDLE_KEY"
+( aws --region "$REGION" s3 cp "s3://$BUCKET/$BUNDLE_KEY" - | tar -xzf - -C / ) &
+BUNDLE_PID=$!
 
+fetch_large_files() {
+  set +e
+  local running=0
+  while IFS=$'\t' read -r key path; do
+    mkdir -p "$(dirname "/$path")"
+    { aws --region "$REGION" s3 cp "s3://$BUCKET/$key" "/$path" --quiet \
+        || echo "[user-data] WARNING: could not download $path"; } &
+    running=$((running + 1))
+    if [ "$running" -ge "$FETCH_PARALLELISM" ]; then
+      wait -n
+      running=$((running - 1))
+    fi
+  done < <(awk -F'\t' '$1 == "file" { print $2 "\t" $4 }' /tmp/payload.manifest)
+  wait
+}
 echo "[user-data] downloading large payload files from S3..."
-aws s3 sync "s3://${BUCKET}/jobs/${JOB_ID}/payload/large/" "/ignis/dfs/payload/" --quiet || true
+fetch_large_files &
+FILES_PID=$!
+
+wait "$BUNDLE_PID" || boot_failed "could not download or extract the bundle"
+echo "[user-data] bundle extracted."
+wait "$FILES_PID"
 echo "[user-data] large files ready."
+await_image
 
 START_TS=$(date -u +"%Y-%m-%dT%H:%M:%SZ" 2>/dev/null || echo "")
 
+# Live log: /tmp/out.txt is uploaded while the job runs, in numbered chunks
+# (jobs/<id>/logs/00000000.log, 00000001.log, ...). Every chunk is uploaded once and never
+# rewritten, so a follower only has to list the keys after the last one it has seen.
+LOG_FILE=/tmp/out.txt
+LOG_PREFIX="s3://$BUCKET/${JOB_ROOT}logs"
+LOG_SHIP_SECONDS={{LOG_SHIP_SECONDS}}
+LOG_CHUNK_BYTES={{LOG_CHUNK_BYTES}}
+LOG_STATE=/tmp/log-ship.state   # "<offset> <next seq>", only advanced after a successful upload
+LOG_STOP=/tmp/log-ship.stop
+LOG_LOCK=/tmp/log-ship.lock
+# A relaunched job starts numbering further on, after the chunks of the interrupted instance
+ATTEMPT={{ATTEMPT}}
+LOG_SEQ_START={{LOG_SEQ_START}}
+echo "0 $LOG_SEQ_START" > "$LOG_STATE"
+rm -f "$LOG_STOP"
+
+# The loop and the spot watcher both ship; the lock keeps them from uploading the same chunk
+ship_log() {
+  ( flock 9; ship_log_locked ) 9> "$LOG_LOCK"
+}
+
+ship_log_locked() {
+  local offset seq size len
+  read -r offset seq < "$LOG_STATE"
+  size=$(stat -c %s "$LOG_FILE" 2>/dev/null || echo 0)
+  while [ "$size" -gt "$offset" ]; do
+    len=$((size - offset))
+    [ "$len" -gt "$LOG_CHUNK_BYTES" ] && len=$LOG_CHUNK_BYTES
+    dd if="$LOG_FILE" bs=1M iflag=skip_bytes,count_bytes skip="$offset" count="$len" status=none \
+      | aws --region "$REGION" s3 cp - "$LOG_PREFIX/$(printf '%08d' "$seq").log" --quiet || return 1
+    offset=$((offset + len))
+    seq=$((seq + 1))
+    echo "$offset $seq" > "$LOG_STATE"
+  done
+}
+
+# Stopped with a flag instead of a signal so an upload is never cut in half
+ship_log_loop() {
+  set +e
+  local ticks=0
+  while [ ! -f "$LOG_STOP" ]; do
+    sleep 1
+    ticks=$((ticks + 1))
+    if [ "$ticks" -ge "$LOG_SHIP_SECONDS" ]; then
+      ticks=0
+      ship_log || echo "[user-data] WARNING: log upload failed, retrying later"
+    fi
+  done
+}
+
+# Results as they are now, to <s3 prefix>
+upload_results() {
+  local prefix=$1 dir
+  if [ -d "/ignis/dfs/output" ]; then
+    aws --region "$REGION" s3 sync "/ignis/dfs/output" "$prefix" --quiet || true
+  fi
+  find /ignis/dfs/payload/ -mindepth 1 -maxdepth 1 -type d | while read dir; do
+    aws --region "$REGION" s3 sync "$dir/" "$prefix$(basename "$dir")/" --quiet || true
+  done
+}
+
+# Spot: the interruption notice comes ~2 min ahead. The driver is stopped first so it never runs
+# next to the relaunched one; if it had finished by then (rc 0) the job stands as FINISHED. Otherwise
+# status.json goes next so the scheduler starts the relaunch while this instance saves its log and
+# partial results under attempts/<n>/. The notice and the end of the job race under END_LOCK: a job
+# that ended before the notice keeps its own status.
+SPOT_FLAG=/tmp/spot-interrupted
+DRIVER_NAME="$JOB_ID-driver"
+DRIVER_RC=/tmp/driver.rc
+END_LOCK=/tmp/job-end.lock
+rm -f "$SPOT_FLAG" "$DRIVER_RC"
+spot_watch() {
+  set +e
+  local token
+  while true; do
+    token=$(curl -fsS -X PUT "http://169.254.169.254/latest/api/token" \
+      -H "X-aws-ec2-metadata-token-ttl-seconds: 300" 2>/dev/null)
+    if curl -fsS -H "X-aws-ec2-metadata-token: $token" \
+        http://169.254.169.254/latest/meta-data/spot/instance-action > /tmp/spot-notice 2>/dev/null; then
+      break
+    fi
+    sleep 5
+  done
+  if ! ( flock 9; [ ! -f "$DRIVER_RC" ] && touch "$SPOT_FLAG" ) 9> "$END_LOCK"; then
+    echo "[user-data] spot interruption notice after the job ended, keeping its status"
+    return
+  fi
+  echo "[user-data] spot interruption notice: $(cat /tmp/spot-notice), stopping the driver"
+  docker stop -t 10 "$DRIVER_NAME" >/dev/null 2>&1
+  local waited=0
+  while [ ! -f "$DRIVER_RC" ] && [ "$waited" -lt 60 ]; do
+    sleep 1
+    waited=$((waited + 1))
+  done
+  if [ "$(cat "$DRIVER_RC" 2>/dev/null)" = "0" ]; then
+    echo "[user-data] the job had already finished, keeping its status"
+    rm -f "$SPOT_FLAG"
+    return
+  fi
+  echo "[user-data] the job will be relaunched"
+  printf '{"state":"INTERRUPTED","attempt":%s,"start":"%s"}\n' "$ATTEMPT" "$START_TS" > /tmp/spot-status.json
+  aws --region "$REGION" s3 cp /tmp/spot-status.json "s3://$BUCKET/${JOB_ROOT}status.json" || true
+  ship_log
+  upload_results "s3://$BUCKET/${JOB_ROOT}attempts/$ATTEMPT/results/"
+}
 
 cleanup_and_finish() {
   local rc=$1
@@ -89,31 +290,31 @@ cleanup_and_finish() {
 
   echo "[user-data] job finished with rc=$rc state=$state"
 
-  # Upload execution logs
-  if [ -f /tmp/out.txt ]; then
-    aws --region "$REGION" s3 cp /tmp/out.txt \
-      "s3://$BUCKET/jobs/$JOB_ID/out.txt" || true
-  fi
+  # Upload what is left of the log; it goes before status.json so a follower sees all of it
+  touch "$LOG_STOP"
+  wait "$LOG_SHIPPER_PID" 2>/dev/null
+  ship_log || ship_log || echo "[user-data] WARNING: could not upload the end of the log"
 
-  # Upload job results
-  if [ -d "/ignis/dfs/output" ]; then
-    aws --region "$REGION" s3 sync "/ignis/dfs/output" \
-      "s3://$BUCKET/jobs/$JOB_ID/results/" --quiet || true
-  fi
+  # Interrupted: the job is already running elsewhere, its status.json is not ours to write. A job
+  # that finished before the watcher stopped it is not: the watcher leaves it alone.
+  if [ -n "$SPOT_WATCH_PID" ] && [ -f "$SPOT_FLAG" ] && [ "$rc" -ne 0 ]; then
+    echo "[user-data] interrupted, leaving results and status to the relaunched job"
+    wait "$SPOT_WATCH_PID" 2>/dev/null
+  else
+    # The whole log in one object too, for whoever reads it after the job rather than following it
+    aws --region "$REGION" s3 cp "$LOG_FILE" "s3://$BUCKET/${JOB_ROOT}out.txt" --quiet \
+      || echo "[user-data] WARNING: could not upload out.txt"
 
-  # Upload payload directories
-  find /ignis/dfs/payload/ -mindepth 1 -maxdepth 1 -type d | while read dir; do
-    dirname=$(basename "$dir")
-    aws --region "$REGION" s3 sync "$dir/" \
-      "s3://$BUCKET/jobs/$JOB_ID/results/$dirname/" --quiet || true
-  done
+    # Upload job results and payload directories
+    upload_results "s3://$BUCKET/${JOB_ROOT}results/"
 
-  # Upload state
-  printf '{"state":"%s","rc":%s,"start":"%s","end":"%s"}\n' \
-    "$state" "$rc" "$START_TS" "$END_TS" > /tmp/status.json
+    # Upload state
+    printf '{"state":"%s","rc":%s,"start":"%s","end":"%s"}\n' \
+      "$state" "$rc" "$START_TS" "$END_TS" > /tmp/status.json
 
-  aws --region "$REGION" s3 cp /tmp/status.json \
-    "s3://$BUCKET/jobs/$JOB_ID/status.json" || true
+    aws --region "$REGION" s3 cp /tmp/status.json \
+      "s3://$BUCKET/${JOB_ROOT}status.json" || true
+  fi
 
   # Shutdown
   echo "[user-data] shutting down instance"
@@ -127,7 +328,7 @@ echo "[user-data] restoring job meta from S3"
 mkdir -p /var/tmp/ignis-cloud/jobs
 
 aws --region "$REGION" s3 cp \
-  "s3://$BUCKET/jobs/$JOB_ID/job-meta.json" \
+  "s3://$BUCKET/${JOB_ROOT}job-meta.json" \
   "/var/tmp/ignis-cloud/jobs/$JOB_ID.json"
 
 echo "[user-data] restored meta:"
@@ -141,9 +342,22 @@ chmod 777 "/opt/ignis/jobs/$JOB_ID/sockets"
 echo "[user-data] launching Ignis backend + driver in container"
 echo "[user-data] CMD=$CMD"
 
+ship_log_loop &
+LOG_SHIPPER_PID=$!
+SPOT_WATCH_PID=
+if [ "$(curl -fsS -H "X-aws-ec2-metadata-token: $TOKEN" \
+    http://169.254.169.254/latest/meta-data/instance-life-cycle 2>/dev/null)" = "spot" ]; then
+  spot_watch &
+  SPOT_WATCH_PID=$!
+fi
+
 set +e
 
+# The driver pulls executor images itself and needs the registry credentials of the host
+mkdir -p /root/.docker
+
 docker run --rm \
+  --name "$DRIVER_NAME" \
   --network host \
   -e IGNIS_SCHEDULER_NAME=Cloud \
   -e IGNIS_SCHEDULER_URL=cloud://aws \
@@ -155,11 +369,14 @@ docker run --rm \
   -e IGNIS_JOB_SOCKETS="/opt/ignis/jobs/$JOB_ID/sockets" \
   -e IGNIS_WDIR="/ignis/dfs/payload" \
   -e IGNIS_JOBS_BUCKET="$BUCKET" \
-  -v /ignis/dfs:/ignis/dfs \
+  -e IGNIS_AWS_REGION="$REGION" \
+{{DRIVER_ENV}}  -v /ignis/dfs:/ignis/dfs \
   -v /var/tmp/ignis-cloud:/var/tmp/ignis-cloud \
   -v /var/run/docker.sock:/var/run/docker.sock \
   -v "/opt/ignis/jobs/$JOB_ID/sockets:/opt/ignis/jobs/$JOB_ID/sockets" \
   -v /usr/bin/docker:/usr/bin/docker \
+  -e DOCKER_CONFIG=/opt/ignis/.docker \
+  -v /root/.docker:/opt/ignis/.docker:ro \
   "$IMAGE" /bin/bash -lc '
     echo "[container] preparing environment..."
     mkdir -p /var/tmp/ignis/jobs
@@ -209,6 +426,7 @@ docker run --rm \
   ' > /tmp/out.txt 2>&1
 
 rc=$?
+( flock 9; echo "$rc" > "$DRIVER_RC" ) 9> "$END_LOCK"
 set -e
 
 cleanup_and_finish "$rc"
\ No newline at end of file
@@ -12,15 +12,16 @@ resource "aws_vpc" "ignis_vpc" {
   }
 }
 
-// Subnet
+// Subnets: one per AZ (10.0.1.0/24, 10.0.2.0/24, ...) so launches can move to another AZ without capacity
 resource "aws_subnet" "ignis_subnet" {
+  count = length(var.availability_zones)
   vpc_id = aws_vpc.ignis_vpc.id
-  cidr_block = "10.0.1.0/24"
+  cidr_block = cidrsubnet(aws_vpc.ignis_vpc.cidr_block, 8, count.index + 1)
   map_public_ip_on_launch = true
-  availability_zone = var.availability_zone
+  availability_zone = var.availability_zones[count.index]
 
   tags = {
-    Name = "ignis_subnet"
+    Name = "ignis_subnet_${var.availability_zones[count.index]}"
   }
 }
 
@@ -46,7 +47,8 @@ resource "aws_route_table" "ignis_route_table" {
 
 // Route Table Association
 resource "aws_route_table_association" "ignis_route_assoc" {
-  subnet_id = aws_subnet.ignis_subnet.id
+  count = length(var.availability_zones)
+  subnet_id = aws_subnet.ignis_subnet[count.index].id
   route_table_id = aws_route_table.ignis_route_table.id
 }
 
@@ -70,6 +72,14 @@ resource "aws_security_group" "ignis_sg" {
     cidr_blocks = ["0.0.0.0/0"]
   }
 
+  // Driver <-> executor traffic between instances of the same group (EC2 cluster mode)
+  ingress {
+    from_port = 0
+    to_port   = 0
+    protocol  = "-1"
+    self      = true
+  }
+
   egress {
     from_port = 0
     to_port = 0
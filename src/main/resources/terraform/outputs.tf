@@ -2,8 +2,14 @@ output "vpc_id" {
   value = aws_vpc.ignis_vpc.id
 }
 
+// Subnet of the primary AZ
 output "subnet_id" {
-  value = aws_subnet.ignis_subnet.id
+  value = aws_subnet.ignis_subnet[0].id
+}
+
+// AZ -> subnet
+output "subnet_ids" {
+  value = zipmap(var.availability_zones, aws_subnet.ignis_subnet[*].id)
 }
 
 output "sg_id" {
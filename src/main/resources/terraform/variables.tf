@@ -3,7 +3,7 @@ variable "aws_region" {
   type = string
 }
 
-variable "availability_zone" {
-  description = "Availability Zone for the Ignis subnet"
-  type        = string
+variable "availability_zones" {
+  description = "Availability Zones for the Ignis subnets, primary first"
+  type        = list(string)
 }
\ No newline at end of file
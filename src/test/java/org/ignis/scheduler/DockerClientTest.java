@@ -0,0 +1,202 @@
+package org.ignis.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// HTTP framing of DockerClient against a fake daemon on a unix socket that answers with canned bytes
+class DockerClientTest {
+
+    private record Request(String method, String path, String body) { }
+
+    // close: the daemon ends the connection after the reply (hijacked streams)
+    private record Reply(byte[] raw, boolean close) {
+        static Reply of(String raw) {
+            return new Reply(raw.getBytes(StandardCharsets.UTF_8), false);
+        }
+    }
+
+    private static final class FakeDaemon implements Closeable {
+        final Path dir;
+        final Path socket;
+        final ServerSocketChannel server;
+        final AtomicInteger connections = new AtomicInteger();
+        final List<Request> requests = new CopyOnWriteArrayList<>();
+
+        FakeDaemon(Function<Request, Reply> handler) throws IOException {
+            dir = Files.createTempDirectory("ignis-docker-test");
+            socket = dir.resolve("docker.sock");
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Thread acceptor = new Thread(() -> {
+                while (true) {
+                    SocketChannel channel;
+                    try {
+                        channel = server.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    connections.incrementAndGet();
+                    Thread serve = new Thread(() -> serve(channel, handler), "fake-docker-conn");
+                    serve.setDaemon(true);
+                    serve.start();
+                }
+            }, "fake-docker");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void serve(SocketChannel channel, Function<Request, Reply> handler) {
+            try (channel) {
+                InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+                OutputStream out = Channels.newOutputStream(channel);
+                while (true) {
+                    String requestLine = readLine(in);
+                    if (requestLine == null) return;
+                    int contentLength = 0;
+                    String line;
+                    while ((line = readLine(in)) != null && !line.isEmpty()) {
+                        if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                    String[] parts = requestLine.split(" ");
+                    Request request = new Request(parts[0], parts[1],
+                            new String(in.readNBytes(contentLength), StandardCharsets.UTF_8));
+                    requests.add(request);
+                    Reply reply = handler.apply(request);
+                    out.write(reply.raw());
+                    out.flush();
+                    if (reply.close()) return;
+                }
+            } catch (IOException e) {
+                // The client went away
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') return sb.toString().replace("\r", "");
+                sb.append((char) c);
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static String json(int status, String reason, String body) {
+        return "HTTP/1.1 " + status + " " + reason + "\r\nContent-Type: application/json\r\nContent-Length: "
+                + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+    }
+
+    // stdout/stderr frame of a non-TTY stream: type, 3 bytes of padding, big-endian length
+    private static byte[] frame(int stream, String payload) {
+        byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+        byte[] framed = new byte[8 + data.length];
+        framed[0] = (byte) stream;
+        framed[4] = (byte) (data.length >>> 24);
+        framed[5] = (byte) (data.length >>> 16);
+        framed[6] = (byte) (data.length >>> 8);
+        framed[7] = (byte) data.length;
+        System.arraycopy(data, 0, framed, 8, data.length);
+        return framed;
+    }
+
+    @Test
+    void contentLengthFramingKeepsTheConnection() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon(request -> switch (request.path()) {
+            case "/v1.41/_ping" -> Reply.of("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+            case "/v1.41/containers/c1/start" -> Reply.of("HTTP/1.1 204 No Content\r\n\r\n");
+            case "/v1.41/containers/c1/json" -> Reply.of(json(200, "OK", "{\"Id\":\"c1\",\"State\":{\"Running\":true}}"));
+            default -> Reply.of(json(404, "Not Found", "{\"message\":\"No such container\"}"));
+        }); DockerClient docker = new DockerClient(daemon.socket.toString())) {
+            docker.ping();
+            docker.startContainer("c1"); // 204 without a body must not wait for one
+            assertTrue(docker.inspectContainer("c1").path("State").path("Running").asBoolean());
+            assertNull(docker.inspectContainer("missing"));
+            assertEquals(1, daemon.connections.get());
+            assertEquals(4, daemon.requests.size());
+        }
+    }
+
+    @Test
+    void chunkedBodiesAreReassembled() throws Exception {
+        String list = "[{\"Names\":[\"/job-executor-0\"],\"State\":\"running\"},"
+                + "{\"Names\":[\"/job-executor-1\"],\"State\":\"exited\"}]";
+        String first = list.substring(0, 20);
+        String second = list.substring(20);
+        String chunked = "HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + Integer.toHexString(first.length()) + ";ext=1\r\n" + first + "\r\n"
+                + Integer.toHexString(second.length()) + "\r\n" + second + "\r\n"
+                + "0\r\nX-Trailer: ignored\r\n\r\n";
+        try (FakeDaemon daemon = new FakeDaemon(request -> request.path().startsWith("/v1.41/containers/json")
+                ? Reply.of(chunked)
+                : Reply.of("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK"));
+             DockerClient docker = new DockerClient(daemon.socket.toString())) {
+            Map<String, String> expected = new LinkedHashMap<>();
+            expected.put("job-executor-0", "running");
+            expected.put("job-executor-1", "exited");
+            assertEquals(expected, docker.containerStates("job-executor"));
+            // The trailer was consumed: the next response on the same connection parses
+            docker.ping();
+            assertEquals(1, daemon.connections.get());
+        }
+    }
+
+    @Test
+    void execDemultiplexesTheHijackedStream() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write("HTTP/1.1 200 OK\r\nContent-Type: application/vnd.docker.raw-stream\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        stream.write(frame(1, "hello "));
+        stream.write(frame(2, "from stderr "));
+        stream.write(frame(1, "world\n"));
+        try (FakeDaemon daemon = new FakeDaemon(request -> switch (request.path()) {
+            case "/v1.41/containers/c1/exec" -> Reply.of(json(201, "Created", "{\"Id\":\"e1\"}"));
+            case "/v1.41/exec/e1/start" -> new Reply(stream.toByteArray(), true);
+            case "/v1.41/exec/e1/json" -> Reply.of(json(200, "OK", "{\"ExitCode\":3}"));
+            default -> Reply.of(json(404, "Not Found", "{\"message\":\"not found\"}"));
+        }); DockerClient docker = new DockerClient(daemon.socket.toString())) {
+            DockerClient.ExecResult result = docker.exec("c1", List.of("sh", "-c", "true"));
+            assertEquals("hello from stderr world\n", result.output());
+            assertEquals(3, result.exitCode());
+            assertTrue(daemon.requests.get(0).body().contains("\"Cmd\":[\"sh\",\"-c\",\"true\"]"));
+            // The exec stream ran on a connection of its own, the pooled one served the rest
+            assertEquals(2, daemon.connections.get());
+        }
+    }
+
+    @Test
+    void errorsCarryTheDaemonMessage() throws Exception {
+        try (FakeDaemon daemon = new FakeDaemon(request ->
+                Reply.of(json(500, "Internal Server Error", "{\"message\":\"driver failed\"}")));
+             DockerClient docker = new DockerClient(daemon.socket.toString())) {
+            ISchedulerException e = assertThrows(ISchedulerException.class, () -> docker.stopContainer("c1", 10));
+            assertTrue(e.getMessage().contains("(500): driver failed"));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.ignis.scheduler;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// rank() against the fixture in src/test/resources/instance-catalog.json (prices are us-east-1 on-demand)
+class InstanceTypeSelectorTest {
+
+    private static final InstanceTypeSelector.Requirements SMALL = new InstanceTypeSelector.Requirements(2, 4096, 0, null, 0);
+
+    private static InstanceCatalog catalog;
+
+    @BeforeAll
+    static void loadCatalog() throws Exception {
+        catalog = InstanceCatalog.load(Path.of(InstanceTypeSelectorTest.class.getResource("/instance-catalog.json").toURI()));
+    }
+
+    private static InstanceTypeSelector selector(InstanceTypeSelector.Objective objective) {
+        return new InstanceTypeSelector(objective, Set.of("x86_64"), List.of(), true, 2.0, null);
+    }
+
+    private static List<String> types(List<InstanceCatalog.Entry> ranked) {
+        return ranked.stream().map(InstanceCatalog.Entry::type).toList();
+    }
+
+    @Test
+    void costRanksCheapestFirst() {
+        assertEquals(List.of("t3.large", "c6i.large", "m6i.large", "c6in.large", "m6id.large", "m6i.xlarge"),
+                types(selector(InstanceTypeSelector.Objective.COST).rank(catalog, SMALL)));
+    }
+
+    @Test
+    void speedPrefersSustainedCpuThenNvmeWithinTheCostSlack() {
+        // m6i.xlarge costs more than twice t3.large, the cheapest fit
+        assertEquals(List.of("m6id.large", "c6i.large", "m6i.large", "c6in.large", "t3.large"),
+                types(selector(InstanceTypeSelector.Objective.SPEED).rank(catalog, SMALL)));
+    }
+
+    @Test
+    void networkPrefersBandwidthWithinTheCostSlack() {
+        assertEquals(List.of("c6in.large", "c6i.large", "m6i.large", "m6id.large", "t3.large"),
+                types(selector(InstanceTypeSelector.Objective.NETWORK).rank(catalog, SMALL)));
+    }
+
+    @Test
+    void requirementsFilterSmallerTypes() {
+        InstanceTypeSelector cost = selector(InstanceTypeSelector.Objective.COST);
+        assertEquals(List.of("t3.large", "m6i.large", "m6id.large", "m6i.xlarge"),
+                types(cost.rank(catalog, new InstanceTypeSelector.Requirements(2, 8192, 0, null, 0))));
+        assertEquals(List.of("m6id.large"),
+                types(cost.rank(catalog, new InstanceTypeSelector.Requirements(2, 4096, 0, null, 100))));
+        assertTrue(cost.rank(catalog, new InstanceTypeSelector.Requirements(64, 4096, 0, null, 0)).isEmpty());
+    }
+
+    @Test
+    void selectorFilters() {
+        InstanceTypeSelector.Objective cost = InstanceTypeSelector.Objective.COST;
+        assertEquals("c6i.large", new InstanceTypeSelector(cost, Set.of("x86_64"), List.of(), false, 2.0, null)
+                .rank(catalog, SMALL).get(0).type());
+        assertEquals(List.of("m6i.large", "m6i.xlarge"), types(new InstanceTypeSelector(cost, Set.of("x86_64"),
+                List.of("m6i"), true, 2.0, null).rank(catalog, SMALL)));
+        assertEquals(List.of("t3.large", "c6i.large"), types(new InstanceTypeSelector(cost, Set.of("x86_64"),
+                List.of(), true, 2.0, 0.09).rank(catalog, SMALL)));
+        assertEquals(List.of("m7g.large"), types(new InstanceTypeSelector(cost, Set.of("arm64"),
+                List.of(), true, 2.0, null).rank(catalog, SMALL)));
+        assertEquals("m7g.large", new InstanceTypeSelector(cost, Set.of("any"), List.of(), true, 2.0, null)
+                .rank(catalog, SMALL).get(0).type());
+    }
+
+    @Test
+    void gpuTypesOnlyWhenAskedFor() {
+        InstanceTypeSelector cost = selector(InstanceTypeSelector.Objective.COST);
+        assertTrue(types(cost.rank(catalog, SMALL)).stream().noneMatch(t -> t.startsWith("g")));
+        assertEquals(List.of("g4dn.xlarge", "g5.xlarge"),
+                types(cost.rank(catalog, new InstanceTypeSelector.Requirements(2, 4096, 1, "nvidia", 0))));
+        assertEquals(List.of("g5.xlarge"),
+                types(cost.rank(catalog, new InstanceTypeSelector.Requirements(2, 4096, 1, "a10g", 0))));
+        assertTrue(cost.rank(catalog, new InstanceTypeSelector.Requirements(2, 4096, 2, null, 0)).isEmpty());
+    }
+
+    @Test
+    void gpuParsing() {
+        assertEquals(0, InstanceTypeSelector.parseGpuCount(null));
+        assertEquals(0, InstanceTypeSelector.parseGpuCount(""));
+        assertEquals(0, InstanceTypeSelector.parseGpuCount("0"));
+        assertEquals(0, InstanceTypeSelector.parseGpuCount("none"));
+        assertEquals(2, InstanceTypeSelector.parseGpuCount("2"));
+        assertEquals(1, InstanceTypeSelector.parseGpuCount("nvidia"));
+        assertEquals(2, InstanceTypeSelector.parseGpuCount("nvidia:2"));
+        assertEquals(2, InstanceTypeSelector.parseGpuCount("nvidia.com/gpu=2"));
+        assertEquals(4, InstanceTypeSelector.parseGpuCount("a10g:4"));
+
+        assertNull(InstanceTypeSelector.parseGpuName("0"));
+        assertNull(InstanceTypeSelector.parseGpuName("2"));
+        assertNull(InstanceTypeSelector.parseGpuName("gpu"));
+        assertEquals("nvidia", InstanceTypeSelector.parseGpuName("nvidia:2"));
+        assertEquals("nvidia", InstanceTypeSelector.parseGpuName("nvidia.com/gpu=2"));
+        assertEquals("a10g", InstanceTypeSelector.parseGpuName("A10G:4"));
+    }
+
+    @Test
+    void estimatedCostWithoutAPrice() {
+        InstanceCatalog.Entry m6i = catalog.entries().stream().filter(e -> e.type().equals("m6i.large")).findFirst().orElseThrow();
+        assertEquals(0.096, InstanceTypeSelector.cost(m6i.withPrice(null)), 1e-9);
+        InstanceCatalog.Entry m7g = catalog.entries().stream().filter(e -> e.type().equals("m7g.large")).findFirst().orElseThrow();
+        assertEquals(0.096 * 0.8, InstanceTypeSelector.cost(m7g.withPrice(null)), 1e-9);
+    }
+}